@@ -4,13 +4,33 @@ import android.content.Context;
 import org.snmp4j.agent.*;
 import org.snmp4j.agent.mo.*;
 import org.snmp4j.smi.OctetString;
+import com.example.mib.AgentStatsMib;
 import com.example.mib.AndroidDeviceMib;
+import com.example.mib.BatteryMonitor;
+import com.example.mib.HostResourcesMib;
+import com.example.mib.IfMib;
+import com.example.mib.NetworkMonitor;
+import com.example.mib.PowerMonitor;
+import com.example.mib.SingleFlight;
 import com.example.mib.SystemMibSimple;
+import com.example.mib.ThermalMib;
 
 public class Modules implements MOGroup {
 
     private AndroidDeviceMib androidDeviceMib;
     private SystemMibSimple systemMib;
+    private IfMib ifMib;
+    private HostResourcesMib hostResourcesMib;
+    private ThermalMib thermalMib;
+    private final AgentStatsMib agentStatsMib = new AgentStatsMib();
+    // Shared by the metric groups so concurrent requests for the same group run one collection
+    private final SingleFlight singleFlight = new SingleFlight();
+    // Shared battery state from the battery-changed broadcast
+    private BatteryMonitor batteryMonitor;
+    // Shared default network state from connectivity callbacks
+    private NetworkMonitor networkMonitor;
+    // Shared Doze, battery saver and plugged state
+    private PowerMonitor powerMonitor;
     private MOFactory factory;
     private Context context;
 
@@ -26,12 +46,41 @@ public class Modules implements MOGroup {
     public Modules(MOFactory factory, Context context) {
         this.factory = factory;
         this.context = context;
-        androidDeviceMib = new AndroidDeviceMib(context);
-        systemMib = new SystemMibSimple(context);
+        batteryMonitor = new BatteryMonitor(context);
+        networkMonitor = new NetworkMonitor(context);
+        powerMonitor = new PowerMonitor(context, batteryMonitor);
+        androidDeviceMib = new AndroidDeviceMib(context, singleFlight, batteryMonitor, networkMonitor, powerMonitor);
+        systemMib = new SystemMibSimple(context, androidDeviceMib);
+        ifMib = new IfMib(androidDeviceMib.getInterfaces());
+        hostResourcesMib = new HostResourcesMib(androidDeviceMib);
+        thermalMib = new ThermalMib(androidDeviceMib);
+    }
+
+    /**
+     * Called whenever MOs are registered or unregistered after registerMOs(), e.g. rows for a new interface
+     * or thermal zone.
+     */
+    public void setRegistrationListener(Runnable registrationListener) {
+        if (ifMib != null) {
+            ifMib.setRegistrationListener(registrationListener);
+        }
+        if (thermalMib != null) {
+            thermalMib.setRegistrationListener(registrationListener);
+        }
     }
 
     public void registerMOs(MOServer server, OctetString context) 
         throws DuplicateRegistrationException {
+        if (batteryMonitor != null) {
+            batteryMonitor.start();
+        }
+        if (networkMonitor != null) {
+            networkMonitor.start();
+        }
+        if (powerMonitor != null) {
+            powerMonitor.start();
+        }
+        
         // Register the standard System MIB first (required for SolarWinds)
         if (systemMib != null) {
             systemMib.registerMOs(server, context);
@@ -41,9 +90,41 @@ public class Modules implements MOGroup {
         if (androidDeviceMib != null) {
             androidDeviceMib.registerMOs(server, context);
         }
+        
+        // Register IF-MIB from the device MIB's interface samples
+        if (ifMib != null) {
+            ifMib.registerMOs(server, context);
+        }
+        
+        // Register HOST-RESOURCES-MIB from the device MIB's memory, storage and cpu samples
+        if (hostResourcesMib != null) {
+            hostResourcesMib.registerMOs(server, context);
+        }
+        
+        // Register the thermal zones and throttling state from the device MIB's thermal samples
+        if (thermalMib != null) {
+            thermalMib.registerMOs(server, context);
+        }
+        
+        // Register the agent's own request handling statistics
+        agentStatsMib.registerMOs(server, context);
     }
 
     public void unregisterMOs(MOServer server, OctetString context) {
+        agentStatsMib.unregisterMOs(server, context);
+        
+        if (thermalMib != null) {
+            thermalMib.unregisterMOs(server, context);
+        }
+        
+        if (hostResourcesMib != null) {
+            hostResourcesMib.unregisterMOs(server, context);
+        }
+        
+        if (ifMib != null) {
+            ifMib.unregisterMOs(server, context);
+        }
+        
         if (androidDeviceMib != null) {
             androidDeviceMib.unregisterMOs(server, context);
         }
@@ -51,6 +132,16 @@ public class Modules implements MOGroup {
         if (systemMib != null) {
             systemMib.unregisterMOs(server, context);
         }
+        
+        if (batteryMonitor != null) {
+            batteryMonitor.stop();
+        }
+        if (networkMonitor != null) {
+            networkMonitor.stop();
+        }
+        if (powerMonitor != null) {
+            powerMonitor.stop();
+        }
     }
     
     public AndroidDeviceMib getAndroidDeviceMib() {
@@ -60,5 +151,13 @@ public class Modules implements MOGroup {
     public SystemMibSimple getSystemMib() {
         return systemMib;
     }
+    
+    public AgentStatsMib getAgentStatsMib() {
+        return agentStatsMib;
+    }
+    
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
 }
 
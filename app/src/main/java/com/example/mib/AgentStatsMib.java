@@ -0,0 +1,100 @@
+package com.example.mib;
+
+import org.snmp4j.agent.*;
+import org.snmp4j.agent.mo.*;
+import org.snmp4j.smi.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Agent self-monitoring MIB (1.3.6.1.4.1.5380.1.16.8.x).
+ * Exposes the agent's own request handling statistics so they can be tuned across the fleet.
+ * Values are bound by the service before registration, since the sources live outside the MIB.
+ */
+public class AgentStatsMib implements MOGroup {
+
+    // Base OID for agent statistics: 1.3.6.1.4.1.5380.1.16.8
+    private static final OID STATS_OID = new OID(new int[]{1, 3, 6, 1, 4, 1, 5380, 1, 16, 8});
+
+    // Request Dispatcher OIDs (1.3.6.1.4.1.5380.1.16.8.1.x)
+    public static final OID REQUEST_QUEUE_DEPTH = new OID(STATS_OID).append("1.1.0");
+    public static final OID REQUEST_QUEUE_CAPACITY = new OID(STATS_OID).append("1.2.0");
+    public static final OID REQUESTS_DISPATCHED = new OID(STATS_OID).append("1.3.0");
+    public static final OID REQUESTS_DROPPED_OLDEST = new OID(STATS_OID).append("1.4.0");
+    public static final OID REQUESTS_DROPPED_NEWEST = new OID(STATS_OID).append("1.5.0");
+    public static final OID REQUESTS_GEN_ERR = new OID(STATS_OID).append("1.6.0");
+    public static final OID ACTIVE_WORKERS = new OID(STATS_OID).append("1.7.0");
+
+    // BER Fast Path OIDs (1.3.6.1.4.1.5380.1.16.8.2.x)
+    public static final OID FAST_PATH_HANDLED = new OID(STATS_OID).append("2.1.0");
+    public static final OID FAST_PATH_FALLBACKS = new OID(STATS_OID).append("2.2.0");
+
+    // Walk Cursor OIDs (1.3.6.1.4.1.5380.1.16.8.3.x)
+    public static final OID WALK_CURSOR_HITS = new OID(STATS_OID).append("3.1.0");
+    public static final OID WALK_CURSOR_MISSES = new OID(STATS_OID).append("3.2.0");
+    public static final OID WALK_CURSORS = new OID(STATS_OID).append("3.3.0");
+
+    // Response Cache OIDs (1.3.6.1.4.1.5380.1.16.8.4.x)
+    public static final OID RESPONSE_CACHE_HITS = new OID(STATS_OID).append("4.1.0");
+    public static final OID RESPONSE_CACHE_MISSES = new OID(STATS_OID).append("4.2.0");
+
+    // Single-Flight OIDs (1.3.6.1.4.1.5380.1.16.8.5.x)
+    public static final OID COLLECTOR_CALLS = new OID(STATS_OID).append("5.1.0");
+    public static final OID COLLECTOR_CALLS_SHARED = new OID(STATS_OID).append("5.2.0");
+
+    // Priority Lane columns (1.3.6.1.4.1.5380.1.16.8.6.<lane>.<column>.0, lane 1 = highest priority)
+    public static final int LANE_WEIGHT = 1;
+    public static final int LANE_DEPTH = 2;
+    public static final int LANE_COMPLETED = 3;
+    public static final int LANE_LATENCY_TOTAL = 4;
+    public static final int LANE_LATENCY_AVERAGE = 5;
+
+    private final List<MOScalar<?>> scalars = new ArrayList<>();
+
+    /**
+     * @param lane zero-based lane index
+     */
+    public static OID laneStat(int lane, int column) {
+        return new OID(STATS_OID).append(6).append(lane + 1).append(column).append(0);
+    }
+
+    /**
+     * Bind a gauge (a value that goes up and down, e.g. a queue depth) to an OID.
+     */
+    public void addGauge(OID oid, final LongSupplier supplier) {
+        scalars.add(new MOScalar<Gauge32>(oid, MOAccessImpl.ACCESS_READ_ONLY, new Gauge32(0)) {
+            @Override
+            public Gauge32 getValue() {
+                return new Gauge32(Math.max(0, Math.min(supplier.getAsLong(), 0xFFFFFFFFL)));
+            }
+        });
+    }
+
+    /**
+     * Bind a monotonically increasing counter to an OID.
+     */
+    public void addCounter(OID oid, final LongSupplier supplier) {
+        scalars.add(new MOScalar<Counter64>(oid, MOAccessImpl.ACCESS_READ_ONLY, new Counter64(0)) {
+            @Override
+            public Counter64 getValue() {
+                return new Counter64(supplier.getAsLong());
+            }
+        });
+    }
+
+    @Override
+    public void registerMOs(MOServer server, OctetString context) throws DuplicateRegistrationException {
+        for (MOScalar<?> scalar : scalars) {
+            server.register(scalar, context);
+        }
+    }
+
+    @Override
+    public void unregisterMOs(MOServer server, OctetString context) {
+        for (MOScalar<?> scalar : scalars) {
+            server.unregister(scalar, context);
+        }
+    }
+}
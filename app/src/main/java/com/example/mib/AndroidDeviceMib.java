@@ -2,27 +2,24 @@ package com.example.mib;
 
 import android.app.ActivityManager;
 import android.content.Context;
-import android.os.BatteryManager;
+import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Environment;
+import android.os.PowerManager;
 import android.os.StatFs;
+import android.os.SystemClock;
 import android.telephony.TelephonyManager;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
-import android.net.wifi.WifiManager;
-import android.net.wifi.WifiInfo;
+import androidx.preference.PreferenceManager;
 
 import org.snmp4j.agent.*;
 import org.snmp4j.agent.mo.*;
 import org.snmp4j.smi.*;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.NetworkInterface;
-import java.util.Collections;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class AndroidDeviceMib implements MOGroup {
@@ -54,6 +51,8 @@ public class AndroidDeviceMib implements MOGroup {
     public static final OID BATTERY_TEMPERATURE = new OID(BASE_OID).append("4.2.0");
     public static final OID BATTERY_VOLTAGE = new OID(BASE_OID).append("4.3.0");
     public static final OID BATTERY_STATUS = new OID(BASE_OID).append("4.4.0");
+    public static final OID BATTERY_PLUGGED = new OID(BASE_OID).append("4.5.0");
+    public static final OID BATTERY_HEALTH = new OID(BASE_OID).append("4.6.0");
     
     // Network Information OIDs (1.3.6.1.4.1.5380.1.16.5.x)
     public static final OID NETWORK_TYPE = new OID(BASE_OID).append("5.1.0");
@@ -66,12 +65,84 @@ public class AndroidDeviceMib implements MOGroup {
     public static final OID CPU_CORES = new OID(BASE_OID).append("6.1.0");
     public static final OID CPU_USAGE = new OID(BASE_OID).append("6.2.0");
     public static final OID CPU_FREQUENCY = new OID(BASE_OID).append("6.3.0");
+    public static final OID CPU_USAGE_1_MIN = new OID(BASE_OID).append("6.4.0");
+    public static final OID CPU_USAGE_5_MIN = new OID(BASE_OID).append("6.5.0");
+    public static final OID CPU_USAGE_15_MIN = new OID(BASE_OID).append("6.6.0");
+    
+    // CPU Core Table (1.3.6.1.4.1.5380.1.16.6.10.1.<column>.<core + 1>)
+    public static final OID CPU_CORE_ENTRY = new OID(BASE_OID).append("6.10.1");
+    public static final int CPU_CORE_INDEX = 1;
+    public static final int CPU_CORE_NAME = 2;
+    public static final int CPU_CORE_ONLINE = 3;
+    public static final int CPU_CORE_USER = 4;
+    public static final int CPU_CORE_SYSTEM = 5;
+    public static final int CPU_CORE_IOWAIT = 6;
+    public static final int CPU_CORE_IRQ = 7;
+    public static final int CPU_CORE_IDLE = 8;
+    public static final int CPU_CORE_USAGE = 9;
+    public static final int CPU_CORE_USAGE_1_MIN = 10;
+    public static final int CPU_CORE_USAGE_5_MIN = 11;
+    public static final int CPU_CORE_USAGE_15_MIN = 12;
+    public static final int CPU_CORE_FREQUENCY = 13;
+    public static final int CPU_CORE_MIN_FREQUENCY = 14;
+    public static final int CPU_CORE_MAX_FREQUENCY = 15;
+    public static final int CPU_CORE_HARDWARE_MAX_FREQUENCY = 16;
+    public static final int CPU_CORE_GOVERNOR = 17;
+    public static final int CPU_CORE_AVERAGE_FREQUENCY = 18;
+    public static final int CPU_CORE_TOP_RESIDENCY = 19;
+
+    // CPU Frequency Residency Table (1.3.6.1.4.1.5380.1.16.6.11.1.<column>.<n>), one row per core and frequency
+    public static final OID CPU_RESIDENCY_ENTRY = new OID(BASE_OID).append("6.11.1");
+    public static final int CPU_RESIDENCY_INDEX = 1;
+    public static final int CPU_RESIDENCY_CORE = 2;
+    public static final int CPU_RESIDENCY_FREQUENCY = 3;
+    public static final int CPU_RESIDENCY_PERCENT = 4;
     
     // Application Information OIDs (1.3.6.1.4.1.5380.1.16.7.x)
     public static final OID RUNNING_PROCESSES = new OID(BASE_OID).append("7.1.0");
     public static final OID UPTIME = new OID(BASE_OID).append("7.2.0");
     
+    // Metric Group Table (1.3.6.1.4.1.5380.1.16.9.1.<column>.<group>)
+    public static final OID METRIC_GROUP_ENTRY = new OID(BASE_OID).append("9.1");
+    public static final int METRIC_GROUP_INDEX = 1;
+    public static final int METRIC_GROUP_NAME = 2;
+    public static final int METRIC_GROUP_TTL = 3;
+    public static final int METRIC_GROUP_AGE = 4;
+    public static final int METRIC_GROUP_LAST_DURATION = 5;
+    public static final int METRIC_GROUP_DEADLINE_MISSES = 6;
+    public static final int METRIC_GROUP_STATE = 7;
+    public static final int METRIC_GROUP_LAST_ACCESS = 8;
+    public static final int METRIC_GROUP_WARM_UP = 9;
+    public static final int METRIC_GROUP_INTERVAL = 10;
+    
+    // Sampler Power OIDs (1.3.6.1.4.1.5380.1.16.9.x)
+    public static final OID POWER_STATE = new OID(BASE_OID).append("9.2.0");
+    public static final OID SAMPLER_WAKEUPS_PER_HOUR = new OID(BASE_OID).append("9.3.0");
+    public static final OID SAMPLER_WAKEUPS = new OID(BASE_OID).append("9.4.0");
+    
     private Context context;
+    private final SingleFlight singleFlight;
+    private final BatteryMonitor batteryMonitor;
+    private final NetworkMonitor networkMonitor;
+    private final PowerMonitor powerMonitor;
+    private final MetricSampler sampler = new MetricSampler();
+    private final CpuStatSampler cpuStat = new CpuStatSampler();
+    private final CpuFreqSampler cpuFreq = new CpuFreqSampler(cpuStat.getCoreCount());
+    private final ProcessSampler processScan = new ProcessSampler();
+    private final ThermalSampler thermalZones = new ThermalSampler();
+    
+    // Metric groups backing the MOs below
+    private MetricGroup<String> build;
+    private MetricGroup<CapacitySample> memory;
+    private MetricGroup<StorageSample> storage;
+    private MetricGroup<BatteryMonitor.BatteryState> battery;
+    private MetricGroup<NetworkMonitor.NetworkState> network;
+    private MetricGroup<CpuSample> cpu;
+    private MetricGroup<ProcessSample> processes;
+    private MetricGroup<NetDevSampler.Interfaces> interfaces;
+    private MetricGroup<ThermalSample> thermal;
+    private NetDevSampler netDev;
+    private int savedInterfaceCount;
     
     // System Information MOs
     private MOScalar<OctetString> deviceModel;
@@ -97,6 +168,8 @@ public class AndroidDeviceMib implements MOGroup {
     private MOScalar<Integer32> batteryTemperature;
     private MOScalar<Integer32> batteryVoltage;
     private MOScalar<OctetString> batteryStatus;
+    private MOScalar<OctetString> batteryPlugged;
+    private MOScalar<OctetString> batteryHealth;
     
     // Network Information MOs
     private MOScalar<OctetString> networkType;
@@ -109,13 +182,38 @@ public class AndroidDeviceMib implements MOGroup {
     private MOScalar<Integer32> cpuCores;
     private MOScalar<Integer32> cpuUsage;
     private MOScalar<Integer32> cpuFrequency;
+    private MOScalar<Integer32> cpuUsage1Min;
+    private MOScalar<Integer32> cpuUsage5Min;
+    private MOScalar<Integer32> cpuUsage15Min;
+    private MibTable cpuCoreTable;
+    private MibTable cpuResidencyTable;
     
     // Application Information MOs
     private MOScalar<Integer32> runningProcesses;
     private MOScalar<Counter64> uptime;
+    
+    // Metric Group Table
+    private MibTable metricGroupTable;
+    
+    // Sampler Power MOs
+    private MOScalar<Integer32> powerState;
+    private MOScalar<Gauge32> samplerWakeupsPerHour;
+    private MOScalar<Counter64> samplerWakeups;
 
-    public AndroidDeviceMib(Context context) {
+    /**
+     * @param singleFlight coalesces concurrent collections of the same metric group
+     * @param batteryMonitor source of the battery group, updated by the battery-changed broadcast
+     * @param networkMonitor source of the network group, updated by connectivity callbacks
+     * @param powerMonitor power state that stretches the sampling intervals
+     */
+    public AndroidDeviceMib(Context context, SingleFlight singleFlight, BatteryMonitor batteryMonitor,
+                            NetworkMonitor networkMonitor, PowerMonitor powerMonitor) {
         this.context = context;
+        this.singleFlight = singleFlight;
+        this.batteryMonitor = batteryMonitor;
+        this.networkMonitor = networkMonitor;
+        this.powerMonitor = powerMonitor;
+        initializeGroups();
         initializeMOs();
     }
 
@@ -154,150 +252,166 @@ public class AndroidDeviceMib implements MOGroup {
         };
         
         deviceSerial = new MOScalar<OctetString>(DEVICE_SERIAL, MOAccessImpl.ACCESS_READ_ONLY, 
-            new OctetString(getDeviceSerial())) {
+            new OctetString()) {
             @Override
             public OctetString getValue() {
-                return new OctetString(getDeviceSerial());
+                return new OctetString(build.get());
             }
         };
         
         // Memory Information MOs
         totalMemory = new MOScalar<Counter64>(TOTAL_MEMORY, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Counter64(getTotalMemory())) {
+            new Counter64(0)) {
             @Override
             public Counter64 getValue() {
-                return new Counter64(getTotalMemory());
+                return new Counter64(memory.get().total);
             }
         };
         
         availableMemory = new MOScalar<Counter64>(AVAILABLE_MEMORY, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Counter64(getAvailableMemory())) {
+            new Counter64(0)) {
             @Override
             public Counter64 getValue() {
-                return new Counter64(getAvailableMemory());
+                return new Counter64(memory.get().available);
             }
         };
         
         usedMemory = new MOScalar<Counter64>(USED_MEMORY, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Counter64(getUsedMemory())) {
+            new Counter64(0)) {
             @Override
             public Counter64 getValue() {
-                return new Counter64(getUsedMemory());
+                return new Counter64(memory.get().used);
             }
         };
         
         memoryUsagePercent = new MOScalar<Integer32>(MEMORY_USAGE_PERCENT, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Integer32(getMemoryUsagePercent())) {
+            new Integer32(0)) {
             @Override
             public Integer32 getValue() {
-                return new Integer32(getMemoryUsagePercent());
+                return new Integer32(memory.get().usagePercent);
             }
         };
         
         // Storage Information MOs
         totalStorage = new MOScalar<Counter64>(TOTAL_STORAGE, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Counter64(getTotalStorage())) {
+            new Counter64(0)) {
             @Override
             public Counter64 getValue() {
-                return new Counter64(getTotalStorage());
+                return new Counter64(storage.get().data.total);
             }
         };
         
         availableStorage = new MOScalar<Counter64>(AVAILABLE_STORAGE, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Counter64(getAvailableStorage())) {
+            new Counter64(0)) {
             @Override
             public Counter64 getValue() {
-                return new Counter64(getAvailableStorage());
+                return new Counter64(storage.get().data.available);
             }
         };
         
         usedStorage = new MOScalar<Counter64>(USED_STORAGE, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Counter64(getUsedStorage())) {
+            new Counter64(0)) {
             @Override
             public Counter64 getValue() {
-                return new Counter64(getUsedStorage());
+                return new Counter64(storage.get().data.used);
             }
         };
         
         storageUsagePercent = new MOScalar<Integer32>(STORAGE_USAGE_PERCENT, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Integer32(getStorageUsagePercent())) {
+            new Integer32(0)) {
             @Override
             public Integer32 getValue() {
-                return new Integer32(getStorageUsagePercent());
+                return new Integer32(storage.get().data.usagePercent);
             }
         };
         
         // Battery Information MOs
         batteryLevel = new MOScalar<Integer32>(BATTERY_LEVEL, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Integer32(getBatteryLevel())) {
+            new Integer32(0)) {
             @Override
             public Integer32 getValue() {
-                return new Integer32(getBatteryLevel());
+                return new Integer32(battery.get().level);
             }
         };
         
         batteryTemperature = new MOScalar<Integer32>(BATTERY_TEMPERATURE, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Integer32(getBatteryTemperature())) {
+            new Integer32(0)) {
             @Override
             public Integer32 getValue() {
-                return new Integer32(getBatteryTemperature());
+                return new Integer32(battery.get().temperature);
             }
         };
         
         batteryVoltage = new MOScalar<Integer32>(BATTERY_VOLTAGE, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Integer32(getBatteryVoltage())) {
+            new Integer32(0)) {
             @Override
             public Integer32 getValue() {
-                return new Integer32(getBatteryVoltage());
+                return new Integer32(battery.get().voltage);
             }
         };
         
         batteryStatus = new MOScalar<OctetString>(BATTERY_STATUS, MOAccessImpl.ACCESS_READ_ONLY, 
-            new OctetString(getBatteryStatus())) {
+            new OctetString()) {
             @Override
             public OctetString getValue() {
-                return new OctetString(getBatteryStatus());
+                return new OctetString(battery.get().status);
+            }
+        };
+        
+        batteryPlugged = new MOScalar<OctetString>(BATTERY_PLUGGED, MOAccessImpl.ACCESS_READ_ONLY, 
+            new OctetString()) {
+            @Override
+            public OctetString getValue() {
+                return new OctetString(battery.get().plugged);
+            }
+        };
+        
+        batteryHealth = new MOScalar<OctetString>(BATTERY_HEALTH, MOAccessImpl.ACCESS_READ_ONLY, 
+            new OctetString()) {
+            @Override
+            public OctetString getValue() {
+                return new OctetString(battery.get().health);
             }
         };
         
         // Network Information MOs
         networkType = new MOScalar<OctetString>(NETWORK_TYPE, MOAccessImpl.ACCESS_READ_ONLY, 
-            new OctetString(getNetworkType())) {
+            new OctetString()) {
             @Override
             public OctetString getValue() {
-                return new OctetString(getNetworkType());
+                return network.get().type;
             }
         };
         
         wifiSsid = new MOScalar<OctetString>(WIFI_SSID, MOAccessImpl.ACCESS_READ_ONLY, 
-            new OctetString(getWifiSsid())) {
+            new OctetString()) {
             @Override
             public OctetString getValue() {
-                return new OctetString(getWifiSsid());
+                return network.get().wifiSsid;
             }
         };
         
         wifiSignalStrength = new MOScalar<Integer32>(WIFI_SIGNAL_STRENGTH, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Integer32(getWifiSignalStrength())) {
+            new Integer32(0)) {
             @Override
             public Integer32 getValue() {
-                return new Integer32(getWifiSignalStrength());
+                return network.get().wifiSignalStrength;
             }
         };
         
         ipAddress = new MOScalar<OctetString>(IP_ADDRESS, MOAccessImpl.ACCESS_READ_ONLY, 
-            new OctetString(getIpAddress())) {
+            new OctetString()) {
             @Override
             public OctetString getValue() {
-                return new OctetString(getIpAddress());
+                return network.get().ipAddress;
             }
         };
         
         macAddress = new MOScalar<OctetString>(MAC_ADDRESS, MOAccessImpl.ACCESS_READ_ONLY, 
-            new OctetString(getMacAddress())) {
+            new OctetString()) {
             @Override
             public OctetString getValue() {
-                return new OctetString(getMacAddress());
+                return network.get().macAddress;
             }
         };
         
@@ -311,37 +425,169 @@ public class AndroidDeviceMib implements MOGroup {
         };
         
         cpuUsage = new MOScalar<Integer32>(CPU_USAGE, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Integer32(getCpuUsage())) {
+            new Integer32(0)) {
             @Override
             public Integer32 getValue() {
-                return new Integer32(getCpuUsage());
+                return new Integer32(cpu.get().utilization.getPercent(0, CpuStatSampler.BUSY));
             }
         };
         
         cpuFrequency = new MOScalar<Integer32>(CPU_FREQUENCY, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Integer32(getCpuFrequency())) {
+            new Integer32(0)) {
+            @Override
+            public Integer32 getValue() {
+                return new Integer32(cpu.get().frequencyMhz);
+            }
+        };
+        
+        cpuUsage1Min = new MOScalar<Integer32>(CPU_USAGE_1_MIN, MOAccessImpl.ACCESS_READ_ONLY, 
+            new Integer32(0)) {
+            @Override
+            public Integer32 getValue() {
+                return new Integer32(cpu.get().utilization.getAverage(0, CpuStatSampler.AVERAGE_1_MIN));
+            }
+        };
+        
+        cpuUsage5Min = new MOScalar<Integer32>(CPU_USAGE_5_MIN, MOAccessImpl.ACCESS_READ_ONLY, 
+            new Integer32(0)) {
+            @Override
+            public Integer32 getValue() {
+                return new Integer32(cpu.get().utilization.getAverage(0, CpuStatSampler.AVERAGE_5_MIN));
+            }
+        };
+        
+        cpuUsage15Min = new MOScalar<Integer32>(CPU_USAGE_15_MIN, MOAccessImpl.ACCESS_READ_ONLY, 
+            new Integer32(0)) {
             @Override
             public Integer32 getValue() {
-                return new Integer32(getCpuFrequency());
+                return new Integer32(cpu.get().utilization.getAverage(0, CpuStatSampler.AVERAGE_15_MIN));
             }
         };
         
+        // Row n + 1 is cpuN; row 0 of the utilization (all cores) is served by the scalars above
+        cpuCoreTable = new MibTable(CPU_CORE_ENTRY)
+            .addColumn(CPU_CORE_INDEX, row -> new Integer32(row))
+            .addColumn(CPU_CORE_NAME, row -> new OctetString("cpu" + (row - 1)))
+            .addColumn(CPU_CORE_ONLINE, row -> new Integer32(cpu.get().utilization.isOnline(row) ? 1 : 2))
+            .addColumn(CPU_CORE_USER, row -> cpuPercent(row, CpuStatSampler.USER))
+            .addColumn(CPU_CORE_SYSTEM, row -> cpuPercent(row, CpuStatSampler.SYSTEM))
+            .addColumn(CPU_CORE_IOWAIT, row -> cpuPercent(row, CpuStatSampler.IOWAIT))
+            .addColumn(CPU_CORE_IRQ, row -> cpuPercent(row, CpuStatSampler.IRQ))
+            .addColumn(CPU_CORE_IDLE, row -> cpuPercent(row, CpuStatSampler.IDLE))
+            .addColumn(CPU_CORE_USAGE, row -> cpuPercent(row, CpuStatSampler.BUSY))
+            .addColumn(CPU_CORE_USAGE_1_MIN, row -> cpuAverage(row, CpuStatSampler.AVERAGE_1_MIN))
+            .addColumn(CPU_CORE_USAGE_5_MIN, row -> cpuAverage(row, CpuStatSampler.AVERAGE_5_MIN))
+            .addColumn(CPU_CORE_USAGE_15_MIN, row -> cpuAverage(row, CpuStatSampler.AVERAGE_15_MIN))
+            .addColumn(CPU_CORE_FREQUENCY, row -> new Integer32(cpu.get().frequencies.getCurrentMhz(row - 1)))
+            .addColumn(CPU_CORE_MIN_FREQUENCY, row -> new Integer32(cpu.get().frequencies.getMinMhz(row - 1)))
+            .addColumn(CPU_CORE_MAX_FREQUENCY, row -> new Integer32(cpu.get().frequencies.getMaxMhz(row - 1)))
+            .addColumn(CPU_CORE_HARDWARE_MAX_FREQUENCY,
+                row -> new Integer32(cpu.get().frequencies.getHardwareMaxMhz(row - 1)))
+            .addColumn(CPU_CORE_GOVERNOR, row -> new OctetString(cpu.get().frequencies.getGovernor(row - 1)))
+            .addColumn(CPU_CORE_AVERAGE_FREQUENCY,
+                row -> new Integer32(cpu.get().frequencies.getAverageMhz(row - 1)))
+            .addColumn(CPU_CORE_TOP_RESIDENCY, row -> new Integer32(cpu.get().frequencies.getTopResidency(row - 1)));
+        int[] coreRows = new int[cpuStat.getCoreCount()];
+        for (int i = 0; i < coreRows.length; i++) {
+            coreRows[i] = i + 1;
+        }
+        cpuCoreTable.setRows(coreRows);
+        
+        // Row n is the n-th (core, frequency) pair, cores in order and frequencies ascending
+        int residencyRows = 0;
+        for (int core = 0; core < cpuStat.getCoreCount(); core++) {
+            residencyRows += cpuFreq.getFrequenciesMhz(core).length;
+        }
+        final int[] residencyCore = new int[residencyRows];
+        final int[] residencyFrequency = new int[residencyRows];
+        final int[] residencyMhz = new int[residencyRows];
+        int n = 0;
+        for (int core = 0; core < cpuStat.getCoreCount(); core++) {
+            int[] frequencies = cpuFreq.getFrequenciesMhz(core);
+            for (int i = 0; i < frequencies.length; i++, n++) {
+                residencyCore[n] = core;
+                residencyFrequency[n] = i;
+                residencyMhz[n] = frequencies[i];
+            }
+        }
+        cpuResidencyTable = new MibTable(CPU_RESIDENCY_ENTRY)
+            .addColumn(CPU_RESIDENCY_INDEX, row -> new Integer32(row))
+            .addColumn(CPU_RESIDENCY_CORE, row -> new Integer32(residencyCore[row - 1] + 1))
+            .addColumn(CPU_RESIDENCY_FREQUENCY, row -> new Integer32(residencyMhz[row - 1]))
+            .addColumn(CPU_RESIDENCY_PERCENT, row -> new Integer32(
+                cpu.get().frequencies.getResidency(residencyCore[row - 1], residencyFrequency[row - 1])));
+        int[] residencyIndexes = new int[residencyRows];
+        for (int i = 0; i < residencyIndexes.length; i++) {
+            residencyIndexes[i] = i + 1;
+        }
+        cpuResidencyTable.setRows(residencyIndexes);
+        
         // Application Information MOs
         runningProcesses = new MOScalar<Integer32>(RUNNING_PROCESSES, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Integer32(getRunningProcesses())) {
+            new Integer32(0)) {
             @Override
             public Integer32 getValue() {
-                return new Integer32(getRunningProcesses());
+                return new Integer32(processes.get().running);
             }
         };
         
         uptime = new MOScalar<Counter64>(UPTIME, MOAccessImpl.ACCESS_READ_ONLY, 
-            new Counter64(getUptime())) {
+            new Counter64(0)) {
             @Override
             public Counter64 getValue() {
                 return new Counter64(getUptime());
             }
         };
+        
+        // Row n is the n-th group added to the sampler
+        final List<MetricGroup<?>> groups = sampler.getGroups();
+        metricGroupTable = new MibTable(METRIC_GROUP_ENTRY)
+            .addColumn(METRIC_GROUP_INDEX, row -> new Integer32(row))
+            .addColumn(METRIC_GROUP_NAME, row -> new OctetString(groups.get(row - 1).getName()))
+            .addColumn(METRIC_GROUP_TTL, row -> new Gauge32(groups.get(row - 1).getTtlMillis()))
+            .addColumn(METRIC_GROUP_AGE, row -> new Integer32(clampToInt(groups.get(row - 1).getAgeMillis())))
+            .addColumn(METRIC_GROUP_LAST_DURATION, row -> new Gauge32(groups.get(row - 1).getLastDurationMillis()))
+            .addColumn(METRIC_GROUP_DEADLINE_MISSES, row -> new Counter64(groups.get(row - 1).getDeadlineMissCount()))
+            // active(1), warming(2), dormant(3)
+            .addColumn(METRIC_GROUP_STATE, row -> new Integer32(groups.get(row - 1).getState().ordinal() + 1))
+            .addColumn(METRIC_GROUP_LAST_ACCESS,
+                row -> new Integer32(clampToInt(groups.get(row - 1).getLastAccessAgeMillis())))
+            .addColumn(METRIC_GROUP_WARM_UP, row -> new Integer32(clampToInt(groups.get(row - 1).getWarmUpMillis())))
+            .addColumn(METRIC_GROUP_INTERVAL, row -> new Gauge32(sampler.getIntervalMillis(groups.get(row - 1))));
+        int[] groupRows = new int[groups.size()];
+        for (int i = 0; i < groupRows.length; i++) {
+            groupRows[i] = i + 1;
+        }
+        metricGroupTable.setRows(groupRows);
+        
+        // charging(1), discharging(2), powerSave(3), idle(4)
+        powerState = new MOScalar<Integer32>(POWER_STATE, MOAccessImpl.ACCESS_READ_ONLY,
+            new Integer32(0)) {
+            @Override
+            public Integer32 getValue() {
+                return new Integer32(powerMonitor.getState().ordinal() + 1);
+            }
+        };
+        
+        samplerWakeupsPerHour = new MOScalar<Gauge32>(SAMPLER_WAKEUPS_PER_HOUR, MOAccessImpl.ACCESS_READ_ONLY,
+            new Gauge32(0)) {
+            @Override
+            public Gauge32 getValue() {
+                return new Gauge32(sampler.getWakeupsPerHour());
+            }
+        };
+        
+        samplerWakeups = new MOScalar<Counter64>(SAMPLER_WAKEUPS, MOAccessImpl.ACCESS_READ_ONLY,
+            new Counter64(0)) {
+            @Override
+            public Counter64 getValue() {
+                return new Counter64(sampler.getWakeupCount());
+            }
+        };
+    }
+
+    private static int clampToInt(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
     }
 
     @Override
@@ -370,6 +616,8 @@ public class AndroidDeviceMib implements MOGroup {
         server.register(batteryTemperature, context);
         server.register(batteryVoltage, context);
         server.register(batteryStatus, context);
+        server.register(batteryPlugged, context);
+        server.register(batteryHealth, context);
         
         // Network Information
         server.register(networkType, context);
@@ -382,14 +630,36 @@ public class AndroidDeviceMib implements MOGroup {
         server.register(cpuCores, context);
         server.register(cpuUsage, context);
         server.register(cpuFrequency, context);
+        server.register(cpuUsage1Min, context);
+        server.register(cpuUsage5Min, context);
+        server.register(cpuUsage15Min, context);
+        cpuCoreTable.registerMOs(server, context);
+        cpuResidencyTable.registerMOs(server, context);
         
         // Application Information
         server.register(runningProcesses, context);
         server.register(uptime, context);
+        
+        // Metric Groups
+        metricGroupTable.registerMOs(server, context);
+        server.register(powerState, context);
+        server.register(samplerWakeupsPerHour, context);
+        server.register(samplerWakeups, context);
+        
+        // MO getters only read snapshots from here on
+        sampler.start();
     }
 
     @Override
     public void unregisterMOs(MOServer server, OctetString context) {
+        sampler.stop();
+        // Release the kept-open /proc and /sys descriptors
+        cpuStat.close();
+        cpuFreq.close();
+        netDev.close();
+        processScan.close();
+        thermalZones.close();
+        
         // System Information
         server.unregister(deviceModel, context);
         server.unregister(deviceManufacturer, context);
@@ -414,6 +684,8 @@ public class AndroidDeviceMib implements MOGroup {
         server.unregister(batteryTemperature, context);
         server.unregister(batteryVoltage, context);
         server.unregister(batteryStatus, context);
+        server.unregister(batteryPlugged, context);
+        server.unregister(batteryHealth, context);
         
         // Network Information
         server.unregister(networkType, context);
@@ -426,246 +698,313 @@ public class AndroidDeviceMib implements MOGroup {
         server.unregister(cpuCores, context);
         server.unregister(cpuUsage, context);
         server.unregister(cpuFrequency, context);
+        server.unregister(cpuUsage1Min, context);
+        server.unregister(cpuUsage5Min, context);
+        server.unregister(cpuUsage15Min, context);
+        cpuCoreTable.unregisterMOs(server, context);
+        cpuResidencyTable.unregisterMOs(server, context);
         
         // Application Information
         server.unregister(runningProcesses, context);
         server.unregister(uptime, context);
+        
+        // Metric Groups
+        metricGroupTable.unregisterMOs(server, context);
+        server.unregister(powerState, context);
+        server.unregister(samplerWakeupsPerHour, context);
+        server.unregister(samplerWakeups, context);
     }
 
-    // Helper methods to get real device statistics
-    
-    private String getDeviceSerial() {
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                return Build.getSerial();
-            } else {
-                return Build.SERIAL;
-            }
-        } catch (SecurityException e) {
-            return "UNKNOWN";
-        }
+    // Metric groups: each is read from its data source in one call on the sampler thread
+
+    private void initializeGroups() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        sampler.setIdleMillis(prefs.getInt("group_idle_ms", 600000));
+        sampler.setPowerPolicy(PowerPolicy.parse(prefs.getString("power_policy", PowerPolicy.DEFAULT)), powerMonitor);
+        build = addGroup(prefs, "build", MetricGroup.NEVER, this::getDeviceSerial, "UNKNOWN");
+        memory = addGroup(prefs, "memory", 5000, this::collectMemory, CapacitySample.UNAVAILABLE);
+        storage = addGroup(prefs, "storage", 60000, this::collectStorage, StorageSample.UNAVAILABLE);
+        // Event driven: every battery-changed broadcast publishes a new snapshot
+        battery = addGroup(prefs, "battery", MetricGroup.NEVER, batteryMonitor::getState,
+            BatteryMonitor.BatteryState.UNKNOWN);
+        batteryMonitor.addListener(battery::publish);
+        battery.onActivate(batteryMonitor::start);
+        battery.onDeactivate(batteryMonitor::stop);
+        // Event driven: every default network change publishes a new snapshot
+        network = addGroup(prefs, "network", MetricGroup.NEVER, networkMonitor::getState,
+            NetworkMonitor.NetworkState.UNKNOWN);
+        networkMonitor.addListener(network::publish);
+        network.onActivate(networkMonitor::start);
+        network.onDeactivate(networkMonitor::stop);
+        cpu = addGroup(prefs, "cpu", 5000, this::collectCpu,
+            new CpuSample(CpuStatSampler.Utilization.unavailable(cpuStat.getCoreCount() + 1),
+                CpuFreqSampler.Frequencies.unavailable(cpuFreq)));
+        // Reopened by the next sample
+        cpu.onDeactivate(() -> {
+            cpuStat.close();
+            cpuFreq.close();
+        });
+        processes = addGroup(prefs, "processes", 10000, this::collectProcesses,
+            new ProcessSample(ProcessSampler.Processes.EMPTY, -1));
+        processes.onDeactivate(processScan::close);
+        // Interface indexes are kept across restarts in "if_names"
+        String knownInterfaces = prefs.getString("if_names", "");
+        List<String> knownNames = knownInterfaces.isEmpty() ?
+            new ArrayList<String>() : Arrays.asList(knownInterfaces.split(","));
+        netDev = new NetDevSampler(knownNames);
+        savedInterfaceCount = knownNames.size();
+        interfaces = addGroup(prefs, "interfaces", 10000, this::collectInterfaces, NetDevSampler.Interfaces.EMPTY);
+        interfaces.onDeactivate(netDev::close);
+        thermal = addGroup(prefs, "thermal", 10000, this::collectThermal,
+            new ThermalSample(ThermalSampler.Thermal.EMPTY, -1));
+        thermal.onDeactivate(thermalZones::close);
     }
-    
-    private long getTotalMemory() {
-        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
-        activityManager.getMemoryInfo(memoryInfo);
-        return memoryInfo.totalMem;
+
+    /**
+     * The TTL of each group can be overridden with the "ttl_<group>_ms" preference; 0 collects once.
+     *
+     * @param unavailable served until the first collection finishes, if a request cannot wait for it
+     */
+    private <T> MetricGroup<T> addGroup(SharedPreferences prefs, String name, long defaultTtlMillis,
+                                        java.util.function.Supplier<T> collector, T unavailable) {
+        long ttl = prefs.getInt("ttl_" + name + "_ms", (int) defaultTtlMillis);
+        MetricGroup<T> group = new MetricGroup<>(name, ttl, collector, unavailable, singleFlight);
+        sampler.add(group);
+        return group;
     }
-    
-    private long getAvailableMemory() {
-        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
-        activityManager.getMemoryInfo(memoryInfo);
-        return memoryInfo.availMem;
+
+    public MetricSampler getSampler() {
+        return sampler;
     }
-    
-    private long getUsedMemory() {
-        return getTotalMemory() - getAvailableMemory();
+
+    /**
+     * @return the /proc/net/dev interface counters, shared with IF-MIB
+     */
+    public MetricGroup<NetDevSampler.Interfaces> getInterfaces() {
+        return interfaces;
     }
-    
-    private int getMemoryUsagePercent() {
-        long total = getTotalMemory();
-        if (total == 0) return 0;
-        return (int) ((getUsedMemory() * 100) / total);
+
+    // Snapshots shared with the system MIB's sysDescr
+
+    MetricGroup<BatteryMonitor.BatteryState> getBattery() {
+        return battery;
     }
-    
-    private long getTotalStorage() {
-        StatFs stat = new StatFs(Environment.getDataDirectory().getPath());
-        return stat.getBlockCountLong() * stat.getBlockSizeLong();
+
+    MetricGroup<NetworkMonitor.NetworkState> getNetwork() {
+        return network;
     }
-    
-    private long getAvailableStorage() {
-        StatFs stat = new StatFs(Environment.getDataDirectory().getPath());
-        return stat.getAvailableBlocksLong() * stat.getBlockSizeLong();
+
+    // Snapshots shared with HOST-RESOURCES-MIB
+
+    MetricGroup<CapacitySample> getMemory() {
+        return memory;
     }
-    
-    private long getUsedStorage() {
-        return getTotalStorage() - getAvailableStorage();
+
+    MetricGroup<StorageSample> getStorage() {
+        return storage;
     }
-    
-    private int getStorageUsagePercent() {
-        long total = getTotalStorage();
-        if (total == 0) return 0;
-        return (int) ((getUsedStorage() * 100) / total);
+
+    MetricGroup<CpuSample> getCpu() {
+        return cpu;
     }
-    
-    private int getBatteryLevel() {
-        try {
-            BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
-            return batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
-        } catch (Exception e) {
-            return -1;
+
+    MetricGroup<ProcessSample> getProcesses() {
+        return processes;
+    }
+
+    // Snapshots shared with the thermal MIB
+
+    MetricGroup<ThermalSample> getThermal() {
+        return thermal;
+    }
+
+    int getCpuCoreCount() {
+        return cpuStat.getCoreCount();
+    }
+
+    /**
+     * Total and available bytes of memory or storage from one read, with the derived values
+     * computed once, so the four OIDs of a snapshot always satisfy used + available = total.
+     */
+    static final class CapacitySample {
+        static final CapacitySample UNAVAILABLE = new CapacitySample(0, 0);
+
+        final long total;
+        final long available;
+        final long used;
+        final int usagePercent;
+
+        CapacitySample(long total, long available) {
+            this.total = total;
+            this.available = available;
+            this.used = total - available;
+            this.usagePercent = (total == 0) ? 0 : (int) ((used * 100) / total);
         }
     }
-    
-    private int getBatteryTemperature() {
-        try {
-            BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
-            return batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
-        } catch (Exception e) {
-            return -1;
+
+    /**
+     * The volumes served by the storage OIDs (/data) and HOST-RESOURCES hrStorage.
+     */
+    static final class StorageSample {
+        static final StorageSample UNAVAILABLE = new StorageSample(CapacitySample.UNAVAILABLE,
+            CapacitySample.UNAVAILABLE, CapacitySample.UNAVAILABLE);
+
+        final CapacitySample data;
+        final CapacitySample system;
+        /** App-specific external storage volume; UNAVAILABLE if not mounted. */
+        final CapacitySample external;
+
+        StorageSample(CapacitySample data, CapacitySample system, CapacitySample external) {
+            this.data = data;
+            this.system = system;
+            this.external = external;
         }
     }
-    
-    private int getBatteryVoltage() {
-        try {
-            BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
-            return batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_AVERAGE);
-        } catch (Exception e) {
-            return -1;
+
+    static final class CpuSample {
+        final CpuStatSampler.Utilization utilization;
+        final CpuFreqSampler.Frequencies frequencies;
+        // cpu0, for CPU Frequency
+        final int frequencyMhz;
+
+        CpuSample(CpuStatSampler.Utilization utilization, CpuFreqSampler.Frequencies frequencies) {
+            this.utilization = utilization;
+            this.frequencies = frequencies;
+            this.frequencyMhz = frequencies.getCurrentMhz(0);
         }
     }
-    
-    private String getBatteryStatus() {
-        try {
-            BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
-            int status = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_STATUS);
-            switch (status) {
-                case BatteryManager.BATTERY_STATUS_CHARGING: return "CHARGING";
-                case BatteryManager.BATTERY_STATUS_DISCHARGING: return "DISCHARGING";
-                case BatteryManager.BATTERY_STATUS_FULL: return "FULL";
-                case BatteryManager.BATTERY_STATUS_NOT_CHARGING: return "NOT_CHARGING";
-                default: return "UNKNOWN";
-            }
-        } catch (Exception e) {
-            return "UNKNOWN";
+
+    static final class ProcessSample {
+        final ProcessSampler.Processes table;
+        final int running;
+
+        ProcessSample(ProcessSampler.Processes table, int running) {
+            this.table = table;
+            this.running = running;
         }
     }
-    
-    private String getNetworkType() {
-        try {
-            ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-            NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
-            if (activeNetwork != null) {
-                return activeNetwork.getTypeName();
-            }
-            return "NONE";
-        } catch (Exception e) {
-            return "UNKNOWN";
+
+    static final class ThermalSample {
+        final ThermalSampler.Thermal zones;
+        // PowerManager THERMAL_STATUS_*, -1 before Android 10
+        final int status;
+        final boolean throttling;
+
+        ThermalSample(ThermalSampler.Thermal zones, int status) {
+            this.zones = zones;
+            this.status = status;
+            // The framework's own mitigation counts even if sysfs is not readable for the app
+            this.throttling = zones.isThrottling() || status >= PowerManager.THERMAL_STATUS_LIGHT;
         }
     }
-    
-    private String getWifiSsid() {
+
+    private CapacitySample collectMemory() {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        return new CapacitySample(memoryInfo.totalMem, memoryInfo.availMem);
+    }
+
+    private StorageSample collectStorage() {
+        File external = Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState()) ?
+            context.getExternalFilesDir(null) : null;
+        return new StorageSample(statVolume(Environment.getDataDirectory()),
+            statVolume(Environment.getRootDirectory()),
+            (external != null) ? statVolume(external) : CapacitySample.UNAVAILABLE);
+    }
+
+    private static CapacitySample statVolume(File path) {
         try {
-            WifiManager wifiManager = (WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-            WifiInfo wifiInfo = wifiManager.getConnectionInfo();
-            String ssid = wifiInfo.getSSID();
-            return ssid != null ? ssid.replace("\"", "") : "NONE";
-        } catch (Exception e) {
-            return "UNKNOWN";
+            StatFs stat = new StatFs(path.getPath());
+            return new CapacitySample(stat.getBlockCountLong() * stat.getBlockSizeLong(),
+                stat.getAvailableBlocksLong() * stat.getBlockSizeLong());
+        } catch (IllegalArgumentException e) {
+            // Not mounted
+            return CapacitySample.UNAVAILABLE;
         }
     }
-    
-    private int getWifiSignalStrength() {
+
+    private CpuSample collectCpu() {
+        CpuStatSampler.Utilization utilization;
         try {
-            WifiManager wifiManager = (WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-            WifiInfo wifiInfo = wifiManager.getConnectionInfo();
-            return wifiInfo.getRssi();
+            utilization = cpuStat.sample();
         } catch (Exception e) {
-            return -999;
+            utilization = CpuStatSampler.Utilization.unavailable(cpuStat.getCoreCount() + 1);
         }
+        // One pass over the cpufreq files of all cores per tick
+        return new CpuSample(utilization, cpuFreq.sample());
     }
-    
-    private String getIpAddress() {
+
+    private ThermalSample collectThermal() {
+        return new ThermalSample(thermalZones.sample(), getThermalStatus());
+    }
+
+    private ProcessSample collectProcesses() {
         try {
-            List<NetworkInterface> interfaces = Collections.list(NetworkInterface.getNetworkInterfaces());
-            for (NetworkInterface intf : interfaces) {
-                List<InetAddress> addrs = Collections.list(intf.getInetAddresses());
-                for (InetAddress addr : addrs) {
-                    if (!addr.isLoopbackAddress() && !addr.isLinkLocalAddress()) {
-                        String sAddr = addr.getHostAddress();
-                        if (sAddr.indexOf(':') < 0) { // IPv4
-                            return sAddr;
-                        }
-                    }
-                }
-            }
-            return "UNKNOWN";
-        } catch (Exception e) {
-            return "UNKNOWN";
+            ProcessSampler.Processes table = processScan.sample();
+            return new ProcessSample(table, table.size());
+        } catch (IOException e) {
+            return new ProcessSample(ProcessSampler.Processes.EMPTY, -1);
         }
     }
-    
-    private String getMacAddress() {
+
+    private NetDevSampler.Interfaces collectInterfaces() {
+        NetDevSampler.Interfaces sample;
         try {
-            List<NetworkInterface> interfaces = Collections.list(NetworkInterface.getNetworkInterfaces());
-            for (NetworkInterface intf : interfaces) {
-                if (intf.getName().equalsIgnoreCase("wlan0")) {
-                    byte[] mac = intf.getHardwareAddress();
-                    if (mac != null) {
-                        StringBuilder sb = new StringBuilder();
-                        for (int i = 0; i < mac.length; i++) {
-                            sb.append(String.format("%02X%s", mac[i], (i < mac.length - 1) ? ":" : ""));
-                        }
-                        return sb.toString();
-                    }
-                }
-            }
-            return "UNKNOWN";
-        } catch (Exception e) {
-            return "UNKNOWN";
+            sample = netDev.sample();
+        } catch (IOException e) {
+            // Keep serving the previous snapshot; its rows are registered
+            throw new UncheckedIOException(e);
         }
+        if (sample.size() > savedInterfaceCount) {
+            PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString("if_names", String.join(",", netDev.getNames())).apply();
+            savedInterfaceCount = sample.size();
+        }
+        return sample;
     }
-    
-    private int getCpuCores() {
-        return Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Read on every request rather than from a group: one clock read, and polling it must not
+     * keep the processes group awake. Same clock as /proc/uptime, including deep sleep.
+     */
+    private long getUptime() {
+        return SystemClock.elapsedRealtime();
     }
+
+    private Integer32 cpuPercent(int row, int category) {
+        return new Integer32(cpu.get().utilization.getPercent(row, category));
+    }
+
+    private Integer32 cpuAverage(int row, int window) {
+        return new Integer32(cpu.get().utilization.getAverage(row, window));
+    }
+
+    // Helper methods to get real device statistics
     
-    private int getCpuUsage() {
+    private String getDeviceSerial() {
         try {
-            BufferedReader reader = new BufferedReader(new FileReader("/proc/stat"));
-            String line = reader.readLine();
-            reader.close();
-            if (line != null && line.startsWith("cpu ")) {
-                String[] tokens = line.split("\\s+");
-                long idle = Long.parseLong(tokens[4]);
-                long total = 0;
-                for (int i = 1; i < tokens.length; i++) {
-                    total += Long.parseLong(tokens[i]);
-                }
-                return (int) (((total - idle) * 100) / total);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                return Build.getSerial();
+            } else {
+                return Build.SERIAL;
             }
-            return -1;
-        } catch (Exception e) {
-            return -1;
+        } catch (SecurityException e) {
+            return "UNKNOWN";
         }
     }
     
-    private int getCpuFrequency() {
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader("/sys/devices/system/cpu/cpu0/cpufreq/scaling_cur_freq"));
-            String line = reader.readLine();
-            reader.close();
-            if (line != null) {
-                return Integer.parseInt(line) / 1000; // Convert from kHz to MHz
-            }
-            return -1;
-        } catch (Exception e) {
-            return -1;
-        }
+    private int getCpuCores() {
+        return Runtime.getRuntime().availableProcessors();
     }
     
-    private int getRunningProcesses() {
-        try {
-            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-            List<ActivityManager.RunningAppProcessInfo> processes = activityManager.getRunningAppProcesses();
-            return processes != null ? processes.size() : 0;
-        } catch (Exception e) {
+    private int getThermalStatus() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
             return -1;
         }
-    }
-    
-    private long getUptime() {
         try {
-            BufferedReader reader = new BufferedReader(new FileReader("/proc/uptime"));
-            String line = reader.readLine();
-            reader.close();
-            if (line != null) {
-                String[] tokens = line.split("\\s+");
-                return (long) (Double.parseDouble(tokens[0]) * 1000); // Convert to milliseconds
-            }
-            return -1;
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            return powerManager.getCurrentThermalStatus();
         } catch (Exception e) {
             return -1;
         }
@@ -0,0 +1,165 @@
+package com.example.mib;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Battery state kept up to date by the sticky ACTION_BATTERY_CHANGED broadcast, so reading
+ * it costs no IPC. The broadcast is also the only source of the real temperature and voltage;
+ * BatteryManager properties only cover capacity, current and status.
+ */
+public class BatteryMonitor {
+
+    private static final String TAG = "BatteryMonitor";
+
+    private static final IntentFilter FILTER = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+
+    private final Context context;
+    private final List<Consumer<BatteryState>> listeners = new CopyOnWriteArrayList<>();
+    private volatile BatteryState state;
+    private BroadcastReceiver receiver;
+
+    /**
+     * One battery-changed broadcast, decoded.
+     */
+    public static final class BatteryState {
+        public static final BatteryState UNKNOWN = new BatteryState(-1, -1, -1, "UNKNOWN", "UNKNOWN", "UNKNOWN");
+
+        /** Percent (0-100). */
+        public final int level;
+        /** Celsius * 10. */
+        public final int temperature;
+        /** Millivolts. */
+        public final int voltage;
+        public final String status;
+        public final String plugged;
+        public final String health;
+
+        BatteryState(int level, int temperature, int voltage, String status, String plugged, String health) {
+            this.level = level;
+            this.temperature = temperature;
+            this.voltage = voltage;
+            this.status = status;
+            this.plugged = plugged;
+            this.health = health;
+        }
+
+        static BatteryState fromIntent(Intent intent) {
+            int rawLevel = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            int level = (rawLevel >= 0 && scale > 0) ? rawLevel * 100 / scale : -1;
+            return new BatteryState(level,
+                intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, -1),
+                intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, -1),
+                statusName(intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1)),
+                pluggedName(intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1)),
+                healthName(intent.getIntExtra(BatteryManager.EXTRA_HEALTH, -1)));
+        }
+    }
+
+    public BatteryMonitor(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Called on the main thread with every new state.
+     */
+    public void addListener(Consumer<BatteryState> listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void start() {
+        if (receiver != null) {
+            return;
+        }
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                update(intent);
+            }
+        };
+        // The broadcast is sticky: registering returns the current state right away
+        Intent current = context.registerReceiver(receiver, FILTER);
+        if (current != null) {
+            update(current);
+        }
+        android.util.Log.i(TAG, "Listening for battery changes");
+    }
+
+    public synchronized void stop() {
+        if (receiver != null) {
+            try {
+                context.unregisterReceiver(receiver);
+            } catch (IllegalArgumentException e) {
+                // Not registered
+            }
+            receiver = null;
+        }
+        // Without the receiver the last state would go stale
+        state = null;
+    }
+
+    /**
+     * @return the latest state; while stopped it is read from the sticky broadcast on every call
+     */
+    public BatteryState getState() {
+        BatteryState current = state;
+        if (current != null) {
+            return current;
+        }
+        try {
+            Intent sticky = context.registerReceiver(null, FILTER);
+            return (sticky != null) ? BatteryState.fromIntent(sticky) : BatteryState.UNKNOWN;
+        } catch (Exception e) {
+            return BatteryState.UNKNOWN;
+        }
+    }
+
+    private void update(Intent intent) {
+        BatteryState updated = BatteryState.fromIntent(intent);
+        state = updated;
+        for (Consumer<BatteryState> listener : listeners) {
+            listener.accept(updated);
+        }
+    }
+
+    private static String statusName(int status) {
+        switch (status) {
+            case BatteryManager.BATTERY_STATUS_CHARGING: return "CHARGING";
+            case BatteryManager.BATTERY_STATUS_DISCHARGING: return "DISCHARGING";
+            case BatteryManager.BATTERY_STATUS_FULL: return "FULL";
+            case BatteryManager.BATTERY_STATUS_NOT_CHARGING: return "NOT_CHARGING";
+            default: return "UNKNOWN";
+        }
+    }
+
+    private static String pluggedName(int plugged) {
+        switch (plugged) {
+            case 0: return "NONE";
+            case BatteryManager.BATTERY_PLUGGED_AC: return "AC";
+            case BatteryManager.BATTERY_PLUGGED_USB: return "USB";
+            case BatteryManager.BATTERY_PLUGGED_WIRELESS: return "WIRELESS";
+            case 8: return "DOCK"; // BATTERY_PLUGGED_DOCK, API 33+
+            default: return "UNKNOWN";
+        }
+    }
+
+    private static String healthName(int health) {
+        switch (health) {
+            case BatteryManager.BATTERY_HEALTH_GOOD: return "GOOD";
+            case BatteryManager.BATTERY_HEALTH_OVERHEAT: return "OVERHEAT";
+            case BatteryManager.BATTERY_HEALTH_DEAD: return "DEAD";
+            case BatteryManager.BATTERY_HEALTH_OVER_VOLTAGE: return "OVER_VOLTAGE";
+            case BatteryManager.BATTERY_HEALTH_UNSPECIFIED_FAILURE: return "FAILURE";
+            case BatteryManager.BATTERY_HEALTH_COLD: return "COLD";
+            default: return "UNKNOWN";
+        }
+    }
+}
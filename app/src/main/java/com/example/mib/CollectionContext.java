@@ -0,0 +1,91 @@
+package com.example.mib;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Scope for one PDU or one sampling tick in which each data source is read at most once.
+ * Collectors can read shared sources through {@link #read}, and every OID of a metric
+ * group answered within one PDU comes from the same snapshot.
+ *
+ * A context opened for a request carries the request's deadline, which bounds how long
+ * a read may wait for a collection before it is served the last known value.
+ *
+ * Contexts are per thread; nested opens share the outermost context and its deadline.
+ */
+public final class CollectionContext implements AutoCloseable {
+
+    private static final ThreadLocal<CollectionContext> CURRENT = new ThreadLocal<>();
+
+    private final Map<Object, Object> values = new HashMap<>();
+    private int depth;
+    // System.nanoTime() deadline, or 0 for none
+    private long deadlineNanos;
+
+    private CollectionContext() {
+    }
+
+    /**
+     * Open a context without a deadline on the calling thread; close it with try-with-resources.
+     */
+    public static CollectionContext open() {
+        return open(0);
+    }
+
+    /**
+     * Open a context whose collections should finish within the given budget.
+     *
+     * @param budgetMillis time budget from now, 0 for no deadline
+     */
+    public static CollectionContext open(long budgetMillis) {
+        CollectionContext context = CURRENT.get();
+        if (context == null) {
+            context = new CollectionContext();
+            if (budgetMillis > 0) {
+                context.deadlineNanos = System.nanoTime() + budgetMillis * 1_000_000L;
+            }
+            CURRENT.set(context);
+        }
+        context.depth++;
+        return context;
+    }
+
+    /**
+     * @return milliseconds left until the calling thread's deadline (at least 0),
+     *         or Long.MAX_VALUE if no context with a deadline is open
+     */
+    public static long remainingMillis() {
+        CollectionContext context = CURRENT.get();
+        if (context == null || context.deadlineNanos == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, (context.deadlineNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    /**
+     * Read a value through the calling thread's context, or directly if none is open.
+     * Failed reads are not remembered.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T read(Object key, Supplier<T> reader) {
+        CollectionContext context = CURRENT.get();
+        if (context == null) {
+            return reader.get();
+        }
+        if (context.values.containsKey(key)) {
+            return (T) context.values.get(key);
+        }
+        T value = reader.get();
+        context.values.put(key, value);
+        return value;
+    }
+
+    @Override
+    public void close() {
+        if (--depth == 0) {
+            values.clear();
+            CURRENT.remove();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.mib;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Per-core cpufreq state from sysfs: current, minimum and maximum scaling frequency, the
+ * governor, and the residency at each frequency over the last interval from time_in_state.
+ * All files of all cores are read in one pass per sample through descriptors kept open.
+ *
+ * A scaling maximum below the hardware maximum, or residency that stays away from the top
+ * frequency under load, is how thermal throttling shows on big.LITTLE SoCs, where cpu0 is a
+ * little core that says nothing about the performance cluster.
+ */
+public class CpuFreqSampler {
+
+    private static final String TAG = "CpuFreqSampler";
+
+    private static final String UNKNOWN = "UNKNOWN";
+
+    private final Core[] cores;
+
+    private static final class Core {
+        final ProcFile current;
+        final ProcFile min;
+        final ProcFile max;
+        final ProcFile governor;
+        final ProcFile timeInState;
+        final ProcFile hardwareMax;
+        // Static, read once: the hardware maximum and the frequencies of time_in_state, ascending
+        int hardwareMaxMhz;
+        final long[] frequenciesKhz;
+        final long[] ticks;
+        final long[] previousTicks;
+        boolean primed;
+
+        Core(int core) {
+            String dir = "/sys/devices/system/cpu/cpu" + core + "/cpufreq/";
+            current = new ProcFile(dir + "scaling_cur_freq", 32);
+            min = new ProcFile(dir + "scaling_min_freq", 32);
+            max = new ProcFile(dir + "scaling_max_freq", 32);
+            governor = new ProcFile(dir + "scaling_governor", 32);
+            timeInState = new ProcFile(dir + "stats/time_in_state", 1024);
+            hardwareMax = new ProcFile(dir + "cpuinfo_max_freq", 32);
+            hardwareMaxMhz = readMhz(hardwareMax, true);
+            frequenciesKhz = readFrequencies(timeInState);
+            ticks = new long[frequenciesKhz.length];
+            previousTicks = new long[frequenciesKhz.length];
+        }
+
+        void close() {
+            current.close();
+            min.close();
+            max.close();
+            governor.close();
+            timeInState.close();
+        }
+    }
+
+    /**
+     * One sample of all cores, by core number.
+     */
+    public static final class Frequencies {
+        private final int[] currentMhz;
+        private final int[] minMhz;
+        private final int[] maxMhz;
+        private final int[] hardwareMaxMhz;
+        private final String[] governors;
+        private final int[] averageMhz;
+        // Per core, per frequency of getFrequenciesMhz(); -1 if time_in_state could not be read
+        private final int[][] residency;
+
+        private Frequencies(int[] currentMhz, int[] minMhz, int[] maxMhz, int[] hardwareMaxMhz, String[] governors,
+                            int[] averageMhz, int[][] residency) {
+            this.currentMhz = currentMhz;
+            this.minMhz = minMhz;
+            this.maxMhz = maxMhz;
+            this.hardwareMaxMhz = hardwareMaxMhz;
+            this.governors = governors;
+            this.averageMhz = averageMhz;
+            this.residency = residency;
+        }
+
+        /**
+         * @return -1 for every value, for before the first sample
+         */
+        static Frequencies unavailable(CpuFreqSampler sampler) {
+            int count = sampler.cores.length;
+            int[] none = new int[count];
+            Arrays.fill(none, -1);
+            String[] governors = new String[count];
+            Arrays.fill(governors, UNKNOWN);
+            int[][] residency = new int[count][];
+            for (int core = 0; core < count; core++) {
+                residency[core] = new int[sampler.cores[core].frequenciesKhz.length];
+                Arrays.fill(residency[core], -1);
+            }
+            return new Frequencies(none, none, none, none, governors, none, residency);
+        }
+
+        /**
+         * @return the frequency in MHz, or -1 if the core is offline or has no cpufreq
+         */
+        public int getCurrentMhz(int core) {
+            return currentMhz[core];
+        }
+
+        public int getMinMhz(int core) {
+            return minMhz[core];
+        }
+
+        /**
+         * @return the scaling maximum, lowered by the thermal framework while it throttles
+         */
+        public int getMaxMhz(int core) {
+            return maxMhz[core];
+        }
+
+        public int getHardwareMaxMhz(int core) {
+            return hardwareMaxMhz[core];
+        }
+
+        public String getGovernor(int core) {
+            return governors[core];
+        }
+
+        /**
+         * @return the time-weighted average frequency over the last interval
+         */
+        public int getAverageMhz(int core) {
+            return averageMhz[core];
+        }
+
+        /**
+         * @param i position in the core's frequency list, 0 for the lowest
+         * @return percentage of the last interval spent at the frequency
+         */
+        public int getResidency(int core, int i) {
+            return residency[core][i];
+        }
+
+        /**
+         * @return percentage of the last interval spent at the highest frequency, or -1
+         */
+        public int getTopResidency(int core) {
+            int[] values = residency[core];
+            return (values.length > 0) ? values[values.length - 1] : -1;
+        }
+    }
+
+    /**
+     * @param coreCount present cores, cpu0 to cpu(coreCount - 1)
+     */
+    public CpuFreqSampler(int coreCount) {
+        cores = new Core[coreCount];
+        for (int core = 0; core < coreCount; core++) {
+            cores[core] = new Core(core);
+        }
+    }
+
+    /**
+     * @return the frequencies of the core's time_in_state in MHz, ascending; empty if unknown
+     */
+    public int[] getFrequenciesMhz(int core) {
+        long[] khz = cores[core].frequenciesKhz;
+        int[] mhz = new int[khz.length];
+        for (int i = 0; i < khz.length; i++) {
+            mhz[i] = (int) (khz[i] / 1000);
+        }
+        return mhz;
+    }
+
+    public synchronized Frequencies sample() {
+        int count = cores.length;
+        int[] currentMhz = new int[count];
+        int[] minMhz = new int[count];
+        int[] maxMhz = new int[count];
+        int[] hardwareMaxMhz = new int[count];
+        String[] governors = new String[count];
+        int[] averageMhz = new int[count];
+        int[][] residency = new int[count][];
+        for (int c = 0; c < count; c++) {
+            Core core = cores[c];
+            currentMhz[c] = readMhz(core.current, false);
+            minMhz[c] = readMhz(core.min, false);
+            maxMhz[c] = readMhz(core.max, false);
+            if (core.hardwareMaxMhz < 0) {
+                // Offline when the sampler was created
+                core.hardwareMaxMhz = readMhz(core.hardwareMax, true);
+            }
+            hardwareMaxMhz[c] = core.hardwareMaxMhz;
+            governors[c] = readGovernor(core.governor);
+            residency[c] = new int[core.frequenciesKhz.length];
+            averageMhz[c] = readResidency(core, residency[c]);
+        }
+        return new Frequencies(currentMhz, minMhz, maxMhz, hardwareMaxMhz, governors, averageMhz, residency);
+    }
+
+    /**
+     * Release the kept-open sysfs descriptors; the next sample reopens them.
+     */
+    public synchronized void close() {
+        for (Core core : cores) {
+            core.close();
+        }
+    }
+
+    /**
+     * Fill the residency percentages of the interval since the previous read of time_in_state.
+     * The first read covers the time since boot.
+     *
+     * @return the average frequency in MHz, or -1 if time_in_state cannot be read
+     */
+    private static int readResidency(Core core, int[] residency) {
+        if (core.frequenciesKhz.length == 0) {
+            return -1;
+        }
+        Arrays.fill(core.ticks, 0);
+        try {
+            core.timeInState.read();
+            do {
+                // "<frequency kHz> <time in 10 ms units>"
+                long khz = core.timeInState.nextLong();
+                long ticks = core.timeInState.nextLong();
+                int i = Arrays.binarySearch(core.frequenciesKhz, khz);
+                if (i >= 0 && ticks >= 0) {
+                    core.ticks[i] = ticks;
+                }
+            } while (core.timeInState.nextLine());
+        } catch (IOException e) {
+            // Offline core: no cpufreq directory
+            core.timeInState.close();
+            Arrays.fill(residency, -1);
+            core.primed = false;
+            return -1;
+        }
+        long total = 0;
+        double weighted = 0;
+        for (int i = 0; i < core.ticks.length; i++) {
+            // Counters restart if the policy was re-created by a hotplug
+            long delta = core.primed ? Math.max(core.ticks[i] - core.previousTicks[i], 0) : core.ticks[i];
+            residency[i] = (int) Math.min(delta, Integer.MAX_VALUE);
+            total += delta;
+            weighted += (double) delta * core.frequenciesKhz[i];
+            core.previousTicks[i] = core.ticks[i];
+        }
+        core.primed = true;
+        if (total == 0) {
+            // Idle interval without any time accounted
+            Arrays.fill(residency, 0);
+            return -1;
+        }
+        for (int i = 0; i < residency.length; i++) {
+            residency[i] = (int) Math.round(residency[i] * 100.0 / total);
+        }
+        return (int) Math.round(weighted / total / 1000);
+    }
+
+    private static int readMhz(ProcFile file, boolean once) {
+        try {
+            return (int) (file.readLong() / 1000);
+        } catch (IOException e) {
+            file.close();
+            return -1;
+        } finally {
+            if (once) {
+                file.close();
+            }
+        }
+    }
+
+    private static String readGovernor(ProcFile file) {
+        try {
+            file.read();
+            String governor = file.nextString('\n');
+            return (governor != null) ? governor.trim() : UNKNOWN;
+        } catch (IOException e) {
+            file.close();
+            return UNKNOWN;
+        }
+    }
+
+    private static long[] readFrequencies(ProcFile timeInState) {
+        long[] frequencies = new long[32];
+        int count = 0;
+        try {
+            timeInState.read();
+            do {
+                long khz = timeInState.nextLong();
+                if (khz > 0) {
+                    if (count == frequencies.length) {
+                        frequencies = Arrays.copyOf(frequencies, count * 2);
+                    }
+                    frequencies[count++] = khz;
+                }
+            } while (timeInState.nextLine());
+        } catch (IOException e) {
+            // Offline at startup or no cpufreq stats: no residency for this core
+            android.util.Log.i(TAG, "No time_in_state at " + timeInState.getPath());
+        } finally {
+            timeInState.close();
+        }
+        long[] sorted = Arrays.copyOf(frequencies, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.mib;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * CPU utilization from interval deltas of the /proc/stat jiffy counters, for all cores
+ * together (row 0) and per core (row n + 1 for cpuN). Since-boot totals barely move on a
+ * device that has been up for days, so each sample compares against the previous one and
+ * keeps exponentially weighted 1, 5 and 15 minute averages of the busy percentage.
+ */
+public class CpuStatSampler {
+
+    private static final String TAG = "CpuStatSampler";
+
+    // /proc/stat fields: user nice system idle iowait irq softirq steal (guest time is already in user)
+    private static final int FIELDS = 8;
+    private static final int F_USER = 0;
+    private static final int F_NICE = 1;
+    private static final int F_SYSTEM = 2;
+    private static final int F_IDLE = 3;
+    private static final int F_IOWAIT = 4;
+    private static final int F_IRQ = 5;
+    private static final int F_SOFTIRQ = 6;
+
+    // Percentage categories of a sample
+    public static final int USER = 0;
+    public static final int SYSTEM = 1;
+    public static final int IOWAIT = 2;
+    public static final int IRQ = 3;
+    public static final int IDLE = 4;
+    public static final int BUSY = 5;
+    private static final int CATEGORIES = 6;
+
+    // Averaging windows
+    public static final int AVERAGE_1_MIN = 0;
+    public static final int AVERAGE_5_MIN = 1;
+    public static final int AVERAGE_15_MIN = 2;
+    private static final double[] WINDOW_SECONDS = {60, 300, 900};
+
+    private static final byte[] CPU = {'c', 'p', 'u'};
+
+    private final ProcFile stat = new ProcFile("/proc/stat");
+    private final int coreCount;
+    // Indexed by row: 0 = all cores, n + 1 = cpuN
+    private final long[][] previous;
+    private final long[][] counters;
+    private final boolean[] primed;
+    private final boolean[] seen;
+    private final double[] averages;
+    private final long[] delta = new long[FIELDS];
+    private long lastSampleNanos;
+
+    /**
+     * Percentages of the last interval and the averages, copied out of the sampler.
+     */
+    public static final class Utilization {
+        private final int[] percent;
+        private final int[] average;
+        private final boolean[] online;
+
+        private Utilization(int[] percent, int[] average, boolean[] online) {
+            this.percent = percent;
+            this.average = average;
+            this.online = online;
+        }
+
+        /**
+         * @return -1 for every value, for when /proc/stat cannot be read
+         */
+        static Utilization unavailable(int rows) {
+            int[] percent = new int[rows * CATEGORIES];
+            int[] average = new int[rows * WINDOW_SECONDS.length];
+            Arrays.fill(percent, -1);
+            Arrays.fill(average, -1);
+            return new Utilization(percent, average, new boolean[rows]);
+        }
+
+        /**
+         * @param row 0 for all cores, n + 1 for cpuN
+         * @param category USER, SYSTEM, IOWAIT, IRQ, IDLE or BUSY
+         */
+        public int getPercent(int row, int category) {
+            return percent[row * CATEGORIES + category];
+        }
+
+        /**
+         * @param window AVERAGE_1_MIN, AVERAGE_5_MIN or AVERAGE_15_MIN
+         */
+        public int getAverage(int row, int window) {
+            return average[row * WINDOW_SECONDS.length + window];
+        }
+
+        /**
+         * @return false if the core was offline (hotplugged out) during the last interval
+         */
+        public boolean isOnline(int row) {
+            return online[row];
+        }
+    }
+
+    public CpuStatSampler() {
+        coreCount = readPresentCores();
+        int rows = coreCount + 1;
+        previous = new long[rows][FIELDS];
+        counters = new long[rows][FIELDS];
+        primed = new boolean[rows];
+        seen = new boolean[rows];
+        averages = new double[rows * WINDOW_SECONDS.length];
+    }
+
+    public int getCoreCount() {
+        return coreCount;
+    }
+
+    /**
+     * Read /proc/stat and compute the interval since the previous call. The first call
+     * reports the average since boot and seeds the moving averages with it.
+     */
+    public synchronized Utilization sample() throws IOException {
+        Arrays.fill(seen, false);
+        stat.read();
+        // The cpu lines come first
+        while (stat.startsWith(CPU)) {
+            int row = parseLine();
+            if (row >= 0) {
+                seen[row] = true;
+            }
+            if (!stat.nextLine()) {
+                break;
+            }
+        }
+        if (!seen[0]) {
+            throw new IOException("No aggregate cpu line in /proc/stat");
+        }
+
+        long now = System.nanoTime();
+        double elapsedSeconds = (lastSampleNanos == 0) ? 0 : (now - lastSampleNanos) / 1e9;
+        lastSampleNanos = now;
+
+        int rows = coreCount + 1;
+        int[] percent = new int[rows * CATEGORIES];
+        int[] average = new int[rows * WINDOW_SECONDS.length];
+        boolean[] online = seen.clone();
+        for (int row = 0; row < rows; row++) {
+            double busy = 0;
+            if (seen[row]) {
+                busy = computePercent(row, percent);
+            }
+            for (int w = 0; w < WINDOW_SECONDS.length; w++) {
+                int i = row * WINDOW_SECONDS.length + w;
+                if (elapsedSeconds == 0) {
+                    averages[i] = busy;
+                } else {
+                    double decay = Math.exp(-elapsedSeconds / WINDOW_SECONDS[w]);
+                    averages[i] = averages[i] * decay + busy * (1 - decay);
+                }
+                average[i] = (int) Math.round(averages[i]);
+            }
+        }
+        return new Utilization(percent, average, online);
+    }
+
+    /**
+     * Parse the cpu line at the cursor.
+     *
+     * @return the row the line was stored in, or -1 if it is not a usable cpu line
+     */
+    private int parseLine() {
+        stat.skip(CPU.length);
+        // "cpu  ..." is the aggregate, "cpuN ..." a core
+        long row = stat.atDigit() ? stat.nextLong() + 1 : 0;
+        if (row > coreCount) {
+            return -1;
+        }
+        for (int f = 0; f < FIELDS; f++) {
+            // Older kernels have fewer fields
+            counters[(int) row][f] = Math.max(stat.nextLong(), 0);
+        }
+        return (int) row;
+    }
+
+    /**
+     * Release the kept-open /proc/stat descriptor; the next sample reopens it.
+     */
+    public synchronized void close() {
+        stat.close();
+    }
+
+    /**
+     * Fill the row's percentages from the counter deltas and advance its previous counters.
+     *
+     * @return the busy percentage, unrounded
+     */
+    private double computePercent(int row, int[] percent) {
+        long[] delta = this.delta;
+        long total = 0;
+        for (int f = 0; f < FIELDS; f++) {
+            delta[f] = primed[row] ? counters[row][f] - previous[row][f] : counters[row][f];
+            // Counters only go backwards if a core's statistics were reset; count that as no time
+            if (delta[f] < 0) {
+                delta[f] = 0;
+            }
+            total += delta[f];
+            previous[row][f] = counters[row][f];
+        }
+        primed[row] = true;
+
+        int base = row * CATEGORIES;
+        if (total == 0) {
+            percent[base + IDLE] = 100;
+            return 0;
+        }
+        percent[base + USER] = (int) ((delta[F_USER] + delta[F_NICE]) * 100 / total);
+        percent[base + SYSTEM] = (int) (delta[F_SYSTEM] * 100 / total);
+        percent[base + IOWAIT] = (int) (delta[F_IOWAIT] * 100 / total);
+        percent[base + IRQ] = (int) ((delta[F_IRQ] + delta[F_SOFTIRQ]) * 100 / total);
+        percent[base + IDLE] = (int) (delta[F_IDLE] * 100 / total);
+        double busy = (total - delta[F_IDLE] - delta[F_IOWAIT]) * 100.0 / total;
+        percent[base + BUSY] = (int) Math.round(busy);
+        return busy;
+    }
+
+    /**
+     * @return the number of cores the kernel can bring online, from /sys/devices/system/cpu/present
+     * (e.g. "0-7"), which unlike availableProcessors() also counts cores that are hotplugged out
+     */
+    static int readPresentCores() {
+        ProcFile present = new ProcFile("/sys/devices/system/cpu/present", 64);
+        try {
+            present.read();
+            long highest = -1;
+            long cpu;
+            // Ranges and lists such as "0-3,6"
+            while ((cpu = present.nextLong()) >= 0) {
+                highest = Math.max(highest, cpu);
+                present.skip(1);
+            }
+            if (highest >= 0) {
+                return (int) highest + 1;
+            }
+        } catch (Exception e) {
+            android.util.Log.w(TAG, "Cannot read present cores, using available processors");
+        } finally {
+            present.close();
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.mib;
+
+import org.snmp4j.agent.*;
+import org.snmp4j.agent.mo.*;
+import org.snmp4j.smi.*;
+
+/**
+ * HOST-RESOURCES-MIB hrMemorySize, hrStorageTable, hrProcessorTable, hrSWRunTable and
+ * hrSWRunPerfTable, the objects stock NMS templates read memory, disk, CPU load and processes
+ * from. Everything is served from the memory, storage, cpu and processes snapshots of
+ * AndroidDeviceMib, so polling these costs no extra collection.
+ *
+ * The process tables are indexed by PID and registered as snapshot tables, so their rows are
+ * the sorted PIDs of the request's processes snapshot and follow every sample without
+ * registering anything.
+ */
+public class HostResourcesMib implements MOGroup {
+
+    // HOST-RESOURCES-MIB OIDs (1.3.6.1.2.1.25.x)
+    public static final OID HR_SYSTEM_PROCESSES = new OID("1.3.6.1.2.1.25.1.6.0");
+    public static final OID HR_MEMORY_SIZE = new OID("1.3.6.1.2.1.25.2.2.0");
+    public static final OID HR_STORAGE_ENTRY = new OID("1.3.6.1.2.1.25.2.3.1");
+    public static final OID HR_PROCESSOR_ENTRY = new OID("1.3.6.1.2.1.25.3.3.1");
+    public static final OID HR_SW_RUN_ENTRY = new OID("1.3.6.1.2.1.25.4.2.1");
+    public static final OID HR_SW_RUN_PERF_ENTRY = new OID("1.3.6.1.2.1.25.5.1.1");
+
+    // hrStorageEntry columns
+    public static final int HR_STORAGE_INDEX = 1;
+    public static final int HR_STORAGE_TYPE = 2;
+    public static final int HR_STORAGE_DESCR = 3;
+    public static final int HR_STORAGE_ALLOCATION_UNITS = 4;
+    public static final int HR_STORAGE_SIZE = 5;
+    public static final int HR_STORAGE_USED = 6;
+    public static final int HR_STORAGE_ALLOCATION_FAILURES = 7;
+
+    // hrProcessorEntry columns
+    public static final int HR_PROCESSOR_FRW_ID = 1;
+    public static final int HR_PROCESSOR_LOAD = 2;
+
+    // hrSWRunEntry columns
+    public static final int HR_SW_RUN_INDEX = 1;
+    public static final int HR_SW_RUN_NAME = 2;
+    public static final int HR_SW_RUN_ID = 3;
+    public static final int HR_SW_RUN_PATH = 4;
+    public static final int HR_SW_RUN_PARAMETERS = 5;
+    public static final int HR_SW_RUN_TYPE = 6;
+    public static final int HR_SW_RUN_STATUS = 7;
+
+    // hrSWRunPerfEntry columns
+    public static final int HR_SW_RUN_PERF_CPU = 1;
+    public static final int HR_SW_RUN_PERF_MEM = 2;
+
+    // hrStorageTypes
+    private static final OID HR_STORAGE_RAM = new OID("1.3.6.1.2.1.25.2.1.2");
+    private static final OID HR_STORAGE_FIXED_DISK = new OID("1.3.6.1.2.1.25.2.1.4");
+    private static final OID ZERO_DOT_ZERO = new OID("0.0");
+
+    // hrStorageTable rows
+    private static final int STORAGE_RAM = 1;
+    private static final int STORAGE_DATA = 2;
+    private static final int STORAGE_SYSTEM = 3;
+    private static final int STORAGE_EXTERNAL = 4;
+    private static final String[] STORAGE_DESCR = {"Physical memory", "/data", "/system", "External storage"};
+
+    private final AndroidDeviceMib device;
+    private final MOScalar<Gauge32> hrSystemProcesses;
+    private final MOScalar<Integer32> hrMemorySize;
+    private final MibTable hrStorageTable;
+    private final MibTable hrProcessorTable;
+    private final SnapshotTable hrSWRunTable;
+    private final SnapshotTable hrSWRunPerfTable;
+
+    public HostResourcesMib(AndroidDeviceMib device) {
+        this.device = device;
+
+        hrSystemProcesses = new MOScalar<Gauge32>(HR_SYSTEM_PROCESSES, MOAccessImpl.ACCESS_READ_ONLY, new Gauge32(0)) {
+            @Override
+            public Gauge32 getValue() {
+                return new Gauge32(device.getProcesses().get().table.size());
+            }
+        };
+
+        hrMemorySize = new MOScalar<Integer32>(HR_MEMORY_SIZE, MOAccessImpl.ACCESS_READ_ONLY, new Integer32(0)) {
+            @Override
+            public Integer32 getValue() {
+                // KBytes
+                return new Integer32((int) Math.min(device.getMemory().get().total / 1024, Integer.MAX_VALUE));
+            }
+        };
+
+        hrStorageTable = new MibTable(HR_STORAGE_ENTRY)
+            .addColumn(HR_STORAGE_INDEX, row -> new Integer32(row))
+            .addColumn(HR_STORAGE_TYPE, row -> row == STORAGE_RAM ? HR_STORAGE_RAM : HR_STORAGE_FIXED_DISK)
+            .addColumn(HR_STORAGE_DESCR, row -> new OctetString(STORAGE_DESCR[row - 1]))
+            .addColumn(HR_STORAGE_ALLOCATION_UNITS, row -> new Integer32(allocationUnits(row, volume(row))))
+            .addColumn(HR_STORAGE_SIZE, row -> {
+                AndroidDeviceMib.CapacitySample volume = volume(row);
+                return new Integer32((int) (volume.total / allocationUnits(row, volume)));
+            })
+            .addColumn(HR_STORAGE_USED, row -> {
+                AndroidDeviceMib.CapacitySample volume = volume(row);
+                return new Integer32((int) (volume.used / allocationUnits(row, volume)));
+            })
+            .addColumn(HR_STORAGE_ALLOCATION_FAILURES, row -> new Counter32(0));
+        hrStorageTable.setRows(STORAGE_RAM, STORAGE_DATA, STORAGE_SYSTEM, STORAGE_EXTERNAL);
+
+        // Row n is cpu(n - 1), which is row n of the cpu utilization
+        hrProcessorTable = new MibTable(HR_PROCESSOR_ENTRY)
+            .addColumn(HR_PROCESSOR_FRW_ID, row -> ZERO_DOT_ZERO)
+            .addColumn(HR_PROCESSOR_LOAD, row -> {
+                // Average over the last minute; -1 while unavailable
+                int load = device.getCpu().get().utilization.getAverage(row, CpuStatSampler.AVERAGE_1_MIN);
+                return new Integer32(Math.max(load, 0));
+            });
+        int[] coreRows = new int[device.getCpuCoreCount()];
+        for (int i = 0; i < coreRows.length; i++) {
+            coreRows[i] = i + 1;
+        }
+        hrProcessorTable.setRows(coreRows);
+
+        hrSWRunTable = new SnapshotTable(HR_SW_RUN_ENTRY, this::processRows)
+            .addColumn(HR_SW_RUN_INDEX, row -> new Integer32(row))
+            .addColumn(HR_SW_RUN_NAME, row -> process(row, (p, i) -> text(p.getName(i), 64)))
+            .addColumn(HR_SW_RUN_ID, row -> ZERO_DOT_ZERO)
+            .addColumn(HR_SW_RUN_PATH, row -> process(row, (p, i) -> text(p.getPath(i), 128)))
+            .addColumn(HR_SW_RUN_PARAMETERS, row -> process(row, (p, i) -> text(p.getParameters(i), 128)))
+            .addColumn(HR_SW_RUN_TYPE, row -> process(row, (p, i) -> new Integer32(p.getType(i))))
+            .addColumn(HR_SW_RUN_STATUS, row -> process(row, (p, i) -> new Integer32(p.getStatus(i))));
+
+        hrSWRunPerfTable = new SnapshotTable(HR_SW_RUN_PERF_ENTRY, this::processRows)
+            .addColumn(HR_SW_RUN_PERF_CPU, row -> process(row, (p, i) -> integer32(p.getCpuCentis(i))))
+            .addColumn(HR_SW_RUN_PERF_MEM, row -> process(row, (p, i) -> integer32(p.getMemoryKb(i))));
+    }
+
+    private int[] processRows() {
+        return device.getProcesses().get().table.sortedPids();
+    }
+
+    private interface ProcessValue {
+        Variable apply(ProcessSampler.Processes sample, int i);
+    }
+
+    private Variable process(int pid, ProcessValue value) {
+        ProcessSampler.Processes sample = device.getProcesses().get().table;
+        int i = sample.indexOf(pid);
+        // Not in the request's snapshot
+        return (i >= 0) ? value.apply(sample, i) : Null.noSuchInstance;
+    }
+
+    private static OctetString text(String value, int maxLength) {
+        return new OctetString(value.length() > maxLength ? value.substring(0, maxLength) : value);
+    }
+
+    private static Integer32 integer32(long value) {
+        return new Integer32((int) Math.min(value, Integer.MAX_VALUE));
+    }
+
+    private AndroidDeviceMib.CapacitySample volume(int row) {
+        switch (row) {
+            case STORAGE_RAM: return device.getMemory().get();
+            case STORAGE_DATA: return device.getStorage().get().data;
+            case STORAGE_SYSTEM: return device.getStorage().get().system;
+            default: return device.getStorage().get().external;
+        }
+    }
+
+    /**
+     * @return KB for RAM and 4 KB blocks for disks, doubled until the size fits an Integer32
+     */
+    private static int allocationUnits(int row, AndroidDeviceMib.CapacitySample volume) {
+        long units = (row == STORAGE_RAM) ? 1024 : 4096;
+        while (volume.total / units > Integer.MAX_VALUE) {
+            units *= 2;
+        }
+        return (int) units;
+    }
+
+    @Override
+    public void registerMOs(MOServer server, OctetString context) throws DuplicateRegistrationException {
+        server.register(hrSystemProcesses, context);
+        server.register(hrMemorySize, context);
+        hrStorageTable.registerMOs(server, context);
+        hrProcessorTable.registerMOs(server, context);
+        server.register(hrSWRunTable, context);
+        server.register(hrSWRunPerfTable, context);
+    }
+
+    @Override
+    public void unregisterMOs(MOServer server, OctetString context) {
+        server.unregister(hrSystemProcesses, context);
+        server.unregister(hrMemorySize, context);
+        hrStorageTable.unregisterMOs(server, context);
+        hrProcessorTable.unregisterMOs(server, context);
+        server.unregister(hrSWRunTable, context);
+        server.unregister(hrSWRunPerfTable, context);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.mib;
+
+import org.snmp4j.agent.*;
+import org.snmp4j.agent.mo.*;
+import org.snmp4j.smi.*;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * IF-MIB ifNumber, ifTable and ifXTable for the interfaces in /proc/net/dev, served from
+ * the interfaces metric group. ifIndex n is the n-th interface the agent ever saw; rows of
+ * interfaces that disappeared stay with ifOperStatus notPresent(6), so an index is never
+ * reused. Rows are added when a sample finds a new interface.
+ */
+public class IfMib implements MOGroup {
+
+    private static final String TAG = "IfMib";
+
+    // IF-MIB OIDs (1.3.6.1.2.1.2.x and 1.3.6.1.2.1.31.1.1)
+    public static final OID IF_NUMBER = new OID("1.3.6.1.2.1.2.1.0");
+    public static final OID IF_ENTRY = new OID("1.3.6.1.2.1.2.2.1");
+    public static final OID IF_X_ENTRY = new OID("1.3.6.1.2.1.31.1.1.1");
+
+    // ifEntry columns
+    public static final int IF_INDEX = 1;
+    public static final int IF_DESCR = 2;
+    public static final int IF_TYPE = 3;
+    public static final int IF_ADMIN_STATUS = 7;
+    public static final int IF_OPER_STATUS = 8;
+    public static final int IF_IN_OCTETS = 10;
+    public static final int IF_IN_UCAST_PKTS = 11;
+    public static final int IF_IN_DISCARDS = 13;
+    public static final int IF_IN_ERRORS = 14;
+    public static final int IF_OUT_OCTETS = 16;
+    public static final int IF_OUT_UCAST_PKTS = 17;
+    public static final int IF_OUT_DISCARDS = 19;
+    public static final int IF_OUT_ERRORS = 20;
+
+    // ifXEntry columns
+    public static final int IF_NAME = 1;
+    public static final int IF_IN_MULTICAST_PKTS = 2;
+    public static final int IF_HC_IN_OCTETS = 6;
+    public static final int IF_HC_IN_UCAST_PKTS = 7;
+    public static final int IF_HC_IN_MULTICAST_PKTS = 8;
+    public static final int IF_HC_OUT_OCTETS = 10;
+    public static final int IF_HC_OUT_UCAST_PKTS = 11;
+
+    private final MetricGroup<NetDevSampler.Interfaces> interfaces;
+    private final MOScalar<Integer32> ifNumber;
+    private final MibTable ifTable;
+    private final MibTable ifXTable;
+    private Runnable registrationListener;
+    // Rows created in both tables, guarded by this
+    private int rowCount;
+
+    /**
+     * @param interfaces the interfaces metric group of AndroidDeviceMib
+     */
+    public IfMib(MetricGroup<NetDevSampler.Interfaces> interfaces) {
+        this.interfaces = interfaces;
+
+        ifNumber = new MOScalar<Integer32>(IF_NUMBER, MOAccessImpl.ACCESS_READ_ONLY, new Integer32(0)) {
+            @Override
+            public Integer32 getValue() {
+                return new Integer32(interfaces.get().size());
+            }
+        };
+
+        ifTable = new MibTable(IF_ENTRY)
+            .addColumn(IF_INDEX, row -> new Integer32(row))
+            .addColumn(IF_DESCR, row -> value(row, i -> new OctetString(i.getName(row))))
+            .addColumn(IF_TYPE, row -> value(row, i -> new Integer32(i.getType(row))))
+            .addColumn(IF_ADMIN_STATUS, row -> value(row, i -> new Integer32(i.getAdminStatus(row))))
+            .addColumn(IF_OPER_STATUS, row -> value(row, i -> new Integer32(i.getOperStatus(row))))
+            .addColumn(IF_IN_OCTETS, row -> counter32(row, i -> i.getCounter(row, NetDevSampler.RX_BYTES)))
+            .addColumn(IF_IN_UCAST_PKTS, row -> counter32(row, i -> inUnicast(i, row)))
+            .addColumn(IF_IN_DISCARDS, row -> counter32(row, i -> i.getCounter(row, NetDevSampler.RX_DROPS)))
+            .addColumn(IF_IN_ERRORS, row -> counter32(row, i -> i.getCounter(row, NetDevSampler.RX_ERRORS)))
+            .addColumn(IF_OUT_OCTETS, row -> counter32(row, i -> i.getCounter(row, NetDevSampler.TX_BYTES)))
+            .addColumn(IF_OUT_UCAST_PKTS, row -> counter32(row, i -> i.getCounter(row, NetDevSampler.TX_PACKETS)))
+            .addColumn(IF_OUT_DISCARDS, row -> counter32(row, i -> i.getCounter(row, NetDevSampler.TX_DROPS)))
+            .addColumn(IF_OUT_ERRORS, row -> counter32(row, i -> i.getCounter(row, NetDevSampler.TX_ERRORS)));
+
+        ifXTable = new MibTable(IF_X_ENTRY)
+            .addColumn(IF_NAME, row -> value(row, i -> new OctetString(i.getName(row))))
+            .addColumn(IF_IN_MULTICAST_PKTS,
+                row -> counter32(row, i -> i.getCounter(row, NetDevSampler.RX_MULTICAST)))
+            .addColumn(IF_HC_IN_OCTETS, row -> counter64(row, i -> i.getCounter(row, NetDevSampler.RX_BYTES)))
+            .addColumn(IF_HC_IN_UCAST_PKTS, row -> counter64(row, i -> inUnicast(i, row)))
+            .addColumn(IF_HC_IN_MULTICAST_PKTS,
+                row -> counter64(row, i -> i.getCounter(row, NetDevSampler.RX_MULTICAST)))
+            .addColumn(IF_HC_OUT_OCTETS, row -> counter64(row, i -> i.getCounter(row, NetDevSampler.TX_BYTES)))
+            .addColumn(IF_HC_OUT_UCAST_PKTS, row -> counter64(row, i -> i.getCounter(row, NetDevSampler.TX_PACKETS)));
+
+        // Every sample may bring new interfaces
+        interfaces.addListener(sample -> addRows(sample.size()));
+    }
+
+    /**
+     * Called after rows were registered, so the responder can rebuild its OID index.
+     */
+    public void setRegistrationListener(Runnable registrationListener) {
+        this.registrationListener = registrationListener;
+    }
+
+    private synchronized void addRows(int count) {
+        if (count <= rowCount) {
+            return;
+        }
+        int[] rows = new int[count - rowCount];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = rowCount + i + 1;
+        }
+        try {
+            ifTable.addRows(rows);
+            ifXTable.addRows(rows);
+        } catch (DuplicateRegistrationException e) {
+            android.util.Log.w(TAG, "Cannot register interface rows", e);
+        }
+        rowCount = count;
+        android.util.Log.i(TAG, "Serving " + count + " interfaces");
+        if (registrationListener != null) {
+            registrationListener.run();
+        }
+    }
+
+    private interface RowValue {
+        Variable apply(NetDevSampler.Interfaces sample);
+    }
+
+    private Variable value(int row, RowValue value) {
+        NetDevSampler.Interfaces sample = interfaces.get();
+        // A snapshot pinned by the request before the row was added
+        return (row <= sample.size()) ? value.apply(sample) : Null.noSuchInstance;
+    }
+
+    private Variable counter32(int row, ToLongFunction<NetDevSampler.Interfaces> counter) {
+        return value(row, sample -> new Counter32(counter.applyAsLong(sample) & 0xFFFFFFFFL));
+    }
+
+    private Variable counter64(int row, ToLongFunction<NetDevSampler.Interfaces> counter) {
+        return value(row, sample -> new Counter64(counter.applyAsLong(sample)));
+    }
+
+    private static long inUnicast(NetDevSampler.Interfaces sample, int row) {
+        return Math.max(0, sample.getCounter(row, NetDevSampler.RX_PACKETS) -
+            sample.getCounter(row, NetDevSampler.RX_MULTICAST));
+    }
+
+    @Override
+    public void registerMOs(MOServer server, OctetString context) throws DuplicateRegistrationException {
+        server.register(ifNumber, context);
+        ifTable.registerMOs(server, context);
+        ifXTable.registerMOs(server, context);
+    }
+
+    @Override
+    public void unregisterMOs(MOServer server, OctetString context) {
+        server.unregister(ifNumber, context);
+        ifTable.unregisterMOs(server, context);
+        ifXTable.unregisterMOs(server, context);
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.mib;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A set of metrics read together from one data source (e.g. one MemoryInfo or StatFs call)
+ * and served from an in-memory snapshot. The MetricSampler refreshes the snapshot in the
+ * background every TTL, so MO getters never pay the collection cost on the request thread.
+ *
+ * Each snapshot is immutable and replaced as a whole through one volatile reference, so
+ * readers take no lock and always see values from a single collection, however many of
+ * them run while a refresh publishes. Collected values must be immutable too.
+ *
+ * A request only waits for a collection while the group has no value yet, and then no longer
+ * than its CollectionContext deadline: a slow binder call is answered with the group's
+ * "unavailable" value and finishes in the background.
+ *
+ * A group that nobody requested for the sampler's idle period goes dormant: it is no longer
+ * refreshed and its activation hooks (e.g. a broadcast receiver) are stopped. The next
+ * request wakes it up and, like a first collection, waits for fresh values until its
+ * deadline; past it, the values from before the group went dormant are served.
+ */
+public class MetricGroup<T> {
+
+    private static final String TAG = "MetricGroup";
+
+    /** TTL for data that never changes while the agent runs: collected once. */
+    public static final long NEVER = 0;
+
+    public enum State {
+        /** Refreshed on its TTL or by its event source. */
+        ACTIVE,
+        /** Woken up by a request, waiting for its first fresh values. */
+        WARMING,
+        /** Idle: no refreshes, activation hooks stopped. */
+        DORMANT
+    }
+
+    // Runs collections a request gave up waiting for
+    private static final ExecutorService BACKGROUND = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "MetricCollector");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final Supplier<T> collector;
+    private final T unavailable;
+    private final SingleFlight singleFlight;
+    private volatile long ttlMillis;
+    private volatile Snapshot<T> snapshot;
+    private CompletableFuture<Snapshot<T>> pending;
+
+    private volatile long lastDurationMillis;
+    private final AtomicLong deadlineMisses = new AtomicLong();
+
+    // Demand tracking; transitions to and from DORMANT are serialized by the activation lock
+    private final AtomicReference<State> state = new AtomicReference<>(State.ACTIVE);
+    private final Object activation = new Object();
+    private final List<Runnable> activateHooks = new CopyOnWriteArrayList<>();
+    private final List<Runnable> deactivateHooks = new CopyOnWriteArrayList<>();
+    private final List<Consumer<T>> listeners = new CopyOnWriteArrayList<>();
+    private volatile long lastAccessNanos;
+    private volatile long activatedNanos = System.nanoTime();
+    private volatile long warmUpMillis = -1;
+
+    /**
+     * A collected value and when it was collected.
+     */
+    public static final class Snapshot<T> {
+        public final T value;
+        /** Wall clock time of the collection, in milliseconds. */
+        public final long timestamp;
+        private final long collectedNanos;
+
+        Snapshot(T value) {
+            this.value = value;
+            this.timestamp = System.currentTimeMillis();
+            this.collectedNanos = System.nanoTime();
+        }
+
+        public long getAgeMillis() {
+            return (System.nanoTime() - collectedNanos) / 1_000_000L;
+        }
+    }
+
+    /**
+     * @param unavailable value served while the group has never been collected
+     * @param singleFlight coalesces a synchronous collection with a concurrent background one
+     */
+    public MetricGroup(String name, long ttlMillis, Supplier<T> collector, T unavailable,
+                       SingleFlight singleFlight) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.collector = collector;
+        this.unavailable = unavailable;
+        this.singleFlight = singleFlight;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the latest collected value; only waits for a collection if the group has
+     *         never been sampled yet
+     */
+    public T get() {
+        return getSnapshot().value;
+    }
+
+    /**
+     * Within a CollectionContext the first snapshot read is pinned, so all OIDs of the group
+     * answered in one PDU are consistent even if the sampler publishes a new snapshot meanwhile.
+     */
+    public Snapshot<T> getSnapshot() {
+        return CollectionContext.read(this, () -> {
+            lastAccessNanos = System.nanoTime();
+            if (state.get() == State.DORMANT) {
+                wake();
+            }
+            Snapshot<T> current = snapshot;
+            return (current != null && state.get() != State.WARMING) ? current : awaitCollection();
+        });
+    }
+
+    /**
+     * Wait for a background collection until the calling context's deadline.
+     */
+    private Snapshot<T> awaitCollection() {
+        long budget = CollectionContext.remainingMillis();
+        try {
+            return refreshInBackground().get(budget, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            deadlineMisses.incrementAndGet();
+            android.util.Log.w(TAG, "Collecting " + name + " exceeded the request deadline");
+        } catch (ExecutionException e) {
+            android.util.Log.w(TAG, "Collecting " + name + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // A collection that finished meanwhile still wins
+        Snapshot<T> current = snapshot;
+        return (current != null) ? current : new Snapshot<>(unavailable);
+    }
+
+    /**
+     * Start a collection on a background thread unless one is already running.
+     */
+    public synchronized CompletableFuture<Snapshot<T>> refreshInBackground() {
+        if (pending == null || pending.isDone()) {
+            pending = CompletableFuture.supplyAsync(this::refresh, BACKGROUND);
+        }
+        return pending;
+    }
+
+    /**
+     * Collect now and publish the new snapshot.
+     */
+    public Snapshot<T> refresh() {
+        return singleFlight.execute(this, () -> {
+            long start = System.nanoTime();
+            Snapshot<T> collected = new Snapshot<>(collector.get());
+            lastDurationMillis = (System.nanoTime() - start) / 1_000_000L;
+            snapshot = collected;
+            warmedUp();
+            notifyListeners(collected.value);
+            return collected;
+        });
+    }
+
+    /**
+     * Run the hook whenever the group wakes up from dormancy, e.g. to start an event source.
+     */
+    public void onActivate(Runnable hook) {
+        activateHooks.add(hook);
+    }
+
+    /**
+     * Run the hook whenever the group goes dormant, e.g. to stop an event source.
+     */
+    public void onDeactivate(Runnable hook) {
+        deactivateHooks.add(hook);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return false for groups that are only collected once; they have nothing to stop
+     */
+    public boolean canIdle() {
+        return ttlMillis > NEVER || !deactivateHooks.isEmpty();
+    }
+
+    /**
+     * Put the group to sleep if it was not requested for the given period since it last
+     * became active.
+     *
+     * @return true if the group went dormant
+     */
+    public boolean deactivateIfIdle(long idleMillis) {
+        synchronized (activation) {
+            State current = state.get();
+            long since = Math.max(lastAccessNanos, activatedNanos);
+            if (current == State.DORMANT || !canIdle()
+                || System.nanoTime() - since < idleMillis * 1_000_000L) {
+                return false;
+            }
+            state.set(State.DORMANT);
+            for (Runnable hook : deactivateHooks) {
+                hook.run();
+            }
+        }
+        android.util.Log.i(TAG, "Metric group " + name + " is dormant");
+        return true;
+    }
+
+    private void wake() {
+        synchronized (activation) {
+            if (state.get() != State.DORMANT) {
+                return;
+            }
+            activatedNanos = System.nanoTime();
+            state.set(State.WARMING);
+            for (Runnable hook : activateHooks) {
+                hook.run();
+            }
+        }
+        android.util.Log.i(TAG, "Metric group " + name + " woke up");
+    }
+
+    private void warmedUp() {
+        if (state.compareAndSet(State.WARMING, State.ACTIVE)) {
+            warmUpMillis = (System.nanoTime() - activatedNanos) / 1_000_000L;
+        }
+    }
+
+    /**
+     * @return the age of the last collected value in milliseconds, or -1 if there is none
+     */
+    public long getAgeMillis() {
+        Snapshot<T> current = snapshot;
+        return (current != null) ? current.getAgeMillis() : -1;
+    }
+
+    /**
+     * @return how long the last collection took, in milliseconds
+     */
+    public long getLastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    /**
+     * @return requests that were answered with the unavailable value because the
+     *         first collection did not finish within their deadline
+     */
+    public long getDeadlineMissCount() {
+        return deadlineMisses.get();
+    }
+
+    /**
+     * @return milliseconds since the group was last requested, or -1 if it never was
+     */
+    public long getLastAccessAgeMillis() {
+        long access = lastAccessNanos;
+        return (access != 0) ? (System.nanoTime() - access) / 1_000_000L : -1;
+    }
+
+    /**
+     * @return how long the last wake-up took until fresh values were available, in
+     *         milliseconds, or -1 if the group never went dormant
+     */
+    public long getWarmUpMillis() {
+        return warmUpMillis;
+    }
+
+    /**
+     * Publish a value pushed by an event source (e.g. a broadcast) as the new snapshot.
+     */
+    public void publish(T value) {
+        snapshot = new Snapshot<>(value);
+        warmedUp();
+        notifyListeners(value);
+    }
+
+    /**
+     * Called with every new value, on the thread that collected or published it.
+     */
+    public void addListener(Consumer<T> listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyListeners(T value) {
+        for (Consumer<T> listener : listeners) {
+            listener.accept(value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return TAG + "[" + name + ", ttl " + ttlMillis + " ms]";
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.mib;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background scheduler that refreshes each MetricGroup on its own TTL.
+ * A single daemon thread does all collection; a group is rescheduled only after its
+ * collection finished, so a slow data source delays its own group but never piles up.
+ *
+ * With an idle period set, groups that were not requested for that long go dormant and
+ * are no longer scheduled until a request wakes them up.
+ *
+ * With a power policy set, each TTL is stretched by the multiplier for the device's power
+ * state, and the groups are rescheduled whenever the state changes.
+ */
+public class MetricSampler {
+
+    private static final String TAG = "MetricSampler";
+
+    // Wakeups of the last hour, in 5 minute buckets
+    private static final long WAKEUP_BUCKET_MILLIS = 5 * 60 * 1000;
+    private static final int WAKEUP_BUCKETS = 12;
+
+    private final List<MetricGroup<?>> groups = new CopyOnWriteArrayList<>();
+    // Next scheduled collection of each group, guarded by this
+    private final Map<MetricGroup<?>, ScheduledFuture<?>> scheduled = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+    private long idleMillis;
+    private PowerPolicy powerPolicy;
+    private PowerMonitor powerMonitor;
+
+    // Guarded by wakeupBuckets
+    private final long[] wakeupBuckets = new long[WAKEUP_BUCKETS];
+    private long wakeupBucket;
+    private long wakeupCount;
+
+    public void add(MetricGroup<?> group) {
+        groups.add(group);
+        group.onActivate(() -> resume(group));
+    }
+
+    public List<MetricGroup<?>> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @param idleMillis how long a group may go unrequested before it goes dormant, 0 to keep
+     *                   all groups active. Takes effect on the next start().
+     */
+    public void setIdleMillis(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    public long getIdleMillis() {
+        return idleMillis;
+    }
+
+    /**
+     * Stretch the sampling intervals by the policy's multiplier for the monitor's power state.
+     */
+    public void setPowerPolicy(PowerPolicy powerPolicy, PowerMonitor powerMonitor) {
+        this.powerPolicy = powerPolicy;
+        this.powerMonitor = powerMonitor;
+        powerMonitor.addListener(state -> reschedule());
+    }
+
+    /**
+     * @return the group's TTL stretched for the current power state; NEVER stays NEVER
+     */
+    public long getIntervalMillis(MetricGroup<?> group) {
+        long ttl = group.getTtlMillis();
+        if (ttl <= MetricGroup.NEVER || powerPolicy == null) {
+            return ttl;
+        }
+        return (long) (ttl * powerPolicy.getMultiplier(group.getName(), powerMonitor.getState()));
+    }
+
+    /**
+     * @return scheduled collections and idle checks the sampler ran in the last hour
+     */
+    public long getWakeupsPerHour() {
+        synchronized (wakeupBuckets) {
+            advanceWakeupBuckets();
+            long sum = 0;
+            for (long count : wakeupBuckets) {
+                sum += count;
+            }
+            return sum;
+        }
+    }
+
+    public long getWakeupCount() {
+        synchronized (wakeupBuckets) {
+            return wakeupCount;
+        }
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MetricSampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (MetricGroup<?> group : groups) {
+            final ScheduledExecutorService executor = scheduler;
+            executor.execute(() -> sample(executor, group));
+        }
+        if (idleMillis > 0) {
+            long sweepMillis = Math.max(1000, idleMillis / 4);
+            scheduler.scheduleWithFixedDelay(this::deactivateIdleGroups, sweepMillis, sweepMillis,
+                TimeUnit.MILLISECONDS);
+        }
+        android.util.Log.i(TAG, "Sampling " + groups.size() + " metric groups" +
+            (idleMillis > 0 ? ", idle after " + idleMillis + " ms" : ""));
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        scheduled.clear();
+    }
+
+    @SuppressWarnings("try")
+    private void sample(ScheduledExecutorService executor, MetricGroup<?> group) {
+        if (group.getState() == MetricGroup.State.DORMANT) {
+            return;
+        }
+        recordWakeup();
+        try (CollectionContext ignored = CollectionContext.open()) {
+            group.refresh();
+        } catch (RuntimeException e) {
+            // Keep serving the previous snapshot
+            android.util.Log.w(TAG, "Collecting " + group.getName() + " failed", e);
+        }
+        schedule(executor, group);
+    }
+
+    private synchronized void schedule(ScheduledExecutorService executor, MetricGroup<?> group) {
+        schedule(executor, group, getIntervalMillis(group));
+    }
+
+    private synchronized void schedule(ScheduledExecutorService executor, MetricGroup<?> group, long delayMillis) {
+        if (group.getTtlMillis() <= MetricGroup.NEVER || executor != scheduler
+            || group.getState() == MetricGroup.State.DORMANT) {
+            return;
+        }
+        try {
+            ScheduledFuture<?> previous = scheduled.put(group,
+                executor.schedule(() -> sample(executor, group), delayMillis, TimeUnit.MILLISECONDS));
+            // A group woken up while its old collection was still pending keeps a single schedule
+            if (previous != null) {
+                previous.cancel(false);
+            }
+        } catch (RejectedExecutionException e) {
+            // Stopped meanwhile
+        }
+    }
+
+    /**
+     * Continue sampling a group that was woken up; the waking request collects it first.
+     */
+    private synchronized void resume(MetricGroup<?> group) {
+        if (scheduler != null) {
+            schedule(scheduler, group);
+        }
+    }
+
+    /**
+     * Move each sampled group's next collection to its last one plus the new interval.
+     */
+    private synchronized void reschedule() {
+        if (scheduler == null) {
+            return;
+        }
+        android.util.Log.i(TAG, "Power state " + powerMonitor.getState() + ", rescheduling metric groups");
+        for (MetricGroup<?> group : scheduled.keySet().toArray(new MetricGroup<?>[0])) {
+            long age = group.getAgeMillis();
+            schedule(scheduler, group, Math.max(0, getIntervalMillis(group) - Math.max(age, 0)));
+        }
+    }
+
+    private void recordWakeup() {
+        synchronized (wakeupBuckets) {
+            advanceWakeupBuckets();
+            wakeupBuckets[(int) (wakeupBucket % WAKEUP_BUCKETS)]++;
+            wakeupCount++;
+        }
+    }
+
+    /**
+     * Clear the buckets that passed since the last wakeup. Elapsed realtime keeps counting
+     * while the device sleeps, so the rate is per hour of wall time.
+     */
+    private void advanceWakeupBuckets() {
+        long bucket = android.os.SystemClock.elapsedRealtime() / WAKEUP_BUCKET_MILLIS;
+        for (long b = Math.max(wakeupBucket + 1, bucket - WAKEUP_BUCKETS + 1); b <= bucket; b++) {
+            wakeupBuckets[(int) (b % WAKEUP_BUCKETS)] = 0;
+        }
+        wakeupBucket = Math.max(wakeupBucket, bucket);
+    }
+
+    private void deactivateIdleGroups() {
+        recordWakeup();
+        // A dormant group's pending collection finds it dormant and is not rescheduled
+        for (MetricGroup<?> group : groups) {
+            group.deactivateIfIdle(idleMillis);
+        }
+    }
+}
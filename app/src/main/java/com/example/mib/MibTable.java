@@ -0,0 +1,180 @@
+package com.example.mib;
+
+import org.snmp4j.agent.*;
+import org.snmp4j.agent.mo.*;
+import org.snmp4j.smi.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+
+/**
+ * A read-only conceptual table (entry OID, columns, integer row indexes) whose cells are
+ * registered as individual instances, so the responder's OID index serves them like any
+ * scalar. Cell values are read through the column's function with the row index.
+ *
+ * Rows can be added and removed while the table is registered; the owner then has to have
+ * the responder's OID index rebuilt.
+ */
+public class MibTable implements MOGroup {
+
+    private final OID entryOid;
+    private final List<Integer> columnIds = new ArrayList<>();
+    private final List<IntFunction<? extends Variable>> columnValues = new ArrayList<>();
+    private final List<Cell> cells = new ArrayList<>();
+    private final TreeSet<Integer> rows = new TreeSet<>();
+    // Where the table is registered, if it is
+    private MOServer server;
+    private OctetString context;
+
+    /**
+     * @param entryOid OID of the table's entry, e.g. ifEntry (1.3.6.1.2.1.2.2.1)
+     */
+    public MibTable(OID entryOid) {
+        this.entryOid = entryOid;
+    }
+
+    public MibTable addColumn(int column, IntFunction<? extends Variable> value) {
+        columnIds.add(column);
+        columnValues.add(value);
+        return this;
+    }
+
+    /**
+     * Create the cells of the given rows. Call before registering.
+     */
+    public synchronized void setRows(int... rowIndexes) {
+        cells.clear();
+        rows.clear();
+        createCells(rowIndexes);
+    }
+
+    /**
+     * Add and remove rows so the table has exactly the given ones, registering and
+     * unregistering their cells if the table is registered.
+     *
+     * @return true if rows were added or removed
+     */
+    public synchronized boolean updateRows(int... rowIndexes) throws DuplicateRegistrationException {
+        TreeSet<Integer> wanted = new TreeSet<>();
+        for (int row : rowIndexes) {
+            wanted.add(row);
+        }
+        List<Integer> removed = new ArrayList<>();
+        for (int row : rows) {
+            if (!wanted.contains(row)) {
+                removed.add(row);
+            }
+        }
+        wanted.removeAll(rows);
+        if (removed.isEmpty() && wanted.isEmpty()) {
+            return false;
+        }
+        removeRows(toArray(removed));
+        addRows(toArray(wanted));
+        return true;
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int value : values) {
+            array[i++] = value;
+        }
+        return array;
+    }
+
+    /**
+     * Create the cells of further rows and register them right away if the table is registered.
+     */
+    public synchronized void addRows(int... rowIndexes) throws DuplicateRegistrationException {
+        List<Cell> added = createCells(rowIndexes);
+        if (server != null) {
+            for (Cell cell : added) {
+                server.register(cell, context);
+            }
+        }
+    }
+
+    /**
+     * Drop the cells of the given rows and unregister them if the table is registered.
+     */
+    public synchronized void removeRows(int... rowIndexes) {
+        int[] sorted = rowIndexes.clone();
+        Arrays.sort(sorted);
+        for (int row : sorted) {
+            rows.remove(row);
+        }
+        for (Iterator<Cell> it = cells.iterator(); it.hasNext(); ) {
+            Cell cell = it.next();
+            if (Arrays.binarySearch(sorted, cell.row) >= 0) {
+                it.remove();
+                if (server != null) {
+                    server.unregister(cell, context);
+                }
+            }
+        }
+    }
+
+    private static final class Cell extends MOScalar<Variable> {
+        final int row;
+        private final IntFunction<? extends Variable> column;
+
+        Cell(OID oid, int row, IntFunction<? extends Variable> column) {
+            super(oid, MOAccessImpl.ACCESS_READ_ONLY, Null.instance);
+            this.row = row;
+            this.column = column;
+        }
+
+        @Override
+        public MOScope getScope() {
+            // A scalar claims its whole object; a cell must only claim its own instance
+            return getSingleInstanceScope();
+        }
+
+        @Override
+        public Variable getValue() {
+            return column.apply(row);
+        }
+    }
+
+    private List<Cell> createCells(int... rowIndexes) {
+        List<Cell> created = new ArrayList<>();
+        for (int c = 0; c < columnIds.size(); c++) {
+            IntFunction<? extends Variable> column = columnValues.get(c);
+            for (int row : rowIndexes) {
+                rows.add(row);
+                OID oid = new OID(entryOid).append(columnIds.get(c)).append(row);
+                created.add(new Cell(oid, row, column));
+            }
+        }
+        cells.addAll(created);
+        return created;
+    }
+
+    public OID getEntryOid() {
+        return entryOid;
+    }
+
+    @Override
+    public synchronized void registerMOs(MOServer server, OctetString context) throws DuplicateRegistrationException {
+        for (Cell cell : cells) {
+            server.register(cell, context);
+        }
+        this.server = server;
+        this.context = context;
+    }
+
+    @Override
+    public synchronized void unregisterMOs(MOServer server, OctetString context) {
+        for (Cell cell : cells) {
+            server.unregister(cell, context);
+        }
+        this.server = null;
+        this.context = null;
+    }
+}
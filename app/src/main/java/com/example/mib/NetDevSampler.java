@@ -0,0 +1,278 @@
+package com.example.mib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-interface traffic counters from /proc/net/dev and link state from sysfs, for IF-MIB.
+ *
+ * Each interface gets an index on first sight that it keeps for good, also after it
+ * disappears (mobile data and VPN interfaces come and go). A re-created interface starts
+ * its kernel counters from 0 again; the sampler adds the counts from before, so the
+ * counters served for an index only ever grow.
+ */
+public class NetDevSampler {
+
+    // /proc/net/dev columns: receive bytes packets errs drop fifo frame compressed multicast,
+    // then transmit bytes packets errs drop fifo colls carrier compressed
+    public static final int RX_BYTES = 0;
+    public static final int RX_PACKETS = 1;
+    public static final int RX_ERRORS = 2;
+    public static final int RX_DROPS = 3;
+    public static final int RX_MULTICAST = 7;
+    public static final int TX_BYTES = 8;
+    public static final int TX_PACKETS = 9;
+    public static final int TX_ERRORS = 10;
+    public static final int TX_DROPS = 11;
+    static final int FIELDS = 16;
+
+    // IF-MIB ifType values
+    public static final int TYPE_OTHER = 1;
+    public static final int TYPE_ETHERNET = 6;
+    public static final int TYPE_LOOPBACK = 24;
+    public static final int TYPE_TUNNEL = 131;
+
+    // IF-MIB ifAdminStatus / ifOperStatus values
+    public static final int STATUS_UP = 1;
+    public static final int STATUS_DOWN = 2;
+    public static final int STATUS_TESTING = 3;
+    public static final int STATUS_DORMANT = 5;
+    public static final int STATUS_NOT_PRESENT = 6;
+    public static final int STATUS_LOWER_LAYER_DOWN = 7;
+
+    // Administrative flag in /sys/class/net/<name>/flags
+    private static final long IFF_UP = 0x1;
+
+    // /sys/class/net/<name>/operstate values
+    private static final byte[] OPER_UP = {'u', 'p'};
+    private static final byte[] OPER_DORMANT = {'d', 'o', 'r', 'm'};
+    private static final byte[] OPER_TESTING = {'t', 'e', 's', 't'};
+    private static final byte[] OPER_LOWER_LAYER_DOWN = {'l', 'o', 'w', 'e', 'r'};
+    private static final byte[] OPER_NOT_PRESENT = {'n', 'o', 't'};
+    private static final byte[] OPER_UNKNOWN = {'u', 'n', 'k'};
+
+    private static final String[] ETHERNET_PREFIXES = {"wlan", "eth", "p2p", "swlan", "ap", "bt-pan", "rndis"};
+    private static final String[] TUNNEL_PREFIXES = {"tun", "ipsec", "ip6tnl", "sit", "gre", "ip_vti", "ip6_vti"};
+
+    private final ProcFile netDev = new ProcFile("/proc/net/dev");
+    private final Map<String, Interface> byName = new HashMap<>();
+    // Position n holds ifIndex n + 1
+    private final List<Interface> byIndex = new ArrayList<>();
+
+    private static final class Interface {
+        final String name;
+        final ProcFile flagsFile;
+        final ProcFile operStateFile;
+        final long[] raw = new long[FIELDS];
+        // Counts of earlier incarnations of the interface
+        final long[] offset = new long[FIELDS];
+        boolean present;
+        boolean seen;
+
+        Interface(String name) {
+            this.name = name;
+            this.flagsFile = new ProcFile("/sys/class/net/" + name + "/flags", 32);
+            this.operStateFile = new ProcFile("/sys/class/net/" + name + "/operstate", 32);
+        }
+    }
+
+    /**
+     * One sample of all interfaces ever seen, by ifIndex.
+     */
+    public static final class Interfaces {
+        public static final Interfaces EMPTY = new Interfaces(new String[0], new int[0], new int[0], new int[0],
+            new long[0][]);
+
+        private final String[] names;
+        private final int[] types;
+        private final int[] adminStatus;
+        private final int[] operStatus;
+        private final long[][] counters;
+
+        Interfaces(String[] names, int[] types, int[] adminStatus, int[] operStatus, long[][] counters) {
+            this.names = names;
+            this.types = types;
+            this.adminStatus = adminStatus;
+            this.operStatus = operStatus;
+            this.counters = counters;
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        /**
+         * @param ifIndex 1 to size()
+         */
+        public String getName(int ifIndex) {
+            return names[ifIndex - 1];
+        }
+
+        public int getType(int ifIndex) {
+            return types[ifIndex - 1];
+        }
+
+        public int getAdminStatus(int ifIndex) {
+            return adminStatus[ifIndex - 1];
+        }
+
+        public int getOperStatus(int ifIndex) {
+            return operStatus[ifIndex - 1];
+        }
+
+        /**
+         * @param field RX_BYTES, RX_PACKETS, ..., TX_DROPS
+         * @return the 64-bit counter
+         */
+        public long getCounter(int ifIndex, int field) {
+            return counters[ifIndex - 1][field];
+        }
+    }
+
+    /**
+     * @param knownNames interface names in ifIndex order from an earlier run, so indexes
+     *                   also survive agent restarts
+     */
+    public NetDevSampler(List<String> knownNames) {
+        for (String name : knownNames) {
+            intern(name);
+        }
+    }
+
+    /**
+     * @return interface names in ifIndex order
+     */
+    public synchronized List<String> getNames() {
+        List<String> names = new ArrayList<>(byIndex.size());
+        for (Interface iface : byIndex) {
+            names.add(iface.name);
+        }
+        return names;
+    }
+
+    public synchronized Interfaces sample() throws IOException {
+        for (Interface iface : byIndex) {
+            iface.seen = false;
+        }
+        netDev.read();
+        // Two header lines
+        netDev.nextLine();
+        while (netDev.nextLine()) {
+            String name = netDev.nextToken(':');
+            if (name == null) {
+                continue;
+            }
+            Interface iface = intern(name);
+            iface.seen = true;
+            boolean reappeared = !iface.present;
+            for (int f = 0; f < FIELDS; f++) {
+                long value = Math.max(netDev.nextLong(), 0);
+                // Counters restart with a re-created interface; keep counting from where it stopped
+                if (reappeared || value < iface.raw[f]) {
+                    iface.offset[f] += iface.raw[f];
+                }
+                iface.raw[f] = value;
+            }
+            iface.present = true;
+        }
+
+        int rows = byIndex.size();
+        String[] names = new String[rows];
+        int[] types = new int[rows];
+        int[] adminStatus = new int[rows];
+        int[] operStatus = new int[rows];
+        long[][] counters = new long[rows][FIELDS];
+        for (int i = 0; i < rows; i++) {
+            Interface iface = byIndex.get(i);
+            if (!iface.seen && iface.present) {
+                iface.present = false;
+                iface.flagsFile.close();
+                iface.operStateFile.close();
+            }
+            names[i] = iface.name;
+            types[i] = typeOf(iface.name);
+            if (iface.present) {
+                adminStatus[i] = (readFlags(iface) & IFF_UP) != 0 ? STATUS_UP : STATUS_DOWN;
+                operStatus[i] = readOperStatus(iface, adminStatus[i]);
+            } else {
+                adminStatus[i] = STATUS_DOWN;
+                operStatus[i] = STATUS_NOT_PRESENT;
+            }
+            for (int f = 0; f < FIELDS; f++) {
+                counters[i][f] = iface.offset[f] + iface.raw[f];
+            }
+        }
+        return new Interfaces(names, types, adminStatus, operStatus, counters);
+    }
+
+    /**
+     * Release the kept-open descriptors; the next sample reopens them.
+     */
+    public synchronized void close() {
+        netDev.close();
+        for (Interface iface : byIndex) {
+            iface.flagsFile.close();
+            iface.operStateFile.close();
+        }
+    }
+
+    private Interface intern(String name) {
+        Interface iface = byName.get(name);
+        if (iface == null) {
+            iface = new Interface(name);
+            byName.put(name, iface);
+            byIndex.add(iface);
+        }
+        return iface;
+    }
+
+    private static long readFlags(Interface iface) {
+        try {
+            iface.flagsFile.read();
+            return Math.max(iface.flagsFile.nextHex(), 0);
+        } catch (IOException e) {
+            // Removed between /proc/net/dev and sysfs
+            return 0;
+        }
+    }
+
+    /**
+     * @param adminStatus decides for drivers that report no operational state (loopback, tun, rmnet)
+     */
+    private static int readOperStatus(Interface iface, int adminStatus) {
+        ProcFile operState = iface.operStateFile;
+        try {
+            operState.read();
+        } catch (IOException e) {
+            return STATUS_NOT_PRESENT;
+        }
+        if (operState.startsWith(OPER_UP)) return STATUS_UP;
+        if (operState.startsWith(OPER_UNKNOWN)) return adminStatus;
+        if (operState.startsWith(OPER_DORMANT)) return STATUS_DORMANT;
+        if (operState.startsWith(OPER_TESTING)) return STATUS_TESTING;
+        if (operState.startsWith(OPER_LOWER_LAYER_DOWN)) return STATUS_LOWER_LAYER_DOWN;
+        if (operState.startsWith(OPER_NOT_PRESENT)) return STATUS_NOT_PRESENT;
+        return STATUS_DOWN;
+    }
+
+    static int typeOf(String name) {
+        if (name.equals("lo")) {
+            return TYPE_LOOPBACK;
+        }
+        for (String prefix : ETHERNET_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return TYPE_ETHERNET;
+            }
+        }
+        for (String prefix : TUNNEL_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return TYPE_TUNNEL;
+            }
+        }
+        // rmnet*, ccmni*, v4-* (464xlat), dummy*
+        return TYPE_OTHER;
+    }
+}
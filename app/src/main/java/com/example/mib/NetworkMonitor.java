@@ -0,0 +1,315 @@
+package com.example.mib;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.telephony.TelephonyManager;
+
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OctetString;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * State of the default network kept current by ConnectivityManager callbacks. Transport,
+ * addresses, MAC, SSID and RSSI are looked up once per network change and held as
+ * ready-to-serve SNMP values, so answering a network OID or sysDescr makes no IPC and
+ * enumerates no interfaces.
+ */
+public class NetworkMonitor {
+
+    private static final String TAG = "NetworkMonitor";
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Context context;
+    private final List<Consumer<NetworkState>> listeners = new CopyOnWriteArrayList<>();
+    private volatile NetworkState state;
+    private ConnectivityManager.NetworkCallback callback;
+
+    // Last reported default network, guarded by this
+    private NetworkCapabilities capabilities;
+    private LinkProperties linkProperties;
+
+    /**
+     * One view of the default network, precomputed for the MOs.
+     */
+    public static final class NetworkState {
+        public static final NetworkState UNKNOWN = new NetworkState("UNKNOWN", "UNKNOWN", -999, "UNKNOWN", "UNKNOWN", "");
+
+        public final OctetString type;
+        public final OctetString wifiSsid;
+        public final Integer32 wifiSignalStrength;
+        public final OctetString ipAddress;
+        public final OctetString macAddress;
+        /** Network part of sysDescr, e.g. "WiFi: Office (Signal: 3/4)"; empty when not connected. */
+        public final String description;
+
+        NetworkState(String type, String wifiSsid, int wifiSignalStrength, String ipAddress, String macAddress,
+                     String description) {
+            this.type = new OctetString(type);
+            this.wifiSsid = new OctetString(wifiSsid);
+            this.wifiSignalStrength = new Integer32(wifiSignalStrength);
+            this.ipAddress = new OctetString(ipAddress);
+            this.macAddress = new OctetString(macAddress);
+            this.description = description;
+        }
+    }
+
+    public NetworkMonitor(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Called on the connectivity callback thread with every new state.
+     */
+    public void addListener(Consumer<NetworkState> listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void start() {
+        if (callback != null) {
+            return;
+        }
+        ConnectivityManager connectivityManager = connectivityManager();
+        try {
+            // Current state first; the callback may not fire at all while there is no network
+            Network active = connectivityManager.getActiveNetwork();
+            capabilities = (active != null) ? connectivityManager.getNetworkCapabilities(active) : null;
+            linkProperties = (active != null) ? connectivityManager.getLinkProperties(active) : null;
+            update();
+
+            callback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                    synchronized (NetworkMonitor.this) {
+                        capabilities = networkCapabilities;
+                        update();
+                    }
+                }
+
+                @Override
+                public void onLinkPropertiesChanged(Network network, LinkProperties properties) {
+                    synchronized (NetworkMonitor.this) {
+                        linkProperties = properties;
+                        update();
+                    }
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    synchronized (NetworkMonitor.this) {
+                        capabilities = null;
+                        linkProperties = null;
+                        update();
+                    }
+                }
+            };
+            connectivityManager.registerDefaultNetworkCallback(callback);
+            android.util.Log.i(TAG, "Listening for default network changes");
+        } catch (Exception e) {
+            android.util.Log.w(TAG, "Cannot monitor network changes", e);
+            callback = null;
+        }
+    }
+
+    public synchronized void stop() {
+        if (callback != null) {
+            try {
+                connectivityManager().unregisterNetworkCallback(callback);
+            } catch (Exception e) {
+                // Not registered
+            }
+            callback = null;
+        }
+        // Without the callback the last state would go stale
+        state = null;
+    }
+
+    /**
+     * @return the latest state; while stopped it is looked up from the active network on every call
+     */
+    public NetworkState getState() {
+        NetworkState current = state;
+        if (current != null) {
+            return current;
+        }
+        try {
+            ConnectivityManager connectivityManager = connectivityManager();
+            Network active = connectivityManager.getActiveNetwork();
+            if (active == null) {
+                return buildState(null, null);
+            }
+            return buildState(connectivityManager.getNetworkCapabilities(active),
+                connectivityManager.getLinkProperties(active));
+        } catch (Exception e) {
+            return NetworkState.UNKNOWN;
+        }
+    }
+
+    private void update() {
+        NetworkState updated;
+        try {
+            updated = buildState(capabilities, linkProperties);
+        } catch (Exception e) {
+            android.util.Log.w(TAG, "Cannot read network state", e);
+            updated = NetworkState.UNKNOWN;
+        }
+        state = updated;
+        for (Consumer<NetworkState> listener : listeners) {
+            listener.accept(updated);
+        }
+    }
+
+    private ConnectivityManager connectivityManager() {
+        return (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    private NetworkState buildState(NetworkCapabilities caps, LinkProperties properties) {
+        String type = transportName(caps);
+
+        String ssid = "UNKNOWN";
+        int rssi = -999;
+        WifiInfo wifiInfo = null;
+        try {
+            WifiManager wifiManager = (WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+            wifiInfo = wifiManager.getConnectionInfo();
+            String rawSsid = wifiInfo.getSSID();
+            ssid = (rawSsid != null) ? rawSsid.replace("\"", "") : "NONE";
+            rssi = wifiInfo.getRssi();
+        } catch (Exception e) {
+            // Keep UNKNOWN
+        }
+
+        return new NetworkState(type, ssid, rssi, ipAddress(properties), wifiMacAddress(),
+            description(type, wifiInfo));
+    }
+
+    private static String transportName(NetworkCapabilities caps) {
+        if (caps == null) {
+            return "NONE";
+        }
+        // Same names as the former NetworkInfo.getTypeName()
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) return "WIFI";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) return "MOBILE";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) return "ETHERNET";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_BLUETOOTH)) return "BLUETOOTH";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) return "VPN";
+        return "UNKNOWN";
+    }
+
+    /**
+     * @return the first IPv4 address of the default network that is neither loopback nor link-local
+     */
+    private static String ipAddress(LinkProperties properties) {
+        if (properties == null) {
+            return "UNKNOWN";
+        }
+        for (LinkAddress linkAddress : properties.getLinkAddresses()) {
+            InetAddress address = linkAddress.getAddress();
+            if (address instanceof Inet4Address && !address.isLoopbackAddress() && !address.isLinkLocalAddress()) {
+                return address.getHostAddress();
+            }
+        }
+        return "UNKNOWN";
+    }
+
+    private static String wifiMacAddress() {
+        try {
+            NetworkInterface wlan = NetworkInterface.getByName("wlan0");
+            byte[] mac = (wlan != null) ? wlan.getHardwareAddress() : null;
+            if (mac == null) {
+                return "UNKNOWN";
+            }
+            char[] text = new char[mac.length * 3 - 1];
+            for (int i = 0; i < mac.length; i++) {
+                text[i * 3] = HEX[(mac[i] >> 4) & 0xF];
+                text[i * 3 + 1] = HEX[mac[i] & 0xF];
+                if (i < mac.length - 1) {
+                    text[i * 3 + 2] = ':';
+                }
+            }
+            return new String(text);
+        } catch (Exception e) {
+            return "UNKNOWN";
+        }
+    }
+
+    private String description(String type, WifiInfo wifiInfo) {
+        if ("WIFI".equals(type)) {
+            String ssid = (wifiInfo != null) ? wifiInfo.getSSID() : null;
+            if (wifiInfo == null) {
+                return "WiFi: Connected (Info unavailable)";
+            } else if (ssid != null && !ssid.equals("<unknown ssid>") && !ssid.equals("\"<unknown ssid>\"")) {
+                int signalLevel = WifiManager.calculateSignalLevel(wifiInfo.getRssi(), 5);
+                return "WiFi: " + ssid.replace("\"", "") + " (Signal: " + signalLevel + "/4)";
+            } else {
+                return "WiFi: Connected (SSID hidden)";
+            }
+        } else if ("MOBILE".equals(type)) {
+            return cellularDescription();
+        } else if ("NONE".equals(type)) {
+            return "";
+        }
+        return "Network: " + type;
+    }
+
+    private String cellularDescription() {
+        try {
+            TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+            if (telephonyManager == null) {
+                return "Cellular: Service unavailable";
+            }
+            StringBuilder description = new StringBuilder("Cellular: ");
+            String operatorName = telephonyManager.getNetworkOperatorName();
+            description.append((operatorName != null && !operatorName.isEmpty()) ? operatorName : "Mobile");
+            try {
+                if (Build.VERSION.SDK_INT >= 24) {
+                    String generation = cellularGeneration(telephonyManager.getDataNetworkType());
+                    if (!generation.isEmpty()) {
+                        description.append(" (").append(generation).append(")");
+                    }
+                }
+            } catch (Exception e) {
+                // Network type not available
+            }
+            return description.toString();
+        } catch (SecurityException e) {
+            return "Cellular: Permission denied";
+        } catch (Exception e) {
+            return "Cellular: Error";
+        }
+    }
+
+    private static String cellularGeneration(int networkType) {
+        switch (networkType) {
+            case TelephonyManager.NETWORK_TYPE_LTE:
+                return "LTE";
+            case TelephonyManager.NETWORK_TYPE_HSPAP:
+            case TelephonyManager.NETWORK_TYPE_HSPA:
+            case TelephonyManager.NETWORK_TYPE_HSDPA:
+            case TelephonyManager.NETWORK_TYPE_HSUPA:
+                return "HSPA";
+            case TelephonyManager.NETWORK_TYPE_UMTS:
+                return "3G";
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+                return "2G";
+            case 20: // NETWORK_TYPE_NR (5G) - API 29+
+                return "5G";
+            default:
+                return "";
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.mib;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.PowerManager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Power state of the device from PowerManager (Doze, battery saver) and the battery
+ * snapshot (plugged in or not), updated by the corresponding broadcasts and battery changes.
+ */
+public class PowerMonitor {
+
+    private static final String TAG = "PowerMonitor";
+
+    /**
+     * From least to most constrained; a device in Doze on battery saver is IDLE.
+     */
+    public enum PowerState {
+        CHARGING,
+        DISCHARGING,
+        POWER_SAVE,
+        IDLE
+    }
+
+    private final Context context;
+    private final BatteryMonitor batteryMonitor;
+    private final List<Consumer<PowerState>> listeners = new CopyOnWriteArrayList<>();
+    private volatile PowerState state;
+    private BroadcastReceiver receiver;
+
+    public PowerMonitor(Context context, BatteryMonitor batteryMonitor) {
+        this.context = context;
+        this.batteryMonitor = batteryMonitor;
+        // Power connected/disconnected can arrive before the battery snapshot reflects it
+        batteryMonitor.addListener(battery -> {
+            if (state != null) {
+                update();
+            }
+        });
+    }
+
+    /**
+     * Called on the main thread whenever the state changes.
+     */
+    public void addListener(Consumer<PowerState> listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void start() {
+        if (receiver != null) {
+            return;
+        }
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                update();
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        try {
+            context.registerReceiver(receiver, filter);
+            update();
+            android.util.Log.i(TAG, "Listening for power changes, now " + state);
+        } catch (Exception e) {
+            android.util.Log.w(TAG, "Cannot monitor power changes", e);
+            receiver = null;
+        }
+    }
+
+    public synchronized void stop() {
+        if (receiver != null) {
+            try {
+                context.unregisterReceiver(receiver);
+            } catch (IllegalArgumentException e) {
+                // Not registered
+            }
+            receiver = null;
+        }
+        state = null;
+    }
+
+    /**
+     * @return the latest state; while stopped it is read on every call
+     */
+    public PowerState getState() {
+        PowerState current = state;
+        return (current != null) ? current : readState();
+    }
+
+    private synchronized void update() {
+        PowerState updated = readState();
+        PowerState previous = state;
+        state = updated;
+        if (updated != previous) {
+            for (Consumer<PowerState> listener : listeners) {
+                listener.accept(updated);
+            }
+        }
+    }
+
+    private PowerState readState() {
+        try {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (powerManager.isDeviceIdleMode()) {
+                return PowerState.IDLE;
+            }
+            if (powerManager.isPowerSaveMode()) {
+                return PowerState.POWER_SAVE;
+            }
+        } catch (Exception e) {
+            android.util.Log.w(TAG, "Cannot read power manager state", e);
+        }
+        // Unknown counts as on battery: sampling less is the safe side
+        String plugged = batteryMonitor.getState().plugged;
+        return ("NONE".equals(plugged) || "UNKNOWN".equals(plugged)) ? PowerState.DISCHARGING : PowerState.CHARGING;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.mib;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sampling interval multipliers per power state, optionally per metric group. Written as
+ * comma-separated "state=multiplier" or "group.state=multiplier" entries, e.g.
+ * "discharging=2,power_save=4,idle=8,cpu.idle=16"; states without an entry use 1.
+ */
+public class PowerPolicy {
+
+    private static final String TAG = "PowerPolicy";
+
+    public static final String DEFAULT = "discharging=2,power_save=4,idle=8";
+
+    // "state" or "group.state" -> multiplier
+    private final Map<String, Double> multipliers;
+
+    private PowerPolicy(Map<String, Double> multipliers) {
+        this.multipliers = multipliers;
+    }
+
+    public static PowerPolicy parse(String value) {
+        try {
+            Map<String, Double> parsed = new HashMap<>();
+            for (String entry : value.split(",")) {
+                if (entry.trim().isEmpty()) {
+                    continue;
+                }
+                String[] parts = entry.split("=");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("entry must be state=multiplier: " + entry);
+                }
+                String key = parts[0].trim().toLowerCase(Locale.ROOT);
+                String state = key.substring(key.indexOf('.') + 1);
+                // Reject unknown states
+                PowerMonitor.PowerState.valueOf(state.toUpperCase(Locale.ROOT));
+                double multiplier = Double.parseDouble(parts[1].trim());
+                if (!(multiplier > 0)) {
+                    throw new NumberFormatException("multiplier must be positive");
+                }
+                parsed.put(key, multiplier);
+            }
+            return new PowerPolicy(parsed);
+        } catch (Exception e) {
+            android.util.Log.w(TAG, "Invalid power policy '" + value + "', using " + DEFAULT);
+            return parse(DEFAULT);
+        }
+    }
+
+    /**
+     * @return the factor to stretch the group's sampling interval by in the given state
+     */
+    public double getMultiplier(String group, PowerMonitor.PowerState state) {
+        String name = state.name().toLowerCase(Locale.ROOT);
+        Double multiplier = multipliers.get(group + "." + name);
+        if (multiplier == null) {
+            multiplier = multipliers.get(name);
+        }
+        return (multiplier != null) ? multiplier : 1.0;
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.mib;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable reader for /proc and /sys files. The file is kept open and re-read with a
+ * positional read from offset 0 into a buffer that is reused across reads, and numbers
+ * are parsed in place from the bytes, so a collection allocates no Strings, regexes or
+ * readers. The kernel regenerates procfs and sysfs content on every read from offset 0;
+ * if a positional read fails the file is reopened once.
+ *
+ * Not thread safe: callers that share an instance synchronize on it, except for the
+ * synchronized single-value helpers.
+ */
+public final class ProcFile {
+
+    private static final String TAG = "ProcFile";
+
+    private final String path;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private byte[] buffer;
+    private ByteBuffer byteBuffer;
+    private int length;
+    private int pos;
+
+    public ProcFile(String path) {
+        this(path, 4096);
+    }
+
+    /**
+     * @param initialCapacity starting buffer size; the buffer grows if the file is larger
+     */
+    public ProcFile(String path, int initialCapacity) {
+        this.path = path;
+        this.buffer = new byte[initialCapacity];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Read the whole file into the buffer and put the cursor at its start.
+     */
+    public void read() throws IOException {
+        try {
+            readFully();
+        } catch (IOException e) {
+            // Some files cannot be re-read through an old descriptor (e.g. after a hotplug)
+            close();
+            readFully();
+        }
+        pos = 0;
+    }
+
+    private void readFully() throws IOException {
+        if (channel == null) {
+            file = new RandomAccessFile(path, "r");
+            channel = file.getChannel();
+        }
+        length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+                byteBuffer = ByteBuffer.wrap(buffer);
+            }
+            byteBuffer.limit(buffer.length).position(length);
+            int n = channel.read(byteBuffer, length);
+            if (n <= 0) {
+                break;
+            }
+            length += n;
+        }
+    }
+
+    public synchronized void close() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                android.util.Log.w(TAG, "Cannot close " + path, e);
+            }
+        }
+        file = null;
+        channel = null;
+    }
+
+    /**
+     * Read the file and parse its first integer, e.g. a sysfs value such as scaling_cur_freq.
+     */
+    public synchronized long readLong() throws IOException {
+        read();
+        long value = nextLong();
+        if (value < 0) {
+            throw new IOException("No number in " + path);
+        }
+        return value;
+    }
+
+    /**
+     * Read the file and parse its first decimal number scaled by 10^decimals,
+     * e.g. readFixed(3) of /proc/uptime gives milliseconds.
+     */
+    public synchronized long readFixed(int decimals) throws IOException {
+        read();
+        long value = nextFixed(decimals);
+        if (value < 0) {
+            throw new IOException("No number in " + path);
+        }
+        return value;
+    }
+
+    // Cursor over the buffer
+
+    public boolean atEnd() {
+        return pos >= length;
+    }
+
+    /**
+     * @return true if the rest of the current line, from the cursor, starts with the given ASCII bytes
+     */
+    public boolean startsWith(byte[] prefix) {
+        if (pos + prefix.length > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void skip(int count) {
+        pos = Math.min(pos + count, length);
+    }
+
+    public boolean atDigit() {
+        return pos < length && isDigit(buffer[pos]);
+    }
+
+    /**
+     * Move the cursor past the next whitespace-separated token on the current line.
+     *
+     * @return false if the line has no further token
+     */
+    public boolean skipToken() {
+        skipBlanks();
+        if (pos >= length || buffer[pos] == '\n') {
+            return false;
+        }
+        while (pos < length && !isBlank(buffer[pos]) && buffer[pos] != '\n') {
+            pos++;
+        }
+        return true;
+    }
+
+    /**
+     * Move the cursor to the start of the next line.
+     *
+     * @return false if there is no next line
+     */
+    public boolean nextLine() {
+        while (pos < length && buffer[pos] != '\n') {
+            pos++;
+        }
+        if (pos < length) {
+            pos++;
+        }
+        return pos < length;
+    }
+
+    /**
+     * Parse the next unsigned integer on the current line, skipping blanks and a ':' before it.
+     *
+     * @return the value, or -1 if the line has no further number
+     */
+    public long nextLong() {
+        skipSeparators();
+        if (!atDigit()) {
+            return -1;
+        }
+        long value = 0;
+        while (pos < length && isDigit(buffer[pos])) {
+            value = value * 10 + (buffer[pos++] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Parse the next hexadecimal number on the current line, with or without "0x",
+     * e.g. the flags of a network interface in sysfs.
+     *
+     * @return the value, or -1 if the line has no further number
+     */
+    public long nextHex() {
+        skipBlanks();
+        if (pos + 1 < length && buffer[pos] == '0' && (buffer[pos + 1] == 'x' || buffer[pos + 1] == 'X')) {
+            pos += 2;
+        }
+        long value = -1;
+        while (pos < length) {
+            int digit = Character.digit(buffer[pos], 16);
+            if (digit < 0) {
+                break;
+            }
+            value = (value < 0 ? 0 : value << 4) | digit;
+            pos++;
+        }
+        return value;
+    }
+
+    /**
+     * Read the next token on the current line, up to a blank or the given terminator,
+     * and move the cursor past the terminator if present.
+     *
+     * @return the token, or null if the line has no further token
+     */
+    public String nextToken(char terminator) {
+        skipBlanks();
+        int start = pos;
+        while (pos < length && !isBlank(buffer[pos]) && buffer[pos] != '\n' && buffer[pos] != terminator) {
+            pos++;
+        }
+        if (pos == start) {
+            return null;
+        }
+        String token = new String(buffer, start, pos - start, StandardCharsets.US_ASCII);
+        if (pos < length && buffer[pos] == terminator) {
+            pos++;
+        }
+        return token;
+    }
+
+    /**
+     * Read up to the next terminator, blanks included, and move the cursor past it,
+     * e.g. one NUL-separated argument of /proc/[pid]/cmdline.
+     *
+     * @return the string, or null at the end of the file
+     */
+    public String nextString(char terminator) {
+        if (pos >= length) {
+            return null;
+        }
+        int start = pos;
+        while (pos < length && buffer[pos] != terminator) {
+            pos++;
+        }
+        String value = new String(buffer, start, pos - start, StandardCharsets.UTF_8);
+        if (pos < length) {
+            pos++;
+        }
+        return value;
+    }
+
+    /**
+     * Move the cursor past the last occurrence of the given byte in the file, e.g. the ')'
+     * closing the command name in /proc/[pid]/stat, which may itself contain ')'.
+     *
+     * @return false if the byte does not occur
+     */
+    public boolean skipPastLast(char c) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == c) {
+                pos = i + 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the next non-blank byte on the current line as a character, or 0 if there is none
+     */
+    public char nextChar() {
+        skipBlanks();
+        if (pos >= length || buffer[pos] == '\n') {
+            return 0;
+        }
+        return (char) buffer[pos++];
+    }
+
+    /**
+     * Parse the next unsigned decimal number on the current line scaled by 10^decimals
+     * (extra fraction digits are truncated).
+     *
+     * @return the scaled value, or -1 if the line has no further number
+     */
+    public long nextFixed(int decimals) {
+        long value = nextLong();
+        if (value < 0) {
+            return -1;
+        }
+        int scale = 0;
+        if (pos < length && buffer[pos] == '.') {
+            pos++;
+            while (pos < length && isDigit(buffer[pos])) {
+                if (scale < decimals) {
+                    value = value * 10 + (buffer[pos] - '0');
+                    scale++;
+                }
+                pos++;
+            }
+        }
+        for (; scale < decimals; scale++) {
+            value *= 10;
+        }
+        return value;
+    }
+
+    private void skipBlanks() {
+        while (pos < length && isBlank(buffer[pos])) {
+            pos++;
+        }
+    }
+
+    private void skipSeparators() {
+        while (pos < length && (isBlank(buffer[pos]) || buffer[pos] == ':')) {
+            pos++;
+        }
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,435 @@
+package com.example.mib;
+
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The processes in /proc for HOST-RESOURCES-MIB hrSWRunTable and hrSWRunPerfTable.
+ *
+ * A process's name, command line and type never change, so they are read once when its PID
+ * is first seen; later samples only re-read /proc/[pid]/stat for the state, CPU time and
+ * resident size. Up to MAX_OPEN_STATS processes keep that descriptor open between samples,
+ * the others reopen it per sample, so hundreds of processes stay well clear of the file
+ * descriptor limit. A PID whose start time changed belongs to a new process and is read
+ * again. The PIDs are spread over a small worker pool.
+ *
+ * Only processes the app may see are listed: on devices that mount /proc with hidepid, a
+ * regular app sees just its own.
+ */
+public class ProcessSampler {
+
+    private static final String TAG = "ProcessSampler";
+
+    // HOST-RESOURCES-MIB hrSWRunType values
+    public static final int TYPE_OPERATING_SYSTEM = 2;
+    public static final int TYPE_APPLICATION = 4;
+
+    // HOST-RESOURCES-MIB hrSWRunStatus values
+    public static final int STATUS_RUNNING = 1;
+    public static final int STATUS_RUNNABLE = 2;
+    public static final int STATUS_NOT_RUNNABLE = 3;
+    public static final int STATUS_INVALID = 4;
+
+    // Kernel threads have no command line
+    private static final long PF_KTHREAD = 0x00200000;
+
+    // Kept-open /proc/[pid]/stat descriptors, against a typical limit of 1024 per app
+    private static final int MAX_OPEN_STATS = 256;
+
+    private final File proc;
+    private final ConcurrentHashMap<Integer, Process> byPid = new ConcurrentHashMap<>();
+    private final AtomicInteger openStats = new AtomicInteger();
+    private final ThreadPoolExecutor workers;
+    private final int workerCount;
+    private final long ticksPerSecond;
+    private final long pageSizeKb;
+
+    private static final class Process {
+        final int pid;
+        final File dir;
+        final ProcFile stat;
+        // Holds one of the MAX_OPEN_STATS slots
+        boolean keepOpen;
+        // Static, read when the PID was first seen
+        long startTime = -1;
+        String name;
+        String path;
+        String parameters;
+        int type;
+        // Volatile, from the last sample
+        int status;
+        long cpuTicks;
+        long rssPages;
+
+        Process(File proc, int pid) {
+            this.pid = pid;
+            this.dir = new File(proc, Integer.toString(pid));
+            this.stat = new ProcFile(new File(dir, "stat").getPath(), 512);
+        }
+    }
+
+    /**
+     * One sample of all visible processes, sorted by PID.
+     */
+    public static final class Processes {
+        public static final Processes EMPTY = new Processes(new int[0], new String[0], new String[0], new String[0],
+            new int[0], new int[0], new long[0], new long[0]);
+
+        private final int[] pids;
+        private final String[] names;
+        private final String[] paths;
+        private final String[] parameters;
+        private final int[] types;
+        private final int[] status;
+        private final long[] cpuCentis;
+        private final long[] memoryKb;
+
+        private Processes(int[] pids, String[] names, String[] paths, String[] parameters, int[] types,
+                          int[] status, long[] cpuCentis, long[] memoryKb) {
+            this.pids = pids;
+            this.names = names;
+            this.paths = paths;
+            this.parameters = parameters;
+            this.types = types;
+            this.status = status;
+            this.cpuCentis = cpuCentis;
+            this.memoryKb = memoryKb;
+        }
+
+        public int size() {
+            return pids.length;
+        }
+
+        public int[] getPids() {
+            return pids.clone();
+        }
+
+        /**
+         * @return the PIDs without a copy, ascending, for the process tables' rows; must not be modified
+         */
+        int[] sortedPids() {
+            return pids;
+        }
+
+        /**
+         * @return the position of the PID in this sample, or -1 if it is not running
+         */
+        public int indexOf(int pid) {
+            int i = Arrays.binarySearch(pids, pid);
+            return (i >= 0) ? i : -1;
+        }
+
+        // By position from indexOf()
+
+        public String getName(int i) {
+            return names[i];
+        }
+
+        public String getPath(int i) {
+            return paths[i];
+        }
+
+        public String getParameters(int i) {
+            return parameters[i];
+        }
+
+        public int getType(int i) {
+            return types[i];
+        }
+
+        public int getStatus(int i) {
+            return status[i];
+        }
+
+        /**
+         * @return user and system CPU time in centi-seconds
+         */
+        public long getCpuCentis(int i) {
+            return cpuCentis[i];
+        }
+
+        /**
+         * @return resident memory in KBytes
+         */
+        public long getMemoryKb(int i) {
+            return memoryKb[i];
+        }
+    }
+
+    public ProcessSampler() {
+        this(new File("/proc"));
+    }
+
+    /**
+     * @param proc the directory with one subdirectory per PID, /proc outside of tests
+     */
+    ProcessSampler(File proc) {
+        this.proc = proc;
+        workerCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        // Threads end between samples of a dormant group
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread thread = new Thread(runnable, "ProcessScanner");
+                thread.setDaemon(true);
+                return thread;
+            });
+        workers.allowCoreThreadTimeOut(true);
+        ticksPerSecond = sysconf(OsConstants._SC_CLK_TCK, 100);
+        pageSizeKb = sysconf(OsConstants._SC_PAGESIZE, 4096) / 1024;
+    }
+
+    public synchronized Processes sample() throws IOException {
+        String[] entries = proc.list();
+        if (entries == null) {
+            throw new IOException("Cannot list " + proc);
+        }
+        int[] listed = new int[entries.length];
+        int count = 0;
+        for (String entry : entries) {
+            int pid = parsePid(entry);
+            if (pid > 0) {
+                listed[count++] = pid;
+            }
+        }
+        final int[] pids = Arrays.copyOf(listed, count);
+        Arrays.sort(pids);
+
+        // Worker w reads every workerCount-th PID, so cheap and expensive PIDs spread evenly
+        List<Callable<Void>> stripes = new ArrayList<>(workerCount);
+        for (int w = 0; w < workerCount; w++) {
+            final int first = w;
+            stripes.add(() -> {
+                for (int i = first; i < pids.length; i += workerCount) {
+                    readProcess(pids[i]);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> stripe : workers.invokeAll(stripes)) {
+                stripe.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning /proc", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot scan /proc", e.getCause());
+        }
+
+        List<Process> alive = new ArrayList<>(pids.length);
+        for (int pid : pids) {
+            Process process = byPid.get(pid);
+            if (process != null) {
+                alive.add(process);
+            }
+        }
+        // Processes that exited since the last sample
+        if (byPid.size() > alive.size()) {
+            for (Process process : byPid.values()) {
+                if (Arrays.binarySearch(pids, process.pid) < 0) {
+                    byPid.remove(process.pid);
+                    discard(process);
+                }
+            }
+        }
+
+        int rows = alive.size();
+        int[] rowPids = new int[rows];
+        String[] names = new String[rows];
+        String[] paths = new String[rows];
+        String[] parameters = new String[rows];
+        int[] types = new int[rows];
+        int[] status = new int[rows];
+        long[] cpuCentis = new long[rows];
+        long[] memoryKb = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            Process process = alive.get(i);
+            rowPids[i] = process.pid;
+            names[i] = process.name;
+            paths[i] = process.path;
+            parameters[i] = process.parameters;
+            types[i] = process.type;
+            status[i] = process.status;
+            cpuCentis[i] = process.cpuTicks * 100 / ticksPerSecond;
+            memoryKb[i] = process.rssPages * pageSizeKb;
+        }
+        return new Processes(rowPids, names, paths, parameters, types, status, cpuCentis, memoryKb);
+    }
+
+    /**
+     * Release the kept-open descriptors; the next sample reopens them.
+     */
+    public synchronized void close() {
+        for (Process process : byPid.values()) {
+            process.stat.close();
+        }
+        byPid.clear();
+        openStats.set(0);
+    }
+
+    /**
+     * Read /proc/[pid]/stat, and the static fields if the PID is new. Drops the PID if the
+     * process exited in the meantime.
+     */
+    private void readProcess(int pid) {
+        Process process = byPid.get(pid);
+        if (process == null) {
+            process = new Process(proc, pid);
+        }
+        if (!process.keepOpen) {
+            // A slot freed by an exited process goes to the next one read
+            process.keepOpen = reserveStat();
+        }
+        ProcFile stat = process.stat;
+        try {
+            stat.read();
+            // "pid (comm) state ppid ..."; comm may contain blanks and ')'
+            if (!stat.skipPastLast(')')) {
+                throw new IOException("Malformed " + stat.getPath());
+            }
+            char state = stat.nextChar();
+            // ppid pgrp session tty_nr tpgid
+            skipFields(stat, 5);
+            long flags = stat.nextLong();
+            // minflt cminflt majflt cmajflt
+            skipFields(stat, 4);
+            long utime = stat.nextLong();
+            long stime = stat.nextLong();
+            // cutime cstime priority nice num_threads itrealvalue; priority and nice may be negative
+            skipFields(stat, 6);
+            long startTime = stat.nextLong();
+            // vsize
+            skipFields(stat, 1);
+            long rss = stat.nextLong();
+
+            if (startTime != process.startTime) {
+                // New PID, or a reused one
+                readStatic(process, flags);
+                process.startTime = startTime;
+            }
+            process.status = statusOf(state);
+            process.cpuTicks = Math.max(utime, 0) + Math.max(stime, 0);
+            process.rssPages = Math.max(rss, 0);
+            byPid.put(pid, process);
+            if (!process.keepOpen) {
+                stat.close();
+            }
+        } catch (IOException e) {
+            // Exited between listing /proc and reading it
+            byPid.remove(pid);
+            discard(process);
+        }
+    }
+
+    private boolean reserveStat() {
+        if (openStats.incrementAndGet() <= MAX_OPEN_STATS) {
+            return true;
+        }
+        openStats.decrementAndGet();
+        return false;
+    }
+
+    private void discard(Process process) {
+        process.stat.close();
+        if (process.keepOpen) {
+            process.keepOpen = false;
+            openStats.decrementAndGet();
+        }
+    }
+
+    private static void readStatic(Process process, long flags) throws IOException {
+        ProcFile cmdline = new ProcFile(new File(process.dir, "cmdline").getPath(), 256);
+        try {
+            cmdline.read();
+            String path = cmdline.nextString('\0');
+            if (path != null && !path.isEmpty() && (flags & PF_KTHREAD) == 0) {
+                StringBuilder parameters = new StringBuilder();
+                for (String arg = cmdline.nextString('\0'); arg != null; arg = cmdline.nextString('\0')) {
+                    if (parameters.length() > 0) {
+                        parameters.append(' ');
+                    }
+                    parameters.append(arg);
+                }
+                process.path = path;
+                process.parameters = parameters.toString();
+                // App processes are named after their package, native ones after their binary
+                process.name = path.substring(path.lastIndexOf('/') + 1);
+                process.type = TYPE_APPLICATION;
+                return;
+            }
+        } finally {
+            cmdline.close();
+        }
+        ProcFile comm = new ProcFile(new File(process.dir, "comm").getPath(), 64);
+        try {
+            comm.read();
+            String name = comm.nextString('\n');
+            process.name = (name != null) ? name : "";
+        } finally {
+            comm.close();
+        }
+        process.path = "";
+        process.parameters = "";
+        // Otherwise a zombie, whose command line is gone
+        process.type = ((flags & PF_KTHREAD) != 0) ? TYPE_OPERATING_SYSTEM : TYPE_APPLICATION;
+    }
+
+    private static void skipFields(ProcFile file, int count) {
+        for (int i = 0; i < count; i++) {
+            file.skipToken();
+        }
+    }
+
+    private static int statusOf(char state) {
+        switch (state) {
+            case 'R':
+                return STATUS_RUNNING;
+            case 'S':
+            case 'I':
+                return STATUS_RUNNABLE;
+            case 'D':
+            case 'T':
+            case 't':
+                return STATUS_NOT_RUNNABLE;
+            default:
+                // Zombie or dead
+                return STATUS_INVALID;
+        }
+    }
+
+    private static int parsePid(String entry) {
+        int pid = 0;
+        for (int i = 0; i < entry.length(); i++) {
+            char c = entry.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            pid = pid * 10 + (c - '0');
+        }
+        return pid;
+    }
+
+    private static long sysconf(int name, long fallback) {
+        try {
+            long value = Os.sysconf(name);
+            return (value > 0) ? value : fallback;
+        } catch (Exception e) {
+            android.util.Log.w(TAG, "Cannot read sysconf " + name + ", using " + fallback);
+            return fallback;
+        }
+    }
+}
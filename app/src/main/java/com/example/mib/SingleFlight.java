@@ -0,0 +1,58 @@
+package com.example.mib;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent reads of the same metric: while a computation for a key is in
+ * flight, further callers for that key wait for it and share its result instead of
+ * repeating the binder call or /proc read. Nothing is cached once the computation finishes.
+ */
+public class SingleFlight {
+
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Supplier<T> computation) {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            shared.incrementAndGet();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                // Rethrow the leader's failure unwrapped, as if this caller had made the call
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        executions.incrementAndGet();
+        try {
+            T value = computation.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    public long getExecutionCount() {
+        return executions.get();
+    }
+
+    public long getSharedCount() {
+        return shared.get();
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.mib;
+
+import org.snmp4j.PDU;
+import org.snmp4j.agent.*;
+import org.snmp4j.agent.request.SubRequest;
+import org.snmp4j.smi.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * A read-only conceptual table registered as a single managed object over its entry, for
+ * tables whose rows change with every sample (e.g. one row per process). Its rows are the
+ * sorted row indexes of the current snapshot, read on every lookup, so rows come and go
+ * without registering anything or rebuilding the responder's OID index, which answers GET
+ * and GETNEXT from the row array directly. Columns work as in MibTable.
+ */
+public class SnapshotTable implements ManagedObject<SubRequest<?>> {
+
+    private final OID entryOid;
+    private final MOScope scope;
+    private final Supplier<int[]> rows;
+    private int[] columnIds = new int[0];
+    private final List<IntFunction<? extends Variable>> columnValues = new ArrayList<>();
+
+    /**
+     * @param entryOid OID of the table's entry, e.g. hrSWRunEntry (1.3.6.1.2.1.25.4.2.1)
+     * @param rows the current row indexes, ascending; called per lookup, so it should hand out
+     *             the snapshot's array rather than a copy
+     */
+    public SnapshotTable(OID entryOid, Supplier<int[]> rows) {
+        this.entryOid = entryOid;
+        this.scope = new DefaultMOScope(entryOid, true, entryOid.nextPeer(), false);
+        this.rows = rows;
+    }
+
+    /**
+     * Add a column; columns are added in ascending order.
+     */
+    public SnapshotTable addColumn(int column, IntFunction<? extends Variable> value) {
+        if (columnIds.length > 0 && column <= columnIds[columnIds.length - 1]) {
+            throw new IllegalArgumentException("Column " + column + " added out of order");
+        }
+        columnIds = Arrays.copyOf(columnIds, columnIds.length + 1);
+        columnIds[columnIds.length - 1] = column;
+        columnValues.add(value);
+        return this;
+    }
+
+    public OID getEntryOid() {
+        return entryOid;
+    }
+
+    public int getColumnCount() {
+        return columnIds.length;
+    }
+
+    /**
+     * @param column position of the column, 0 for the first one added
+     */
+    public int getColumnId(int column) {
+        return columnIds[column];
+    }
+
+    /**
+     * @return the position of the column with the given sub-identifier, or -1 if there is none
+     */
+    public int indexOfColumn(int columnId) {
+        int i = Arrays.binarySearch(columnIds, columnId);
+        return (i >= 0) ? i : -1;
+    }
+
+    /**
+     * @return the current row indexes, ascending; not a copy, must not be modified
+     */
+    public int[] getRows() {
+        return rows.get();
+    }
+
+    /**
+     * @param column position of the column
+     * @return the value of the cell, or null or noSuchInstance if it has none
+     */
+    public Variable getValue(int column, int row) {
+        return columnValues.get(column).apply(row);
+    }
+
+    // Managed object, for requests answered through the server rather than the OID index
+
+    @Override
+    public MOScope getScope() {
+        return scope;
+    }
+
+    @Override
+    public OID find(MOScope range) {
+        int[] current = getRows();
+        for (int column : columnIds) {
+            for (int row : current) {
+                OID cell = new OID(entryOid).append(column).append(row);
+                if (range.covers(cell)) {
+                    return cell;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void get(SubRequest<?> request) {
+        VariableBinding vb = request.getVariableBinding();
+        Variable value = valueOf(vb.getOid());
+        vb.setVariable((value != null) ? value : Null.noSuchInstance);
+        request.completed();
+    }
+
+    @Override
+    public boolean next(SubRequest<?> request) {
+        OID next = find(request.getScope());
+        if (next == null) {
+            return false;
+        }
+        Variable value = valueOf(next);
+        VariableBinding vb = request.getVariableBinding();
+        vb.setOid(next);
+        vb.setVariable((value != null) ? value : Null.noSuchInstance);
+        request.completed();
+        return true;
+    }
+
+    private Variable valueOf(OID oid) {
+        int length = entryOid.size();
+        if (oid.size() != length + 2 || !oid.startsWith(entryOid)) {
+            return null;
+        }
+        int column = indexOfColumn(oid.get(length));
+        if (column < 0 || Arrays.binarySearch(getRows(), oid.get(length + 1)) < 0) {
+            return null;
+        }
+        return getValue(column, oid.get(length + 1));
+    }
+
+    @Override
+    public void prepare(SubRequest<?> request) {
+        request.getStatus().setErrorStatus(PDU.notWritable);
+    }
+
+    @Override
+    public void commit(SubRequest<?> request) {
+        request.getStatus().setPhaseComplete(true);
+    }
+
+    @Override
+    public void undo(SubRequest<?> request) {
+        request.getStatus().setPhaseComplete(true);
+    }
+
+    @Override
+    public void cleanup(SubRequest<?> request) {
+        request.getStatus().setPhaseComplete(true);
+    }
+}
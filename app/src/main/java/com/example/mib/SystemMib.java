@@ -9,9 +9,6 @@ import org.snmp4j.agent.*;
 import org.snmp4j.agent.mo.*;
 import org.snmp4j.smi.*;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-
 /**
  * Standard SNMP System MIB implementation for Android devices
  * Implements the standard system MIB entries that SolarWinds and other SNMP managers expect
@@ -31,6 +28,7 @@ public class SystemMib implements MOGroup {
     private static final OID ANDROID_SNMP_AGENT_OID = new OID("1.3.6.1.4.1.5380.1.16.0.1");
     
     private Context context;
+    private final ProcFile uptimeFile = new ProcFile("/proc/uptime", 128);
     
     // System MIB Managed Objects
     private MOScalar<OctetString> sysDescr;
@@ -203,20 +201,12 @@ public class SystemMib implements MOGroup {
     
     private long getSystemUptime() {
         try {
-            // Read uptime from /proc/uptime and convert to hundredths of seconds (TimeTicks)
-            BufferedReader reader = new BufferedReader(new FileReader("/proc/uptime"));
-            String line = reader.readLine();
-            reader.close();
-            if (line != null) {
-                String[] tokens = line.split("\\s+");
-                double uptimeSeconds = Double.parseDouble(tokens[0]);
-                return (long) (uptimeSeconds * 100); // Convert to hundredths of seconds
-            }
+            // Read uptime from /proc/uptime in hundredths of seconds (TimeTicks)
+            return uptimeFile.readFixed(2);
         } catch (Exception e) {
             // Fallback to system uptime
             return System.currentTimeMillis() / 10; // Rough approximation
         }
-        return 0;
     }
     
     private String getSystemContact() {
@@ -28,6 +28,7 @@ public class SystemMibSimple implements MOGroup {
     private static final OID ANDROID_SNMP_AGENT_OID = new OID("1.3.6.1.4.1.5380.1.16.0.1");
 
     private Context context;
+    private final AndroidDeviceMib device;
 
     // System MIB Managed Objects - using same pattern as AndroidDeviceMib
     private MOScalar sysDescr;
@@ -38,8 +39,12 @@ public class SystemMibSimple implements MOGroup {
     private MOScalar sysLocation;
     private MOScalar sysServices;
 
-    public SystemMibSimple(Context context) {
+    /**
+     * @param device the network and battery parts of sysDescr come from its metric groups
+     */
+    public SystemMibSimple(Context context, AndroidDeviceMib device) {
         this.context = context;
+        this.device = device;
         initializeSystemMOs();
     }
 
@@ -116,7 +121,8 @@ public class SystemMibSimple implements MOGroup {
             }
             
             // Network information
-            String networkInfo = getNetworkInfo();
+            // From the network group, so polling sysDescr keeps its connectivity callback running
+            String networkInfo = device.getNetwork().get().description;
             if (!networkInfo.isEmpty()) {
                 description.append(" - ").append(networkInfo);
             }
@@ -133,137 +139,12 @@ public class SystemMibSimple implements MOGroup {
         }
     }
     
-    private String getNetworkInfo() {
-        try {
-            android.net.ConnectivityManager connectivityManager = 
-                (android.net.ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-            
-            if (connectivityManager == null) {
-                return "";
-            }
-            
-            StringBuilder networkInfo = new StringBuilder();
-            
-            // Get active network info
-            android.net.NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
-            if (activeNetwork != null && activeNetwork.isConnected()) {
-                String networkType = activeNetwork.getTypeName();
-                
-                if ("WIFI".equalsIgnoreCase(networkType)) {
-                    // WiFi information
-                    try {
-                        android.net.wifi.WifiManager wifiManager = 
-                            (android.net.wifi.WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-                        
-                        if (wifiManager != null) {
-                            android.net.wifi.WifiInfo wifiInfo = wifiManager.getConnectionInfo();
-                            if (wifiInfo != null) {
-                                String ssid = wifiInfo.getSSID();
-                                
-                                if (ssid != null && !ssid.equals("<unknown ssid>") && !ssid.equals("\"<unknown ssid>\"")) {
-                                    ssid = ssid.replace("\"", ""); // Remove quotes
-                                    networkInfo.append("WiFi: ").append(ssid);
-                                    
-                                    int rssi = wifiInfo.getRssi();
-                                    int signalLevel = android.net.wifi.WifiManager.calculateSignalLevel(rssi, 5);
-                                    networkInfo.append(" (Signal: ").append(signalLevel).append("/4)");
-                                } else {
-                                    networkInfo.append("WiFi: Connected (SSID hidden)");
-                                }
-                            } else {
-                                networkInfo.append("WiFi: Connected (Info unavailable)");
-                            }
-                        } else {
-                            networkInfo.append("WiFi: Connected (Manager unavailable)");
-                        }
-                    } catch (SecurityException e) {
-                        networkInfo.append("WiFi: Connected (Permission denied)");
-                    } catch (Exception e) {
-                        networkInfo.append("WiFi: Connected (Error)");
-                    }
-                } else if ("MOBILE".equalsIgnoreCase(networkType)) {
-                    // Cellular information
-                    try {
-                        android.telephony.TelephonyManager telephonyManager = 
-                            (android.telephony.TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
-                        
-                        if (telephonyManager != null) {
-                            networkInfo.append("Cellular: ");
-                            
-                            // Network operator name
-                            String operatorName = telephonyManager.getNetworkOperatorName();
-                            if (operatorName != null && !operatorName.isEmpty()) {
-                                networkInfo.append(operatorName);
-                            } else {
-                                networkInfo.append("Mobile");
-                            }
-                            
-                            // Network type (LTE, 3G, etc.)
-                            try {
-                                if (Build.VERSION.SDK_INT >= 24) {
-                                    int dataNetworkType = telephonyManager.getDataNetworkType();
-                                    String networkTypeStr = getNetworkTypeString(dataNetworkType);
-                                    if (!networkTypeStr.isEmpty()) {
-                                        networkInfo.append(" (").append(networkTypeStr).append(")");
-                                    }
-                                }
-                            } catch (Exception e) {
-                                // Network type not available
-                            }
-                        } else {
-                            networkInfo.append("Cellular: Service unavailable");
-                        }
-                    } catch (SecurityException e) {
-                        networkInfo.append("Cellular: Permission denied");
-                    } catch (Exception e) {
-                        networkInfo.append("Cellular: Error");
-                    }
-                } else {
-                    networkInfo.append("Network: ").append(networkType);
-                }
-            } else {
-                return "";
-            }
-            
-            return networkInfo.toString();
-        } catch (Exception e) {
-            return "";
-        }
-    }
-    
-    private String getNetworkTypeString(int networkType) {
-        switch (networkType) {
-            case android.telephony.TelephonyManager.NETWORK_TYPE_LTE:
-                return "LTE";
-            case android.telephony.TelephonyManager.NETWORK_TYPE_HSPAP:
-            case android.telephony.TelephonyManager.NETWORK_TYPE_HSPA:
-            case android.telephony.TelephonyManager.NETWORK_TYPE_HSDPA:
-            case android.telephony.TelephonyManager.NETWORK_TYPE_HSUPA:
-                return "HSPA";
-            case android.telephony.TelephonyManager.NETWORK_TYPE_UMTS:
-                return "3G";
-            case android.telephony.TelephonyManager.NETWORK_TYPE_EDGE:
-            case android.telephony.TelephonyManager.NETWORK_TYPE_GPRS:
-                return "2G";
-            case 20: // NETWORK_TYPE_NR (5G) - API 29+
-                return "5G";
-            default:
-                return "";
-        }
-    }
-    
     private String getBatteryInfo() {
         try {
-            android.os.BatteryManager batteryManager = 
-                (android.os.BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
-            
-            if (batteryManager != null) {
-                int batteryLevel = batteryManager.getIntProperty(
-                    android.os.BatteryManager.BATTERY_PROPERTY_CAPACITY);
-                
-                if (batteryLevel > 0) {
-                    return "Battery: " + batteryLevel + "%";
-                }
+            // From the battery group, kept current by the battery-changed broadcast
+            int batteryLevel = device.getBattery().get().level;
+            if (batteryLevel > 0) {
+                return "Battery: " + batteryLevel + "%";
             }
             return "";
         } catch (Exception e) {
@@ -0,0 +1,159 @@
+package com.example.mib;
+
+import org.snmp4j.agent.*;
+import org.snmp4j.agent.mo.*;
+import org.snmp4j.smi.*;
+
+/**
+ * Thermal MIB (1.3.6.1.4.1.5380.1.16.11.x): the throttling flag, the framework's thermal
+ * status, and tables of the /sys/class/thermal zones and cooling devices, served from the
+ * thermal metric group of AndroidDeviceMib. Rows are indexed by zone or cooling device
+ * number + 1 and follow the zones the sampler discovers.
+ */
+public class ThermalMib implements MOGroup {
+
+    private static final String TAG = "ThermalMib";
+
+    // Base OID for thermal state: 1.3.6.1.4.1.5380.1.16.11
+    private static final OID THERMAL_OID = new OID(new int[]{1, 3, 6, 1, 4, 1, 5380, 1, 16, 11});
+
+    public static final OID THROTTLING = new OID(THERMAL_OID).append("1.0");
+    public static final OID THERMAL_STATUS = new OID(THERMAL_OID).append("2.0");
+    public static final OID HIGHEST_TEMPERATURE = new OID(THERMAL_OID).append("3.0");
+
+    // Thermal Zone Table (1.3.6.1.4.1.5380.1.16.11.10.1.<column>.<zone + 1>)
+    public static final OID ZONE_ENTRY = new OID(THERMAL_OID).append("10.1");
+    public static final int ZONE_INDEX = 1;
+    public static final int ZONE_TYPE = 2;
+    public static final int ZONE_TEMPERATURE = 3;
+    public static final int ZONE_PASSIVE_TRIP = 4;
+    public static final int ZONE_CRITICAL_TRIP = 5;
+    public static final int ZONE_THROTTLING = 6;
+
+    // Cooling Device Table (1.3.6.1.4.1.5380.1.16.11.11.1.<column>.<device + 1>)
+    public static final OID COOLING_ENTRY = new OID(THERMAL_OID).append("11.1");
+    public static final int COOLING_INDEX = 1;
+    public static final int COOLING_TYPE = 2;
+    public static final int COOLING_CUR_STATE = 3;
+    public static final int COOLING_MAX_STATE = 4;
+    public static final int COOLING_ACTIVE = 5;
+
+    private final MetricGroup<AndroidDeviceMib.ThermalSample> thermal;
+    private final MOScalar<Integer32> throttling;
+    private final MOScalar<Integer32> thermalStatus;
+    private final MOScalar<Integer32> highestTemperature;
+    private final MibTable zoneTable;
+    private final MibTable coolingTable;
+    private Runnable registrationListener;
+
+    public ThermalMib(AndroidDeviceMib device) {
+        this.thermal = device.getThermal();
+
+        throttling = new MOScalar<Integer32>(THROTTLING, MOAccessImpl.ACCESS_READ_ONLY, new Integer32(0)) {
+            @Override
+            public Integer32 getValue() {
+                return truthValue(thermal.get().throttling);
+            }
+        };
+
+        thermalStatus = new MOScalar<Integer32>(THERMAL_STATUS, MOAccessImpl.ACCESS_READ_ONLY, new Integer32(0)) {
+            @Override
+            public Integer32 getValue() {
+                return new Integer32(thermal.get().status);
+            }
+        };
+
+        highestTemperature = new MOScalar<Integer32>(HIGHEST_TEMPERATURE, MOAccessImpl.ACCESS_READ_ONLY,
+            new Integer32(0)) {
+            @Override
+            public Integer32 getValue() {
+                return new Integer32(thermal.get().zones.getHighestTemperature());
+            }
+        };
+
+        zoneTable = new MibTable(ZONE_ENTRY)
+            .addColumn(ZONE_INDEX, row -> new Integer32(row))
+            .addColumn(ZONE_TYPE, row -> zone(row, (t, i) -> new OctetString(t.getZoneType(i))))
+            .addColumn(ZONE_TEMPERATURE, row -> zone(row, (t, i) -> new Integer32(t.getTemperature(i))))
+            .addColumn(ZONE_PASSIVE_TRIP, row -> zone(row, (t, i) -> new Integer32(t.getPassiveTrip(i))))
+            .addColumn(ZONE_CRITICAL_TRIP, row -> zone(row, (t, i) -> new Integer32(t.getCriticalTrip(i))))
+            .addColumn(ZONE_THROTTLING, row -> zone(row, (t, i) -> truthValue(t.isZoneThrottling(i))));
+
+        coolingTable = new MibTable(COOLING_ENTRY)
+            .addColumn(COOLING_INDEX, row -> new Integer32(row))
+            .addColumn(COOLING_TYPE, row -> cooling(row, (t, i) -> new OctetString(t.getCoolingType(i))))
+            .addColumn(COOLING_CUR_STATE, row -> cooling(row, (t, i) -> new Integer32(t.getCurState(i))))
+            .addColumn(COOLING_MAX_STATE, row -> cooling(row, (t, i) -> new Integer32(t.getMaxState(i))))
+            .addColumn(COOLING_ACTIVE, row -> cooling(row, (t, i) -> truthValue(t.isCoolingActive(i))));
+
+        // Rows change only when the sampler rediscovers the zones
+        thermal.addListener(sample -> updateRows(sample.zones));
+    }
+
+    /**
+     * Called after rows were registered or unregistered, so the responder can rebuild its OID index.
+     */
+    public void setRegistrationListener(Runnable registrationListener) {
+        this.registrationListener = registrationListener;
+    }
+
+    private synchronized void updateRows(ThermalSampler.Thermal zones) {
+        boolean changed;
+        try {
+            changed = zoneTable.updateRows(zones.getZoneIndexes());
+            changed |= coolingTable.updateRows(zones.getCoolingIndexes());
+        } catch (DuplicateRegistrationException e) {
+            android.util.Log.w(TAG, "Cannot register thermal rows", e);
+            changed = true;
+        }
+        if (changed) {
+            android.util.Log.i(TAG, "Serving " + zones.getZoneCount() + " thermal zones and " +
+                zones.getCoolingDeviceCount() + " cooling devices");
+            if (registrationListener != null) {
+                registrationListener.run();
+            }
+        }
+    }
+
+    private interface ThermalValue {
+        Variable apply(ThermalSampler.Thermal sample, int i);
+    }
+
+    private Variable zone(int row, ThermalValue value) {
+        ThermalSampler.Thermal sample = thermal.get().zones;
+        int i = sample.indexOfZone(row);
+        // Gone after the request pinned its snapshot, or before the row was removed
+        return (i >= 0) ? value.apply(sample, i) : Null.noSuchInstance;
+    }
+
+    private Variable cooling(int row, ThermalValue value) {
+        ThermalSampler.Thermal sample = thermal.get().zones;
+        int i = sample.indexOfCoolingDevice(row);
+        return (i >= 0) ? value.apply(sample, i) : Null.noSuchInstance;
+    }
+
+    /**
+     * @return 1 for true, 2 for false, like the core table's online column
+     */
+    private static Integer32 truthValue(boolean value) {
+        return new Integer32(value ? 1 : 2);
+    }
+
+    @Override
+    public void registerMOs(MOServer server, OctetString context) throws DuplicateRegistrationException {
+        server.register(throttling, context);
+        server.register(thermalStatus, context);
+        server.register(highestTemperature, context);
+        zoneTable.registerMOs(server, context);
+        coolingTable.registerMOs(server, context);
+    }
+
+    @Override
+    public void unregisterMOs(MOServer server, OctetString context) {
+        server.unregister(throttling, context);
+        server.unregister(thermalStatus, context);
+        server.unregister(highestTemperature, context);
+        zoneTable.unregisterMOs(server, context);
+        coolingTable.unregisterMOs(server, context);
+    }
+}
@@ -0,0 +1,395 @@
+package com.example.mib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thermal zones and cooling devices from /sys/class/thermal.
+ *
+ * The zones and cooling devices, with their type, trip points and maximum state, are
+ * discovered on the first sample and again only when the set changes: a known one
+ * disappeared, or the next number after the last known one appeared. Other samples only
+ * re-read each zone's temperature and each cooling device's state through descriptors kept
+ * open.
+ *
+ * A zone throttles at or above its lowest passive trip point; a cooling device is mitigating
+ * while its state is above 0.
+ */
+public class ThermalSampler {
+
+    private static final String TAG = "ThermalSampler";
+
+    private static final String THERMAL = "/sys/class/thermal";
+    private static final String ZONE = "thermal_zone";
+    private static final String COOLING_DEVICE = "cooling_device";
+    private static final int MAX_TRIP_POINTS = 32;
+    private static final byte[] MINUS = {'-'};
+
+    private final File thermal = new File(THERMAL);
+    private List<Zone> zones = Collections.emptyList();
+    private List<CoolingDevice> coolingDevices = Collections.emptyList();
+    private boolean discovered;
+
+    private static final class Zone {
+        final int number;
+        final File dir;
+        final String type;
+        final ProcFile temp;
+        // Millidegrees Celsius, -1 without such a trip point
+        final int passiveTrip;
+        final int criticalTrip;
+
+        Zone(int number, File dir, String type, int passiveTrip, int criticalTrip) {
+            this.number = number;
+            this.dir = dir;
+            this.type = type;
+            this.temp = new ProcFile(dir.getPath() + "/temp", 32);
+            this.passiveTrip = passiveTrip;
+            this.criticalTrip = criticalTrip;
+        }
+    }
+
+    private static final class CoolingDevice {
+        final int number;
+        final File dir;
+        final String type;
+        final ProcFile curState;
+        final int maxState;
+
+        CoolingDevice(int number, File dir, String type, int maxState) {
+            this.number = number;
+            this.dir = dir;
+            this.type = type;
+            this.curState = new ProcFile(dir.getPath() + "/cur_state", 32);
+            this.maxState = maxState;
+        }
+    }
+
+    /**
+     * One sample of all zones and cooling devices, each by number + 1 (thermal_zone0 is 1).
+     */
+    public static final class Thermal {
+        public static final Thermal EMPTY = new Thermal(new int[0], new String[0], new int[0], new int[0],
+            new int[0], new int[0], new String[0], new int[0], new int[0]);
+
+        private final int[] zoneIndexes;
+        private final String[] zoneTypes;
+        private final int[] temperatures;
+        private final int[] passiveTrips;
+        private final int[] criticalTrips;
+        private final int[] coolingIndexes;
+        private final String[] coolingTypes;
+        private final int[] curStates;
+        private final int[] maxStates;
+        private final boolean throttling;
+        private final int highestTemperature;
+
+        private Thermal(int[] zoneIndexes, String[] zoneTypes, int[] temperatures, int[] passiveTrips,
+                        int[] criticalTrips, int[] coolingIndexes, String[] coolingTypes, int[] curStates,
+                        int[] maxStates) {
+            this.zoneIndexes = zoneIndexes;
+            this.zoneTypes = zoneTypes;
+            this.temperatures = temperatures;
+            this.passiveTrips = passiveTrips;
+            this.criticalTrips = criticalTrips;
+            this.coolingIndexes = coolingIndexes;
+            this.coolingTypes = coolingTypes;
+            this.curStates = curStates;
+            this.maxStates = maxStates;
+            // Derived once for the snapshot
+            boolean anyThrottling = false;
+            int highest = Integer.MIN_VALUE;
+            for (int i = 0; i < zoneIndexes.length; i++) {
+                anyThrottling |= isZoneThrottling(i);
+                if (temperatures[i] != -1) {
+                    highest = Math.max(highest, temperatures[i]);
+                }
+            }
+            for (int i = 0; i < coolingIndexes.length; i++) {
+                anyThrottling |= isCoolingActive(i);
+            }
+            this.throttling = anyThrottling;
+            this.highestTemperature = (highest != Integer.MIN_VALUE) ? highest : -1;
+        }
+
+        public int getZoneCount() {
+            return zoneIndexes.length;
+        }
+
+        public int[] getZoneIndexes() {
+            return zoneIndexes.clone();
+        }
+
+        /**
+         * @return the position of the zone in this sample, or -1 if it is gone
+         */
+        public int indexOfZone(int index) {
+            return indexOf(zoneIndexes, index);
+        }
+
+        // By position from indexOfZone()
+
+        public String getZoneType(int i) {
+            return zoneTypes[i];
+        }
+
+        /**
+         * @return millidegrees Celsius, or -1 if the zone cannot be read
+         */
+        public int getTemperature(int i) {
+            return temperatures[i];
+        }
+
+        public int getPassiveTrip(int i) {
+            return passiveTrips[i];
+        }
+
+        public int getCriticalTrip(int i) {
+            return criticalTrips[i];
+        }
+
+        public boolean isZoneThrottling(int i) {
+            return passiveTrips[i] >= 0 && temperatures[i] >= passiveTrips[i];
+        }
+
+        public int getCoolingDeviceCount() {
+            return coolingIndexes.length;
+        }
+
+        public int[] getCoolingIndexes() {
+            return coolingIndexes.clone();
+        }
+
+        /**
+         * @return the position of the cooling device in this sample, or -1 if it is gone
+         */
+        public int indexOfCoolingDevice(int index) {
+            return indexOf(coolingIndexes, index);
+        }
+
+        // By position from indexOfCoolingDevice()
+
+        public String getCoolingType(int i) {
+            return coolingTypes[i];
+        }
+
+        /**
+         * @return the mitigation state, 0 for none, or -1 if it cannot be read
+         */
+        public int getCurState(int i) {
+            return curStates[i];
+        }
+
+        public int getMaxState(int i) {
+            return maxStates[i];
+        }
+
+        public boolean isCoolingActive(int i) {
+            return curStates[i] > 0;
+        }
+
+        /**
+         * @return true if a zone is at or above its passive trip point or a cooling device is mitigating
+         */
+        public boolean isThrottling() {
+            return throttling;
+        }
+
+        /**
+         * @return millidegrees Celsius of the hottest readable zone, or -1 if none
+         */
+        public int getHighestTemperature() {
+            return highestTemperature;
+        }
+
+        private static int indexOf(int[] sorted, int index) {
+            int i = Arrays.binarySearch(sorted, index);
+            return (i >= 0) ? i : -1;
+        }
+    }
+
+    public synchronized Thermal sample() {
+        if (!discovered || changed()) {
+            discover();
+        }
+        int zoneCount = zones.size();
+        int[] zoneIndexes = new int[zoneCount];
+        String[] zoneTypes = new String[zoneCount];
+        int[] temperatures = new int[zoneCount];
+        int[] passiveTrips = new int[zoneCount];
+        int[] criticalTrips = new int[zoneCount];
+        for (int i = 0; i < zoneCount; i++) {
+            Zone zone = zones.get(i);
+            zoneIndexes[i] = zone.number + 1;
+            zoneTypes[i] = zone.type;
+            temperatures[i] = readTemperature(zone);
+            passiveTrips[i] = zone.passiveTrip;
+            criticalTrips[i] = zone.criticalTrip;
+        }
+        int coolingCount = coolingDevices.size();
+        int[] coolingIndexes = new int[coolingCount];
+        String[] coolingTypes = new String[coolingCount];
+        int[] curStates = new int[coolingCount];
+        int[] maxStates = new int[coolingCount];
+        for (int i = 0; i < coolingCount; i++) {
+            CoolingDevice device = coolingDevices.get(i);
+            coolingIndexes[i] = device.number + 1;
+            coolingTypes[i] = device.type;
+            curStates[i] = readCurState(device);
+            maxStates[i] = device.maxState;
+        }
+        return new Thermal(zoneIndexes, zoneTypes, temperatures, passiveTrips, criticalTrips, coolingIndexes,
+            coolingTypes, curStates, maxStates);
+    }
+
+    /**
+     * Release the kept-open descriptors; the next sample reopens them.
+     */
+    public synchronized void close() {
+        for (Zone zone : zones) {
+            zone.temp.close();
+        }
+        for (CoolingDevice device : coolingDevices) {
+            device.curState.close();
+        }
+    }
+
+    /**
+     * @return true if the next zone or cooling device number after the known ones exists
+     */
+    private boolean changed() {
+        int nextZone = zones.isEmpty() ? 0 : zones.get(zones.size() - 1).number + 1;
+        int nextCooling = coolingDevices.isEmpty() ? 0 : coolingDevices.get(coolingDevices.size() - 1).number + 1;
+        return new File(thermal, ZONE + nextZone).exists() || new File(thermal, COOLING_DEVICE + nextCooling).exists();
+    }
+
+    private void discover() {
+        close();
+        List<Zone> foundZones = new ArrayList<>();
+        List<CoolingDevice> foundDevices = new ArrayList<>();
+        String[] entries = thermal.list();
+        if (entries != null) {
+            for (String entry : entries) {
+                File dir = new File(thermal, entry);
+                int number;
+                if ((number = numberOf(entry, ZONE)) >= 0) {
+                    foundZones.add(discoverZone(number, dir));
+                } else if ((number = numberOf(entry, COOLING_DEVICE)) >= 0) {
+                    foundDevices.add(new CoolingDevice(number, dir, readString(new File(dir, "type")),
+                        (int) readOnce(new File(dir, "max_state"))));
+                }
+            }
+        }
+        Collections.sort(foundZones, (a, b) -> Integer.compare(a.number, b.number));
+        Collections.sort(foundDevices, (a, b) -> Integer.compare(a.number, b.number));
+        zones = foundZones;
+        coolingDevices = foundDevices;
+        discovered = true;
+        android.util.Log.i(TAG, "Found " + zones.size() + " thermal zones and " + coolingDevices.size() +
+            " cooling devices");
+    }
+
+    private static Zone discoverZone(int number, File dir) {
+        int passive = -1;
+        int critical = -1;
+        for (int trip = 0; trip < MAX_TRIP_POINTS; trip++) {
+            File typeFile = new File(dir, "trip_point_" + trip + "_type");
+            if (!typeFile.exists()) {
+                break;
+            }
+            String type = readString(typeFile);
+            long temp = readOnce(new File(dir, "trip_point_" + trip + "_temp"));
+            if (temp < 0) {
+                continue;
+            }
+            // The lowest trip point of each kind applies first
+            if ("passive".equals(type) && (passive < 0 || temp < passive)) {
+                passive = (int) temp;
+            } else if ("critical".equals(type) && (critical < 0 || temp < critical)) {
+                critical = (int) temp;
+            }
+        }
+        return new Zone(number, dir, readString(new File(dir, "type")), passive, critical);
+    }
+
+    private int readTemperature(Zone zone) {
+        ProcFile temp = zone.temp;
+        try {
+            temp.read();
+            boolean negative = temp.startsWith(MINUS);
+            if (negative) {
+                temp.skip(1);
+            }
+            long value = temp.nextLong();
+            if (value < 0) {
+                throw new IOException("No number in " + temp.getPath());
+            }
+            return (int) (negative ? -value : value);
+        } catch (IOException e) {
+            temp.close();
+            // Disabled zones fail to read; a zone that is gone means the set changed
+            if (!zone.dir.exists()) {
+                discovered = false;
+            }
+            return -1;
+        }
+    }
+
+    private int readCurState(CoolingDevice device) {
+        try {
+            return (int) device.curState.readLong();
+        } catch (IOException e) {
+            device.curState.close();
+            if (!device.dir.exists()) {
+                discovered = false;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * @return the number of "prefixN", or -1 if the name is something else
+     */
+    private static int numberOf(String name, String prefix) {
+        if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = prefix.length(); i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    private static String readString(File file) {
+        ProcFile procFile = new ProcFile(file.getPath(), 64);
+        try {
+            procFile.read();
+            String value = procFile.nextString('\n');
+            return (value != null) ? value.trim() : "UNKNOWN";
+        } catch (IOException e) {
+            return "UNKNOWN";
+        } finally {
+            procFile.close();
+        }
+    }
+
+    private static long readOnce(File file) {
+        ProcFile procFile = new ProcFile(file.getPath(), 32);
+        try {
+            return procFile.readLong();
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            procFile.close();
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.example.snmpagent;
+
+import com.example.mib.CollectionContext;
+
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageException;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.agent.MOServer;
+import org.snmp4j.asn1.BER;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.SMIConstants;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Direct SNMP responder that answers GET, GETNEXT and GETBULK requests from the MOs
+ * registered with the MO server, bypassing AgentConfigManager's command processor.
+ * Requests are answered on the dispatcher's worker threads, not the transport's listen thread.
+ */
+public class AgentCommandResponder implements CommandResponder {
+
+    private static final String TAG = "AgentCommandResponder";
+
+    private final MOServer server;
+    private final OctetString context;
+    private final RequestDispatcher dispatcher;
+    private volatile OidIndex oidIndex = OidIndex.EMPTY;
+    private final WalkCursorCache walkCursors = new WalkCursorCache();
+    private final ResponseCache<PDU> responseCache;
+    private final List<Runnable> rebuildListeners = new CopyOnWriteArrayList<>();
+    private final long collectionDeadlineMillis;
+
+    /**
+     * @param dispatcher worker pool for request handling, or null to answer on the listen thread
+     * @param responseCacheMillis how long identical requests share a response, 0 to disable
+     * @param collectionDeadlineMillis how long a request waits for a metric group's first
+     *                                 collection before answering with its unavailable value
+     */
+    public AgentCommandResponder(MOServer server, OctetString context, RequestDispatcher dispatcher,
+                                 long responseCacheMillis, long collectionDeadlineMillis) {
+        this.server = server;
+        this.context = context;
+        this.dispatcher = dispatcher;
+        this.responseCache = new ResponseCache<>(responseCacheMillis);
+        this.collectionDeadlineMillis = collectionDeadlineMillis;
+    }
+
+    /**
+     * Rebuild the GETNEXT index from the server's current registrations.
+     * Must be called whenever MOs are registered or unregistered.
+     */
+    public void rebuildIndex() {
+        oidIndex = OidIndex.build(server, context);
+        // Cursors into the old index are ignored anyway; drop them instead of waiting for expiry
+        walkCursors.clear();
+        responseCache.clear();
+        for (Runnable listener : rebuildListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Run after every index rebuild, e.g. to drop responses cached from the old index.
+     */
+    public void addRebuildListener(Runnable listener) {
+        rebuildListeners.add(listener);
+    }
+
+    public OidIndex getOidIndex() {
+        return oidIndex;
+    }
+
+    public WalkCursorCache getWalkCursors() {
+        return walkCursors;
+    }
+
+    public ResponseCache<PDU> getResponseCache() {
+        return responseCache;
+    }
+
+    public long getCollectionDeadlineMillis() {
+        return collectionDeadlineMillis;
+    }
+
+    @Override
+    public <A extends Address> void processPdu(final CommandResponderEvent<A> event) {
+        // Claim the event here; the response is sent later from a worker thread
+        event.setProcessed(true);
+        if (dispatcher == null) {
+            respond(event);
+            return;
+        }
+        dispatcher.dispatch(RequestDispatcher.classify(event.getPDU()),
+            () -> respond(event), () -> sendErrorResponse(event, PDU.genErr));
+    }
+
+    @SuppressWarnings("try")
+    private <A extends Address> void respond(CommandResponderEvent<A> event) {
+        // Request and response are only formatted when debug logging is enabled for the tag
+        boolean debug = android.util.Log.isLoggable(TAG, android.util.Log.DEBUG);
+        if (debug) {
+            android.util.Log.d(TAG, "Request from " + event.getPeerAddress() + ": " + event.getPDU());
+        }
+
+        // All varbinds of the request share one read of each data source
+        try (CollectionContext ignored = CollectionContext.open(collectionDeadlineMillis)) {
+            PDU requestPDU = event.getPDU();
+            PDU responsePDU = newResponsePdu(requestPDU);
+            OidIndex index = oidIndex;
+
+            int pduType = requestPDU.getType();
+
+            int maxSize = event.getMaxSizeResponsePDU();
+            boolean v1 = event.getMessageProcessingModel() == MessageProcessingModel.MPv1;
+            ResponseCache.Key cacheKey = responseCache.isEnabled() ?
+                cacheKey(event.getMessageProcessingModel(), requestPDU, maxSize) : null;
+            PDU cached = (cacheKey != null) ? responseCache.get(cacheKey) : null;
+            if (cached != null) {
+                // Same request within the cache window: reuse the varbinds, keep this request's ID
+                for (int i = 0; i < cached.size(); i++) {
+                    responsePDU.add(cached.get(i));
+                }
+                responsePDU.setErrorStatus(cached.getErrorStatus());
+                responsePDU.setErrorIndex(cached.getErrorIndex());
+                sendResponse(event, responsePDU);
+                return;
+            }
+
+            WalkCursorCache.Source source = (pduType == PDU.GET) ? null :
+                new WalkCursorCache.Source(event.getPeerAddress(), new OctetString(event.getSecurityName()));
+            boolean fits;
+            if (pduType == PDU.GETBULK) {
+                fits = processGetBulk(requestPDU, responsePDU, v1, maxSize, source);
+            } else {
+                fits = processGetOrGetNext(requestPDU, responsePDU, pduType == PDU.GETNEXT, v1, maxSize, source);
+            }
+
+            if (!fits) {
+                android.util.Log.w(TAG, "Response exceeds " + maxSize + " bytes, returning tooBig");
+                clearVariableBindings(responsePDU);
+                responsePDU.setErrorStatus(PDU.tooBig);
+                responsePDU.setErrorIndex(0);
+            } else if (v1) {
+                convertExceptionsToV1(requestPDU, responsePDU);
+            }
+
+            sendResponse(event, responsePDU);
+            // Only a response that could be sent; not if the index was rebuilt meanwhile and the cache cleared
+            if (cacheKey != null && index == oidIndex) {
+                responseCache.put(cacheKey, responsePDU);
+            }
+            if (debug) {
+                android.util.Log.d(TAG, "Response: " + responsePDU);
+            }
+
+        } catch (Exception e) {
+            android.util.Log.e(TAG, "Error processing SNMP request", e);
+        }
+    }
+
+    /**
+     * Answer a request with an error status without evaluating any of its varbinds.
+     */
+    private <A extends Address> void sendErrorResponse(CommandResponderEvent<A> event, int errorStatus) {
+        try {
+            PDU requestPDU = event.getPDU();
+            PDU responsePDU = newResponsePdu(requestPDU);
+            for (int i = 0; i < requestPDU.size(); i++) {
+                responsePDU.add(requestPDU.get(i));
+            }
+            responsePDU.setErrorStatus(errorStatus);
+            responsePDU.setErrorIndex(0);
+            sendResponse(event, responsePDU);
+        } catch (Exception e) {
+            android.util.Log.e(TAG, "Error sending error response", e);
+        }
+    }
+
+    private static PDU newResponsePdu(PDU requestPDU) {
+        // MPv1 only encodes PDUv1 responses correctly
+        PDU responsePDU = (requestPDU instanceof PDUv1) ? new PDUv1() : new PDU();
+        responsePDU.setType(PDU.RESPONSE);
+        responsePDU.setRequestID(requestPDU.getRequestID());
+        return responsePDU;
+    }
+
+    private static <A extends Address> void sendResponse(CommandResponderEvent<A> event, PDU responsePDU)
+        throws MessageException {
+        event.getMessageDispatcher().returnResponsePdu(
+            event.getMessageProcessingModel(),
+            event.getSecurityModel(),
+            event.getSecurityName(),
+            event.getSecurityLevel(),
+            responsePDU,
+            event.getMaxSizeResponsePDU(),
+            event.getStateReference(),
+            new StatusInformation());
+    }
+
+    /**
+     * GET and GETNEXT must answer every varbind or none, so a response that would
+     * not fit into maxSize is reported to the caller instead of being truncated.
+     */
+    private boolean processGetOrGetNext(PDU requestPDU, PDU responsePDU, boolean getNext, boolean v1, int maxSize,
+                                        WalkCursorCache.Source source) {
+        int varbindBytes = 0;
+        for (int i = 0; i < requestPDU.size(); i++) {
+            OID oid = requestPDU.get(i).getOid();
+            VariableBinding vb = getNext ? getNextBinding(oid, source, v1) : getBinding(oid);
+            varbindBytes += vb.getBERLength();
+            if (encodedPduLength(responsePDU, varbindBytes) > maxSize) {
+                return false;
+            }
+            responsePDU.add(vb);
+        }
+        return true;
+    }
+
+    /**
+     * GETBULK per RFC 3416 4.2.3: the first N (non-repeaters) varbinds are answered like a
+     * GETNEXT, the remaining R are walked up to M (max-repetitions) times each. The response
+     * is filled until the next varbind would exceed maxSize and trailing varbinds are dropped.
+     */
+    private boolean processGetBulk(PDU requestPDU, PDU responsePDU, boolean v1, int maxSize,
+                                   WalkCursorCache.Source source) {
+        int requested = requestPDU.size();
+        int nonRepeaters = Math.min(Math.max(requestPDU.getNonRepeaters(), 0), requested);
+        int maxRepetitions = Math.max(requestPDU.getMaxRepetitions(), 0);
+        int repeaters = requested - nonRepeaters;
+
+        int varbindBytes = 0;
+        for (int i = 0; i < nonRepeaters; i++) {
+            VariableBinding vb = getNextBinding(requestPDU.get(i).getOid(), source, v1);
+            varbindBytes += vb.getBERLength();
+            if (encodedPduLength(responsePDU, varbindBytes) > maxSize) {
+                return responsePDU.size() > 0;
+            }
+            responsePDU.add(vb);
+        }
+
+        if (repeaters == 0) {
+            return true;
+        }
+
+        // Each repeater column continues from the index position returned in the previous repetition
+        OidIndex index = oidIndex;
+        OID[] lastOids = new OID[repeaters];
+        long[] next = new long[repeaters];
+        for (int r = 0; r < repeaters; r++) {
+            lastOids[r] = requestPDU.get(nonRepeaters + r).getOid();
+            next[r] = walkCursors.successorPosition(source, index, lastOids[r].getValue(), lastOids[r].size());
+        }
+
+        long lastPosition = -1;
+
+        for (int rep = 0; rep < maxRepetitions; rep++) {
+            boolean allAtEnd = true;
+            for (int r = 0; r < repeaters; r++) {
+                long position = next[r];
+                Variable value = null;
+                while (position >= 0 && isMissing(value = index.valueAt(position), v1)) {
+                    position = index.nextPosition(position);
+                }
+                VariableBinding vb;
+                if (position < 0) {
+                    next[r] = -1;
+                    vb = new VariableBinding(lastOids[r], Null.endOfMibView);
+                } else {
+                    lastOids[r] = index.oidAt(position);
+                    vb = new VariableBinding(lastOids[r], value);
+                    next[r] = index.nextPosition(position);
+                    allAtEnd = false;
+                }
+
+                varbindBytes += vb.getBERLength();
+                if (encodedPduLength(responsePDU, varbindBytes) > maxSize) {
+                    walkCursors.update(source, index, lastPosition);
+                    return responsePDU.size() > 0;
+                }
+                responsePDU.add(vb);
+                if (position >= 0) {
+                    lastPosition = position;
+                }
+            }
+            if (allAtEnd) {
+                // Every column has run off the end of the MIB; further repetitions add nothing
+                break;
+            }
+        }
+        // A bulk walk continues from the last OID of this response
+        walkCursors.update(source, index, lastPosition);
+        return true;
+    }
+
+    private VariableBinding getBinding(OID oid) {
+        OidIndex index = oidIndex;
+        long position = index.indexOf(oid.getValue(), oid.size());
+        if (position >= 0) {
+            return new VariableBinding(oid, valueOrNoSuchInstance(index.valueAt(position)));
+        }
+        return new VariableBinding(oid,
+            index.isUnderKnownObject(oid) ? Null.noSuchInstance : Null.noSuchObject);
+    }
+
+    /**
+     * GETNEXT never answers with an exception value (RFC 3416 4.2.2): instances without a
+     * value, e.g. of a process that exited after the index was read, are skipped, and so
+     * are Counter64 instances for SNMPv1 (RFC 2576 4.4).
+     */
+    private VariableBinding getNextBinding(OID oid, WalkCursorCache.Source source, boolean v1) {
+        OidIndex index = oidIndex;
+        long position = walkCursors.successorPosition(source, index, oid.getValue(), oid.size());
+        Variable value = null;
+        while (position >= 0 && isMissing(value = index.valueAt(position), v1)) {
+            position = index.nextPosition(position);
+        }
+        if (position < 0) {
+            return new VariableBinding(oid, Null.endOfMibView);
+        }
+        walkCursors.update(source, index, position);
+        return new VariableBinding(index.oidAt(position), value);
+    }
+
+    private static Variable valueOrNoSuchInstance(Variable value) {
+        return (value != null) ? value : Null.noSuchInstance;
+    }
+
+    private static boolean isMissing(Variable value, boolean v1) {
+        return value == null || value.isException() || (v1 && isCounter64(value));
+    }
+
+    private static boolean isCounter64(Variable value) {
+        return value.getSyntax() == SMIConstants.SYNTAX_COUNTER64;
+    }
+
+    /**
+     * SNMPv1 has no exception values and no Counter64: the first varbind that would carry
+     * either turns the whole response into a noSuchName error that echoes the request's varbinds.
+     */
+    private static void convertExceptionsToV1(PDU requestPDU, PDU responsePDU) {
+        for (int i = 0; i < responsePDU.size(); i++) {
+            VariableBinding vb = responsePDU.get(i);
+            if (vb.isException() || isCounter64(vb.getVariable())) {
+                clearVariableBindings(responsePDU);
+                for (int j = 0; j < requestPDU.size(); j++) {
+                    responsePDU.add(requestPDU.get(j));
+                }
+                responsePDU.setErrorStatus(PDU.noSuchName);
+                responsePDU.setErrorIndex(i + 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Cache key for a request: everything that determines the response apart from the
+     * request ID and community, i.e. message model, PDU type, GETBULK parameters, size limit and OIDs.
+     */
+    private static ResponseCache.Key cacheKey(int messageProcessingModel, PDU requestPDU, int maxSize)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(messageProcessingModel);
+        out.write(requestPDU.getType());
+        writeInt(out, requestPDU.getType() == PDU.GETBULK ? requestPDU.getNonRepeaters() : 0);
+        writeInt(out, requestPDU.getType() == PDU.GETBULK ? requestPDU.getMaxRepetitions() : 0);
+        writeInt(out, maxSize);
+        for (int i = 0; i < requestPDU.size(); i++) {
+            requestPDU.get(i).getOid().encodeBER(out);
+        }
+        return new ResponseCache.Key(out.toByteArray());
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * PDU.clear() also resets the request ID, which would make the manager drop the response.
+     */
+    private static void clearVariableBindings(PDU responsePDU) {
+        Integer32 requestID = responsePDU.getRequestID();
+        responsePDU.clear();
+        responsePDU.setRequestID(requestID);
+    }
+
+    /**
+     * BER length of a response PDU carrying varbindBytes of encoded varbinds: the varbinds'
+     * SEQUENCE header plus request-id, error-status and error-index inside the PDU header.
+     * Tracked incrementally so budgeting does not re-encode the whole PDU per varbind.
+     */
+    private static int encodedPduLength(PDU responsePDU, int varbindBytes) {
+        int payload = responsePDU.getRequestID().getBERLength() + 3 + 3
+            + 1 + BER.getBERLengthOfLength(varbindBytes) + varbindBytes;
+        return 1 + BER.getBERLengthOfLength(payload) + payload;
+    }
+}
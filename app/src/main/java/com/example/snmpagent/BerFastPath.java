@@ -0,0 +1,705 @@
+package com.example.snmpagent;
+
+import com.example.mib.CollectionContext;
+
+import org.snmp4j.PDU;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.asn1.BER;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.SMIConstants;
+import org.snmp4j.smi.Variable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocation-light codec for community-based (v1/v2c) GET, GETNEXT and GETBULK requests.
+ * Requests are decoded in place from the datagram bytes, OIDs are looked up in the OidIndex
+ * by their raw sub-identifiers and answered with the index's pre-encoded OID bytes, and the
+ * varbinds are encoded into a per-thread reusable buffer. Only the final datagram is allocated,
+ * because the snmp4j transport sends whole arrays.
+ *
+ * Anything this codec does not handle (other PDU types, unknown communities, v1 error
+ * responses, tooBig, malformed input) is left to the regular snmp4j path.
+ */
+public class BerFastPath {
+
+    private static final String TAG = "BerFastPath";
+
+    private static final int MAX_SUBIDS = 128;
+
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_OCTET_STRING = 0x04;
+    private static final int TAG_OID = 0x06;
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_GET = 0xA0;
+    private static final int TAG_GETNEXT = 0xA1;
+    private static final int TAG_RESPONSE = 0xA2;
+    private static final int TAG_GETBULK = 0xA5;
+
+    private static final int VERSION_1 = 0;
+    private static final int VERSION_2C = 1;
+
+    private final AgentCommandResponder responder;
+    private final byte[][] communities;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private final ResponseCache<byte[]> responseCache;
+
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * @param responseCacheMillis how long identical requests share encoded varbinds, 0 to disable
+     * @param communities the community strings the fast path may answer; requests with any
+     *        other community go through snmp4j
+     */
+    public BerFastPath(AgentCommandResponder responder, long responseCacheMillis, String... communities) {
+        this.responder = responder;
+        this.responseCache = new ResponseCache<>(responseCacheMillis);
+        // Cached varbinds may carry OIDs that a rebuild removed
+        responder.addRebuildListener(responseCache::clear);
+        this.communities = new byte[communities.length][];
+        for (int i = 0; i < communities.length; i++) {
+            this.communities[i] = communities[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    public long getHandledCount() {
+        return handled.get();
+    }
+
+    public long getFallbackCount() {
+        return fallbacks.get();
+    }
+
+    public ResponseCache<byte[]> getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Cheap header check run on the listen thread: SNMPv1/v2c message with a known
+     * community carrying a GET, GETNEXT or GETBULK PDU.
+     */
+    public boolean isCandidate(byte[] message, int length) {
+        return scratch.get().parseHeader(message, length, communities);
+    }
+
+    /**
+     * Priority lane of a candidate request, from its PDU type, varbind count and first OID.
+     */
+    public RequestDispatcher.Lane classify(byte[] message, int length) {
+        Scratch s = scratch.get();
+        if (!s.parseHeader(message, length, communities)) {
+            return RequestDispatcher.Lane.GET;
+        }
+        if (s.pduTag != TAG_GET) {
+            return RequestDispatcher.Lane.WALK;
+        }
+        s.pos = s.varbindsStart;
+        if (s.pos >= s.varbindsEnd || !s.readVarbindOid()) {
+            return RequestDispatcher.Lane.GET;
+        }
+        // Only the first varbind is decoded; anything after it makes this a multi-varbind GET
+        int varbindCount = (s.pos < s.varbindsEnd) ? 2 : 1;
+        return RequestDispatcher.classify(PDU.GET, varbindCount, s.subids, s.subidCount);
+    }
+
+    /**
+     * Decode the request, evaluate its varbinds and send the response.
+     *
+     * @return false if the request must be processed by the snmp4j path instead; nothing has been sent
+     */
+    @SuppressWarnings("try")
+    public <A extends Address> boolean respond(byte[] message, int length,
+                                               TransportMapping<? super A> transport, A address,
+                                               TransportStateReference tmStateReference) {
+        Scratch s = scratch.get();
+        try (CollectionContext ignored = CollectionContext.open(responder.getCollectionDeadlineMillis())) {
+            if (!s.parseHeader(message, length, communities)) {
+                fallbacks.incrementAndGet();
+                return false;
+            }
+            OidIndex index = responder.getOidIndex();
+            // The response PDU budget snmp4j hands AgentCommandResponder for the same transport
+            int maxSize = transport.getMaxOutboundMessageSize() - MPv3.MAX_HEADER_LENGTH;
+            WalkCursorCache.Source source = (s.pduTag == TAG_GET) ? null :
+                new WalkCursorCache.Source(address, s.community());
+
+            ResponseCache.Key cacheKey = responseCache.isEnabled() ? s.cacheKey(maxSize) : null;
+            byte[] cached = (cacheKey != null) ? responseCache.get(cacheKey) : null;
+            if (cached != null) {
+                // Only the varbinds are cached; request ID and community come from this request
+                s.varbinds.write(cached, 0, cached.length);
+            } else {
+                boolean complete;
+                if (s.pduTag == TAG_GETBULK) {
+                    complete = (s.version == VERSION_2C) && encodeGetBulk(s, index, maxSize, source);
+                } else {
+                    complete = encodeGetOrGetNext(s, index, s.pduTag == TAG_GETNEXT, maxSize, source);
+                }
+                if (!complete) {
+                    fallbacks.incrementAndGet();
+                    return false;
+                }
+                if (cacheKey != null && index == responder.getOidIndex()) {
+                    responseCache.put(cacheKey, Arrays.copyOf(s.varbinds.buf, s.varbinds.count));
+                }
+            }
+
+            transport.sendMessage(address, s.buildMessage(), tmStateReference, 0, 0);
+            handled.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            android.util.Log.w(TAG, "Fast path failed, falling back to snmp4j", e);
+            fallbacks.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Answer a candidate request with an error status and its own varbinds, without evaluating
+     * any of them, e.g. genErr for a request shed on overload.
+     *
+     * @return false if the request could not be decoded; nothing has been sent
+     */
+    public <A extends Address> boolean respondError(byte[] message, int length,
+                                                    TransportMapping<? super A> transport, A address,
+                                                    TransportStateReference tmStateReference, int errorStatus) {
+        Scratch s = scratch.get();
+        try {
+            if (!s.parseHeader(message, length, communities)) {
+                return false;
+            }
+            s.varbinds.write(message, s.varbindsStart, s.varbindsEnd - s.varbindsStart);
+            s.errorStatus = errorStatus;
+            transport.sendMessage(address, s.buildMessage(), tmStateReference, 0, 0);
+            return true;
+        } catch (IOException e) {
+            android.util.Log.w(TAG, "Cannot send error response", e);
+            return false;
+        }
+    }
+
+    private boolean encodeGetOrGetNext(Scratch s, OidIndex index, boolean getNext, int maxSize,
+                                       WalkCursorCache.Source source) throws IOException {
+        WalkCursorCache walkCursors = responder.getWalkCursors();
+        s.pos = s.varbindsStart;
+        while (s.pos < s.varbindsEnd) {
+            if (!s.readVarbindOid()) {
+                return false;
+            }
+            Variable value;
+            long position;
+            if (getNext) {
+                position = walkCursors.successorPosition(source, index, s.subids, s.subidCount);
+                value = nextValue(s, index, position);
+                position = s.valuePosition;
+                walkCursors.update(source, index, position);
+            } else {
+                position = index.indexOf(s.subids, s.subidCount);
+                if (position >= 0) {
+                    value = valueAt(index, position);
+                } else {
+                    value = index.isUnderKnownObject(s.subids, s.subidCount) ?
+                        Null.noSuchInstance : Null.noSuchObject;
+                }
+            }
+            if (s.version == VERSION_1 &&
+                (value.isException() || value.getSyntax() == SMIConstants.SYNTAX_COUNTER64)) {
+                // v1 needs a noSuchName error echoing the request and has no Counter64, leave that to snmp4j
+                return false;
+            }
+
+            boolean fits = (position >= 0 && !value.isException()) ?
+                s.appendVarbind(index.encodedOidAt(position), 0, value, maxSize) :
+                s.appendVarbind(s.message, s.oidOffset, s.oidLength, value, maxSize);
+            if (!fits) {
+                // tooBig: snmp4j builds the error response
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * GETBULK with the same semantics and size budgeting as AgentCommandResponder: trailing
+     * varbinds that would exceed the maximum message size are dropped.
+     */
+    private boolean encodeGetBulk(Scratch s, OidIndex index, int maxSize, WalkCursorCache.Source source)
+        throws IOException {
+        WalkCursorCache walkCursors = responder.getWalkCursors();
+        int nonRepeaters = Math.max(s.nonRepeaters, 0);
+        int maxRepetitions = Math.max(s.maxRepetitions, 0);
+
+        s.pos = s.varbindsStart;
+        int columns = 0;
+        int varbind = 0;
+        while (s.pos < s.varbindsEnd) {
+            if (!s.readVarbindOid()) {
+                return false;
+            }
+            long position = walkCursors.successorPosition(source, index, s.subids, s.subidCount);
+            if (varbind < nonRepeaters) {
+                Variable value = nextValue(s, index, position);
+                position = s.valuePosition;
+                boolean fits = (position >= 0) ?
+                    s.appendVarbind(index.encodedOidAt(position), 0, value, maxSize) :
+                    s.appendVarbind(s.message, s.oidOffset, s.oidLength, value, maxSize);
+                if (!fits) {
+                    return s.varbindCount > 0;
+                }
+            } else {
+                s.addColumn(position);
+                columns++;
+            }
+            varbind++;
+        }
+
+        long lastPosition = -1;
+        for (int rep = 0; rep < maxRepetitions && columns > 0; rep++) {
+            boolean allAtEnd = true;
+            for (int c = 0; c < columns; c++) {
+                Variable value = nextValue(s, index, s.columnNext[c]);
+                long position = s.valuePosition;
+                boolean fits;
+                if (position < 0) {
+                    s.columnNext[c] = -1;
+                    // Column ran off the end of the MIB: repeat its last OID with endOfMibView
+                    long last = s.columnLast[c];
+                    fits = (last >= 0) ?
+                        s.appendVarbind(index.encodedOidAt(last), 0, Null.endOfMibView, maxSize) :
+                        s.appendVarbind(s.message, s.columnOidOffset[c], s.columnOidLength[c],
+                            Null.endOfMibView, maxSize);
+                } else {
+                    fits = s.appendVarbind(index.encodedOidAt(position), 0, value, maxSize);
+                    if (fits) {
+                        lastPosition = position;
+                    }
+                    s.columnLast[c] = position;
+                    s.columnNext[c] = index.nextPosition(position);
+                    allAtEnd = false;
+                }
+                if (!fits) {
+                    walkCursors.update(source, index, lastPosition);
+                    return s.varbindCount > 0;
+                }
+            }
+            if (allAtEnd) {
+                break;
+            }
+        }
+        walkCursors.update(source, index, lastPosition);
+        return true;
+    }
+
+    private Variable valueAt(OidIndex index, long position) {
+        Variable value = index.valueAt(position);
+        return (value != null) ? value : Null.noSuchInstance;
+    }
+
+    /**
+     * Value for a GETNEXT successor, which is never an exception (RFC 3416 4.2.2): instances
+     * without a value, e.g. of a process that exited after the index was read, are skipped.
+     * Leaves the position of the returned value in the scratch's valuePosition, -1 at the end of the MIB view.
+     */
+    private static Variable nextValue(Scratch s, OidIndex index, long position) {
+        while (position >= 0) {
+            Variable value = index.valueAt(position);
+            if (value != null && !value.isException()) {
+                s.valuePosition = position;
+                return value;
+            }
+            position = index.nextPosition(position);
+        }
+        s.valuePosition = -1;
+        return Null.endOfMibView;
+    }
+
+    private static int tlvLength(int contentLength) {
+        return 1 + BER.getBERLengthOfLength(contentLength) + contentLength;
+    }
+
+    /**
+     * Per-thread decoder state and encode buffer, reused across requests.
+     */
+    private static final class Scratch {
+        final int[] subids = new int[MAX_SUBIDS];
+        int subidCount;
+
+        byte[] message;
+        int end;
+        int pos;
+
+        int version;
+        int versionOffset;
+        int versionLength;
+        int communityOffset;
+        int communityLength;
+        int communityValueOffset;
+        int communityValueLength;
+        int pduTag;
+        int errorStatus;
+        int requestIdOffset;
+        int requestIdLength;
+        int nonRepeaters;
+        int maxRepetitions;
+        int varbindsStart;
+        int varbindsEnd;
+
+        // Raw OID TLV of the varbind last read by readVarbindOid()
+        int oidOffset;
+        int oidLength;
+
+        // Index position of the value last returned by nextValue()
+        long valuePosition;
+
+        final ByteSink varbinds = new ByteSink(1024);
+        final ByteSink key = new ByteSink(128);
+        int varbindCount;
+
+        long[] columnNext = new long[8];
+        long[] columnLast = new long[8];
+        int[] columnOidOffset = new int[8];
+        int[] columnOidLength = new int[8];
+        int columnCount;
+
+        boolean parseHeader(byte[] message, int length, byte[][] communities) {
+            this.message = message;
+            this.end = length;
+            this.pos = 0;
+            varbinds.reset();
+            varbindCount = 0;
+            columnCount = 0;
+            errorStatus = 0;
+
+            if (expect(TAG_SEQUENCE) < 0) {
+                return false;
+            }
+            versionOffset = pos;
+            int len = expect(TAG_INTEGER);
+            if (len != 1) {
+                return false;
+            }
+            version = message[pos++];
+            if (version != VERSION_1 && version != VERSION_2C) {
+                return false;
+            }
+            versionLength = pos - versionOffset;
+
+            communityOffset = pos;
+            len = expect(TAG_OCTET_STRING);
+            if (len < 0 || !isKnownCommunity(communities, pos, len)) {
+                return false;
+            }
+            communityValueOffset = pos;
+            communityValueLength = len;
+            pos += len;
+            communityLength = pos - communityOffset;
+
+            if (pos >= end) {
+                return false;
+            }
+            pduTag = message[pos] & 0xFF;
+            if (pduTag != TAG_GET && pduTag != TAG_GETNEXT && pduTag != TAG_GETBULK) {
+                return false;
+            }
+            if (expect(pduTag) < 0) {
+                return false;
+            }
+
+            requestIdOffset = pos;
+            len = expect(TAG_INTEGER);
+            if (len < 1 || len > 4) {
+                return false;
+            }
+            pos += len;
+            requestIdLength = pos - requestIdOffset;
+
+            // error-status/error-index, or non-repeaters/max-repetitions for GETBULK
+            nonRepeaters = readInteger();
+            maxRepetitions = readInteger();
+            if (nonRepeaters == Integer.MIN_VALUE || maxRepetitions == Integer.MIN_VALUE) {
+                return false;
+            }
+
+            len = expect(TAG_SEQUENCE);
+            if (len < 0) {
+                return false;
+            }
+            varbindsStart = pos;
+            varbindsEnd = pos + len;
+            return true;
+        }
+
+        /**
+         * Cache key in the same shape as the responder's: version, PDU type, GETBULK
+         * parameters, size limit and the raw OID encodings.
+         *
+         * @return the key, or null if the varbind list is malformed
+         */
+        ResponseCache.Key cacheKey(int maxSize) {
+            key.reset();
+            key.write(version);
+            key.write(pduTag);
+            writeInt(key, pduTag == TAG_GETBULK ? nonRepeaters : 0);
+            writeInt(key, pduTag == TAG_GETBULK ? maxRepetitions : 0);
+            writeInt(key, maxSize);
+            pos = varbindsStart;
+            while (pos < varbindsEnd) {
+                if (!readVarbindOid()) {
+                    return null;
+                }
+                key.write(message, oidOffset, oidLength);
+            }
+            return new ResponseCache.Key(Arrays.copyOf(key.buf, key.count));
+        }
+
+        private static void writeInt(ByteSink out, int value) {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+
+        OctetString community() {
+            return new OctetString(message, communityValueOffset, communityValueLength);
+        }
+
+        private boolean isKnownCommunity(byte[][] communities, int offset, int length) {
+            for (byte[] community : communities) {
+                if (community.length != length) {
+                    continue;
+                }
+                boolean equal = true;
+                for (int i = 0; i < length && equal; i++) {
+                    equal = (community[i] == message[offset + i]);
+                }
+                if (equal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Read a varbind's OID into subids and skip its value.
+         */
+        boolean readVarbindOid() {
+            int len = expect(TAG_SEQUENCE);
+            if (len < 0) {
+                return false;
+            }
+            int varbindEnd = pos + len;
+            oidOffset = pos;
+            len = expect(TAG_OID);
+            if (len < 1 || pos + len > varbindEnd || !decodeOid(len)) {
+                return false;
+            }
+            oidLength = pos - oidOffset;
+            pos = varbindEnd;
+            return true;
+        }
+
+        private boolean decodeOid(int length) {
+            int limit = pos + length;
+            subidCount = 0;
+            boolean first = true;
+            while (pos < limit) {
+                long value = 0;
+                int b;
+                int bytes = 0;
+                do {
+                    if (pos >= limit || ++bytes > 5) {
+                        return false;
+                    }
+                    b = message[pos++] & 0xFF;
+                    value = (value << 7) | (b & 0x7F);
+                } while ((b & 0x80) != 0);
+                if (value > 0xFFFFFFFFL || subidCount + (first ? 2 : 1) > MAX_SUBIDS) {
+                    return false;
+                }
+                if (first) {
+                    // The first encoded sub-identifier packs the first two arcs (X * 40 + Y)
+                    int arc = (value < 80) ? (int) (value / 40) : 2;
+                    subids[subidCount++] = arc;
+                    subids[subidCount++] = (int) (value - arc * 40L);
+                    first = false;
+                } else {
+                    subids[subidCount++] = (int) value;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the signed INTEGER value, or Integer.MIN_VALUE if it is malformed or too large
+         */
+        private int readInteger() {
+            int len = expect(TAG_INTEGER);
+            if (len < 1 || len > 4) {
+                return Integer.MIN_VALUE;
+            }
+            int value = message[pos++];
+            for (int i = 1; i < len; i++) {
+                value = (value << 8) | (message[pos++] & 0xFF);
+            }
+            return value;
+        }
+
+        /**
+         * Consume a tag and its definite length.
+         *
+         * @return the content length, or -1 if the tag does not match or the length is invalid
+         */
+        private int expect(int tag) {
+            if (pos >= end || (message[pos] & 0xFF) != tag) {
+                return -1;
+            }
+            pos++;
+            if (pos >= end) {
+                return -1;
+            }
+            int first = message[pos++] & 0xFF;
+            int length;
+            if ((first & 0x80) == 0) {
+                length = first;
+            } else {
+                int count = first & 0x7F;
+                if (count == 0 || count > 3 || pos + count > end) {
+                    return -1;
+                }
+                length = 0;
+                for (int i = 0; i < count; i++) {
+                    length = (length << 8) | (message[pos++] & 0xFF);
+                }
+            }
+            return (pos + length <= end) ? length : -1;
+        }
+
+        void addColumn(long successor) {
+            if (columnCount == columnNext.length) {
+                int size = columnCount * 2;
+                columnNext = Arrays.copyOf(columnNext, size);
+                columnLast = Arrays.copyOf(columnLast, size);
+                columnOidOffset = Arrays.copyOf(columnOidOffset, size);
+                columnOidLength = Arrays.copyOf(columnOidLength, size);
+            }
+            columnNext[columnCount] = successor;
+            columnLast[columnCount] = -1;
+            columnOidOffset[columnCount] = oidOffset;
+            columnOidLength[columnCount] = oidLength;
+            columnCount++;
+        }
+
+        boolean appendVarbind(byte[] encodedOid, int offset, Variable value, int maxSize) throws IOException {
+            return appendVarbind(encodedOid, offset, encodedOid.length - offset, value, maxSize);
+        }
+
+        /**
+         * Append one varbind unless the resulting PDU would exceed maxSize.
+         */
+        boolean appendVarbind(byte[] oidBytes, int offset, int length, Variable value, int maxSize)
+            throws IOException {
+            int content = length + value.getBERLength();
+            if (tlvLength(pduContentLength(varbinds.count + tlvLength(content))) > maxSize) {
+                return false;
+            }
+            varbinds.write(TAG_SEQUENCE);
+            BER.encodeLength(varbinds, content);
+            varbinds.write(oidBytes, offset, length);
+            value.encodeBER(varbinds);
+            varbindCount++;
+            return true;
+        }
+
+        private int pduContentLength(int varbindBytes) {
+            // request-id, error-status (below 128) and error-index (zero), varbind list
+            return requestIdLength + 3 + 3 + tlvLength(varbindBytes);
+        }
+
+        byte[] buildMessage() {
+            int pduContent = pduContentLength(varbinds.count);
+            int messageContent = versionLength + communityLength + tlvLength(pduContent);
+            byte[] out = new byte[tlvLength(messageContent)];
+
+            int o = 0;
+            out[o++] = (byte) TAG_SEQUENCE;
+            o = putLength(out, o, messageContent);
+            System.arraycopy(message, versionOffset, out, o, versionLength);
+            o += versionLength;
+            System.arraycopy(message, communityOffset, out, o, communityLength);
+            o += communityLength;
+            out[o++] = (byte) TAG_RESPONSE;
+            o = putLength(out, o, pduContent);
+            System.arraycopy(message, requestIdOffset, out, o, requestIdLength);
+            o += requestIdLength;
+            out[o++] = TAG_INTEGER;
+            out[o++] = 1;
+            out[o++] = (byte) errorStatus;
+            out[o++] = TAG_INTEGER;
+            out[o++] = 1;
+            out[o++] = 0;
+            out[o++] = TAG_SEQUENCE;
+            o = putLength(out, o, varbinds.count);
+            System.arraycopy(varbinds.buf, 0, out, o, varbinds.count);
+            return out;
+        }
+
+        private static int putLength(byte[] out, int o, int length) {
+            if (length < 0x80) {
+                out[o++] = (byte) length;
+                return o;
+            }
+            int bytes = BER.getBERLengthOfLength(length) - 1;
+            out[o++] = (byte) (0x80 | bytes);
+            for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+                out[o++] = (byte) (length >> shift);
+            }
+            return o;
+        }
+    }
+
+    /**
+     * Growable byte buffer that snmp4j's BER encoders can write into without
+     * allocating a new stream per request.
+     */
+    private static final class ByteSink extends OutputStream {
+        byte[] buf;
+        int count;
+
+        ByteSink(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (count + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+    }
+}
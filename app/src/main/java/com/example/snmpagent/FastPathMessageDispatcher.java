@@ -0,0 +1,127 @@
+package com.example.snmpagent;
+
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.smi.Address;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Message dispatcher that answers plain v1/v2c read requests through BerFastPath on the
+ * request workers and hands everything else (v3, SET, fallbacks) to the regular snmp4j path.
+ */
+public class FastPathMessageDispatcher extends MessageDispatcherImpl {
+
+    // Large enough for any datagram on a standard Ethernet MTU; bigger packets get a one-off array
+    private static final int POOLED_BUFFER_SIZE = 1500;
+    private static final int POOLED_BUFFERS = 32;
+
+    private final BerFastPath fastPath;
+    private final RequestDispatcher dispatcher;
+    private final ArrayBlockingQueue<byte[]> bufferPool = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+    /**
+     * @param dispatcher worker pool for fast path requests, or null to answer on the listen thread
+     */
+    public FastPathMessageDispatcher(BerFastPath fastPath, RequestDispatcher dispatcher) {
+        this.fastPath = fastPath;
+        this.dispatcher = dispatcher;
+    }
+
+    public BerFastPath getFastPath() {
+        return fastPath;
+    }
+
+    @Override
+    public <A extends Address> void processMessage(TransportMapping<? super A> sourceTransport,
+                                                   A incomingAddress, ByteBuffer wholeMessage,
+                                                   TransportStateReference tmStateReference) {
+        final int length = wholeMessage.remaining();
+        byte[] copied = null;
+        boolean candidate;
+        if (wholeMessage.hasArray() && wholeMessage.arrayOffset() + wholeMessage.position() == 0) {
+            // Checked in place, so requests for snmp4j are not copied
+            candidate = fastPath.isCandidate(wholeMessage.array(), length);
+        } else {
+            copied = acquireBuffer(length);
+            copy(wholeMessage, copied, length);
+            candidate = fastPath.isCandidate(copied, length);
+        }
+        if (!candidate) {
+            if (copied != null) {
+                releaseBuffer(copied);
+            }
+            super.processMessage(sourceTransport, incomingAddress, wholeMessage, tmStateReference);
+            return;
+        }
+        final byte[] packet;
+        if (copied != null) {
+            packet = copied;
+        } else {
+            packet = acquireBuffer(length);
+            copy(wholeMessage, packet, length);
+        }
+
+        // The packet copy is owned by the task until it is answered or handed to snmp4j, which
+        // answers on the same worker without queueing the request again
+        Runnable fallback = () -> {
+            try {
+                super.processMessage(sourceTransport, incomingAddress,
+                    ByteBuffer.wrap(packet, 0, length), tmStateReference);
+            } finally {
+                releaseBuffer(packet);
+            }
+        };
+        Runnable task = () -> {
+            if (fastPath.respond(packet, length, sourceTransport, incomingAddress, tmStateReference)) {
+                releaseBuffer(packet);
+            } else {
+                fallback.run();
+            }
+        };
+
+        if (dispatcher == null) {
+            task.run();
+        } else {
+            // Answered right here: handing a shed request to snmp4j would queue it a second time
+            Runnable genErrReply = () -> {
+                try {
+                    fastPath.respondError(packet, length, sourceTransport, incomingAddress, tmStateReference,
+                        PDU.genErr);
+                } finally {
+                    releaseBuffer(packet);
+                }
+            };
+            dispatcher.dispatch(fastPath.classify(packet, length), task, genErrReply);
+        }
+    }
+
+    private byte[] acquireBuffer(int length) {
+        if (length > POOLED_BUFFER_SIZE) {
+            return new byte[length];
+        }
+        byte[] buffer = bufferPool.poll();
+        return (buffer != null) ? buffer : new byte[POOLED_BUFFER_SIZE];
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        if (buffer.length == POOLED_BUFFER_SIZE) {
+            bufferPool.offer(buffer);
+        }
+    }
+
+    private static void copy(ByteBuffer source, byte[] target, int length) {
+        if (source.hasArray()) {
+            System.arraycopy(source.array(), source.arrayOffset() + source.position(), target, 0, length);
+        } else {
+            // Absolute reads leave the buffer's position untouched for the snmp4j path
+            int start = source.position();
+            for (int i = 0; i < length; i++) {
+                target[i] = source.get(start + i);
+            }
+        }
+    }
+}
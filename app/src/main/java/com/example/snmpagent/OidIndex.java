@@ -0,0 +1,446 @@
+package com.example.snmpagent;
+
+import com.example.mib.SnapshotTable;
+
+import org.snmp4j.agent.MOContextScope;
+import org.snmp4j.agent.MOScope;
+import org.snmp4j.agent.MOServer;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.asn1.BER;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.Variable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, pre-sorted index of the scalar instances and snapshot tables registered with an
+ * MOServer. Built once whenever MOs are (un)registered so that GET and GETNEXT resolve a
+ * varbind with one binary search straight to its scalar, instead of rebuilding and sorting
+ * the OID list or running an MOQuery through the server per varbind. The server remains the
+ * source of truth for registrations.
+ *
+ * A snapshot table takes one slot, and its cells are resolved within the slot against the
+ * table's current rows, so the index does not change when rows do. A position packs the slot
+ * into the upper 32 bits and, for a table, the cell into the lower ones, column by column
+ * (column * rows + row); positions stay valid for as long as the rows they were taken with.
+ */
+public final class OidIndex {
+
+    private static final String TAG = "OidIndex";
+
+    public static final OidIndex EMPTY = new OidIndex(new ManagedObject<?>[0]);
+
+    // Per slot: the scalar's instance OID or the table's entry OID, and one of scalar or table
+    private final OID[] oids;
+    private final MOScalar<?>[] scalars;
+    private final SnapshotTable[] tables;
+    // BER encoding (tag, length and sub-identifiers) of each scalar's OID, reused verbatim in
+    // responses; for a table, the sub-identifier bytes of each column's OID, completed per cell
+    private final byte[][] encodedOids;
+    private final byte[][][] encodedColumns;
+
+    private OidIndex(ManagedObject<?>[] objects) {
+        int count = objects.length;
+        this.oids = new OID[count];
+        this.scalars = new MOScalar<?>[count];
+        this.tables = new SnapshotTable[count];
+        this.encodedOids = new byte[count][];
+        this.encodedColumns = new byte[count][][];
+        for (int i = 0; i < count; i++) {
+            oids[i] = keyOf(objects[i]);
+            if (objects[i] instanceof SnapshotTable) {
+                SnapshotTable table = (SnapshotTable) objects[i];
+                tables[i] = table;
+                encodedColumns[i] = new byte[table.getColumnCount()][];
+                for (int c = 0; c < table.getColumnCount(); c++) {
+                    byte[] encoded = encode(new OID(oids[i]).append(table.getColumnId(c)));
+                    // Strip the tag and length
+                    int header = ((encoded[1] & 0x80) == 0) ? 2 : 2 + (encoded[1] & 0x7F);
+                    encodedColumns[i][c] = Arrays.copyOfRange(encoded, header, encoded.length);
+                }
+            } else {
+                scalars[i] = (MOScalar<?>) objects[i];
+                encodedOids[i] = encode(oids[i]);
+            }
+        }
+    }
+
+    private static byte[] encode(OID oid) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+        try {
+            oid.encodeBER(out);
+        } catch (IOException e) {
+            android.util.Log.w(TAG, "Cannot pre-encode OID " + oid, e);
+        }
+        return out.toByteArray();
+    }
+
+    private static OID keyOf(ManagedObject<?> mo) {
+        return (mo instanceof SnapshotTable) ? ((SnapshotTable) mo).getEntryOid() : ((MOScalar<?>) mo).getID();
+    }
+
+    /**
+     * Build an index from every scalar and snapshot table registered with the server in the
+     * given context, so new MOGroups in Modules are picked up without maintaining a separate
+     * OID list.
+     */
+    public static OidIndex build(MOServer server, OctetString context) {
+        if (server == null) {
+            return EMPTY;
+        }
+        List<ManagedObject<?>> collected = new ArrayList<>();
+        Iterator<Map.Entry<MOScope, ManagedObject<?>>> it = server.iterator();
+        while (it.hasNext()) {
+            Map.Entry<MOScope, ManagedObject<?>> entry = it.next();
+            MOScope scope = entry.getKey();
+            if (scope instanceof MOContextScope && context != null &&
+                !context.equals(((MOContextScope) scope).getContext())) {
+                continue;
+            }
+            ManagedObject<?> mo = entry.getValue();
+            if (mo instanceof MOScalar || mo instanceof SnapshotTable) {
+                collected.add(mo);
+            }
+        }
+
+        ManagedObject<?>[] sorted = collected.toArray(new ManagedObject<?>[0]);
+        Arrays.sort(sorted, (a, b) -> keyOf(a).compareTo(keyOf(b)));
+
+        // Drop duplicates (an MO registered in several scopes shows up more than once)
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || !keyOf(sorted[i]).equals(keyOf(sorted[size - 1]))) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return new OidIndex(size == sorted.length ? sorted : Arrays.copyOf(sorted, size));
+    }
+
+    /**
+     * @return the first indexed OID lexicographically greater than the given OID,
+     * or null if the given OID is at or past the end of the MIB view
+     */
+    public OID successor(OID oid) {
+        long next = successorPosition(oid.getValue(), oid.size());
+        return (next >= 0) ? oidAt(next) : null;
+    }
+
+    /**
+     * @return true if the OID is not itself indexed but falls under the object of an indexed
+     * scalar instance (e.g. sysDescr without ".0", or "sysDescr.5") or under a column of a
+     * snapshot table, i.e. noSuchInstance rather than noSuchObject
+     */
+    public boolean isUnderKnownObject(OID oid) {
+        return isUnderKnownObject(oid.getValue(), oid.size());
+    }
+
+    public boolean contains(OID oid) {
+        return indexOf(oid.getValue(), oid.size()) >= 0;
+    }
+
+    /**
+     * Binary search on raw sub-identifiers, so a decoder can look up an OID without
+     * materializing an OID object.
+     *
+     * @return the position of the OID, or -1 if it is not indexed
+     */
+    public long indexOf(int[] subids, int length) {
+        int slot = search(subids, length);
+        if (slot >= 0) {
+            // A table's entry OID is not an instance
+            return (scalars[slot] != null) ? position(slot, 0) : -1;
+        }
+        int table = tableAbove(-(slot + 1), subids, length);
+        if (table >= 0) {
+            int cell = locateCell(tables[table], tables[table].getRows(), subids, length);
+            return (cell >= 0) ? position(table, cell) : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position of the first indexed OID greater than the given one, or -1 at the end of the MIB view
+     */
+    public long successorPosition(int[] subids, int length) {
+        int slot = search(subids, length);
+        if (slot >= 0) {
+            // Past a scalar, or into a table from its entry OID
+            return firstPosition((scalars[slot] != null) ? slot + 1 : slot);
+        }
+        int ceiling = -(slot + 1);
+        int table = tableAbove(ceiling, subids, length);
+        if (table >= 0) {
+            int[] rows = tables[table].getRows();
+            int cell = locateCell(tables[table], rows, subids, length);
+            int next = (cell >= 0) ? cell + 1 : -(cell + 1);
+            return (next < cellCount(tables[table], rows)) ? position(table, next) : firstPosition(table + 1);
+        }
+        return firstPosition(ceiling);
+    }
+
+    public boolean isUnderKnownObject(int[] subids, int length) {
+        int slot = search(subids, length);
+        if (slot >= 0) {
+            return false;
+        }
+        int ceiling = -(slot + 1);
+        int table = tableAbove(ceiling, subids, length);
+        if (table >= 0) {
+            int columnSubid = oids[table].size();
+            return tables[table].indexOfColumn(subids[columnSubid]) >= 0 &&
+                locateCell(tables[table], tables[table].getRows(), subids, length) < 0;
+        }
+        // Instances sharing the OID's object prefix sort immediately around its insertion point
+        return (ceiling > 0 && scalars[ceiling - 1] != null && sharesObject(oids[ceiling - 1], subids, length)) ||
+            (ceiling < oids.length && scalars[ceiling] != null && sharesObject(oids[ceiling], subids, length));
+    }
+
+    /**
+     * @return true if the OID at the given position equals the raw sub-identifiers
+     */
+    public boolean matches(long position, int[] subids, int length) {
+        if (position < 0 || slotOf(position) >= oids.length) {
+            return false;
+        }
+        int slot = slotOf(position);
+        SnapshotTable table = tables[slot];
+        if (table == null) {
+            return cellOf(position) == 0 && compare(oids[slot], subids, length) == 0;
+        }
+        int[] rows = table.getRows();
+        int cell = cellOf(position);
+        int entryLength = oids[slot].size();
+        if (cell < 0 || cell >= cellCount(table, rows) || length != entryLength + 2 ||
+            compare(oids[slot], subids, entryLength) != 0) {
+            return false;
+        }
+        return subids[entryLength] == table.getColumnId(cell / rows.length) &&
+            subids[entryLength + 1] == rows[cell % rows.length];
+    }
+
+    /**
+     * @return the position following the given one, or -1 at the end of the MIB view
+     */
+    public long nextPosition(long position) {
+        int slot = slotOf(position);
+        SnapshotTable table = tables[slot];
+        if (table != null && cellOf(position) + 1 < cellCount(table, table.getRows())) {
+            return position + 1;
+        }
+        return firstPosition(slot + 1);
+    }
+
+    public OID oidAt(long position) {
+        int slot = slotOf(position);
+        SnapshotTable table = tables[slot];
+        if (table == null) {
+            return oids[slot];
+        }
+        int[] rows = table.getRows();
+        int cell = cellOf(position);
+        return new OID(oids[slot]).append(table.getColumnId(cell / rows.length)).append(rows[cell % rows.length]);
+    }
+
+    /**
+     * @return the current value of the scalar or cell at the given position, or null if it has none
+     */
+    public Variable valueAt(long position) {
+        int slot = slotOf(position);
+        SnapshotTable table = tables[slot];
+        if (table == null) {
+            return scalars[slot].getValue();
+        }
+        int[] rows = table.getRows();
+        int cell = cellOf(position);
+        return table.getValue(cell / rows.length, rows[cell % rows.length]);
+    }
+
+    /**
+     * @return the current value of the scalar instance or cell, or null if the OID is not indexed
+     */
+    public Variable getValue(OID oid) {
+        long pos = indexOf(oid.getValue(), oid.size());
+        return (pos >= 0) ? valueAt(pos) : null;
+    }
+
+    /**
+     * @return the BER encoding of the OID at the given position; shared for a scalar, built
+     * from the column's pre-encoded prefix for a table cell
+     */
+    public byte[] encodedOidAt(long position) {
+        int slot = slotOf(position);
+        SnapshotTable table = tables[slot];
+        if (table == null) {
+            return encodedOids[slot];
+        }
+        int[] rows = table.getRows();
+        int cell = cellOf(position);
+        return encodeCell(encodedColumns[slot][cell / rows.length], rows[cell % rows.length]);
+    }
+
+    /**
+     * @return the number of indexed scalar instances and tables
+     */
+    public int size() {
+        return oids.length;
+    }
+
+    private static long position(int slot, int cell) {
+        return ((long) slot << 32) | cell;
+    }
+
+    private static int slotOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int cellOf(long position) {
+        return (int) position;
+    }
+
+    private static int cellCount(SnapshotTable table, int[] rows) {
+        return table.getColumnCount() * rows.length;
+    }
+
+    /**
+     * @return the first position at or after the slot, skipping empty tables, or -1 at the end of the MIB view
+     */
+    private long firstPosition(int slot) {
+        for (; slot < oids.length; slot++) {
+            if (tables[slot] == null || cellCount(tables[slot], tables[slot].getRows()) > 0) {
+                return position(slot, 0);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the slot of the table whose entry the OID falls under, or -1
+     */
+    private int tableAbove(int ceiling, int[] subids, int length) {
+        // An entry sorts right before everything under it
+        int slot = ceiling - 1;
+        if (slot < 0 || tables[slot] == null) {
+            return -1;
+        }
+        OID entry = oids[slot];
+        return (length > entry.size() && compare(entry, subids, entry.size()) == 0) ? slot : -1;
+    }
+
+    /**
+     * Binary search for an OID under the table's entry among its cells, in cell order.
+     *
+     * @return the cell, or (-(insertion point) - 1) if there is no such cell
+     */
+    private static int locateCell(SnapshotTable table, int[] rows, int[] subids, int length) {
+        int entryLength = table.getEntryOid().size();
+        int columnSubid = subids[entryLength];
+        int column = 0;
+        while (column < table.getColumnCount() &&
+            Integer.compareUnsigned(table.getColumnId(column), columnSubid) < 0) {
+            column++;
+        }
+        if (column == table.getColumnCount() || table.getColumnId(column) != columnSubid) {
+            // Before the first cell of the next column
+            return -(column * rows.length) - 1;
+        }
+        if (length == entryLength + 1) {
+            // The column itself
+            return -(column * rows.length) - 1;
+        }
+        int low = 0;
+        int high = rows.length - 1;
+        int rowSubid = subids[entryLength + 1];
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Integer.compareUnsigned(rows[mid], rowSubid);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                int cell = column * rows.length + mid;
+                // Anything longer sorts after the cell
+                return (length == entryLength + 2) ? cell : -(cell + 1) - 1;
+            }
+        }
+        return -(column * rows.length + low) - 1;
+    }
+
+    private static byte[] encodeCell(byte[] columnPrefix, int row) {
+        int rowLength = 1;
+        for (long rest = (row & 0xFFFFFFFFL) >>> 7; rest != 0; rest >>>= 7) {
+            rowLength++;
+        }
+        int contentLength = columnPrefix.length + rowLength;
+        int lengthLength = (contentLength < 0x80) ? 1 : 2;
+        byte[] encoded = new byte[1 + lengthLength + contentLength];
+        encoded[0] = BER.OID;
+        if (lengthLength == 1) {
+            encoded[1] = (byte) contentLength;
+        } else {
+            // Column prefixes are far shorter than 255 bytes
+            encoded[1] = (byte) 0x81;
+            encoded[2] = (byte) contentLength;
+        }
+        int p = 1 + lengthLength;
+        System.arraycopy(columnPrefix, 0, encoded, p, columnPrefix.length);
+        p += columnPrefix.length;
+        for (int shift = (rowLength - 1) * 7; shift > 0; shift -= 7) {
+            encoded[p++] = (byte) (((row >>> shift) & 0x7F) | 0x80);
+        }
+        encoded[p] = (byte) (row & 0x7F);
+        return encoded;
+    }
+
+    private int search(int[] subids, int length) {
+        int low = 0;
+        int high = oids.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(oids[mid], subids, length);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static boolean sharesObject(OID instance, int[] subids, int length) {
+        int objectLength = instance.size() - 1;
+        if (objectLength <= 0 || length < objectLength) {
+            return false;
+        }
+        for (int i = 0; i < objectLength; i++) {
+            if (instance.get(i) != subids[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same ordering as OID.compareTo: sub-identifiers compared unsigned, then shorter first.
+     */
+    private static int compare(OID oid, int[] subids, int length) {
+        int n = Math.min(oid.size(), length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compareUnsigned(oid.get(i), subids[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return oid.size() - length;
+    }
+}
@@ -0,0 +1,375 @@
+package com.example.snmpagent;
+
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker pool for the direct responder. Requests are handed off from the transport's
+ * listen thread into a bounded queue so one slow collector call no longer serializes
+ * every manager; when the queue is full the configured overload policy decides what to shed.
+ *
+ * Queued requests are split into priority lanes (availability polls, other GETs, walks)
+ * that workers drain by weighted round robin, so a burst of walks cannot delay the
+ * sysUpTime/sysDescr GETs a manager uses to decide whether the device is up.
+ */
+public class RequestDispatcher {
+
+    private static final String TAG = "RequestDispatcher";
+
+    public static final int[] DEFAULT_LANE_WEIGHTS = {8, 4, 1};
+
+    // system group (1.3.6.1.2.1.1)
+    private static final OID SYSTEM_GROUP = new OID(new int[]{1, 3, 6, 1, 2, 1, 1});
+
+    public enum OverloadPolicy {
+        /**
+         * Discard the request that has waited longest in the lowest-priority lane below the
+         * incoming request's, whose manager will retry; if there is none, discard the incoming request.
+         */
+        DROP_OLDEST,
+        /** Discard the incoming request. */
+        DROP_NEWEST,
+        /** Answer the incoming request immediately with genErr. */
+        GEN_ERR;
+
+        public static OverloadPolicy fromString(String name) {
+            try {
+                return valueOf(name);
+            } catch (Exception e) {
+                android.util.Log.w(TAG, "Unknown overload policy '" + name + "', using DROP_OLDEST");
+                return DROP_OLDEST;
+            }
+        }
+    }
+
+    /**
+     * Request classes, highest priority first.
+     */
+    public enum Lane {
+        /** Single-varbind GET in the system group, e.g. sysUpTime.0 availability polls. */
+        AVAILABILITY,
+        /** Any other GET. */
+        GET,
+        /** GETNEXT and GETBULK. */
+        WALK
+    }
+
+    private static final class LaneTask {
+        final int lane;
+        final Runnable task;
+        final long enqueued = System.nanoTime();
+
+        LaneTask(int lane, Runnable task) {
+            this.lane = lane;
+            this.task = task;
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final OverloadPolicy policy;
+
+    // Guarded by lock
+    private final Object lock = new Object();
+    private final ArrayDeque<LaneTask>[] lanes;
+    private final int[] weights;
+    private final int[] currentWeights;
+    private int queued;
+    // Set on a worker while it runs a request
+    private final ThreadLocal<LaneTask> running = new ThreadLocal<>();
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong droppedNewest = new AtomicLong();
+    private final AtomicLong genErrReplies = new AtomicLong();
+
+    private final AtomicLong[] laneCompleted;
+    private final AtomicLong[] laneLatencyMicros;
+    private final AtomicLong[] laneAverageMicros;
+
+    /**
+     * @param laneWeights relative share of worker pickups per lane, highest priority first;
+     *        fewer weights than lanes merges the remaining classes into the last lane
+     */
+    public RequestDispatcher(int workerThreads, int queueCapacity, OverloadPolicy policy, int[] laneWeights) {
+        this.queueCapacity = Math.max(queueCapacity, 1);
+        this.policy = policy;
+
+        int laneCount = Math.max(1, Math.min(laneWeights.length, Lane.values().length));
+        this.lanes = newLanes(laneCount);
+        this.weights = new int[laneCount];
+        this.currentWeights = new int[laneCount];
+        this.laneCompleted = new AtomicLong[laneCount];
+        this.laneLatencyMicros = new AtomicLong[laneCount];
+        this.laneAverageMicros = new AtomicLong[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new ArrayDeque<>();
+            weights[i] = (i < laneWeights.length) ? Math.max(laneWeights[i], 1) : 1;
+            laneCompleted[i] = new AtomicLong();
+            laneLatencyMicros[i] = new AtomicLong();
+            laneAverageMicros[i] = new AtomicLong();
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "SnmpWorker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        int workers = Math.max(workerThreads, 1);
+        // The executor only carries "run the next request" tokens; the lanes hold the requests
+        executor = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), threadFactory);
+        // Idle workers exit so an unpolled agent holds no threads
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayDeque<LaneTask>[] newLanes(int count) {
+        return new ArrayDeque[count];
+    }
+
+    /**
+     * Parse a comma separated weight list such as "8,4,1".
+     */
+    public static int[] parseLaneWeights(String value) {
+        try {
+            String[] parts = value.split(",");
+            int[] parsed = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                parsed[i] = Integer.parseInt(parts[i].trim());
+                if (parsed[i] <= 0) {
+                    throw new NumberFormatException("weight must be positive");
+                }
+            }
+            return parsed;
+        } catch (Exception e) {
+            android.util.Log.w(TAG, "Invalid lane weights '" + value + "', using 8,4,1");
+            return DEFAULT_LANE_WEIGHTS.clone();
+        }
+    }
+
+    public static Lane classify(PDU pdu) {
+        OID first = (pdu.size() > 0) ? pdu.get(0).getOid() : null;
+        return (first != null) ?
+            classify(pdu.getType(), pdu.size(), first.getValue(), first.size()) :
+            classify(pdu.getType(), 0, null, 0);
+    }
+
+    /**
+     * Classification on raw sub-identifiers of the first varbind, for callers that decode requests themselves.
+     */
+    public static Lane classify(int pduType, int varbindCount, int[] firstSubids, int firstLength) {
+        if (pduType == PDU.GETNEXT || pduType == PDU.GETBULK) {
+            return Lane.WALK;
+        }
+        if (pduType == PDU.GET && varbindCount == 1 && firstLength > SYSTEM_GROUP.size()) {
+            for (int i = 0; i < SYSTEM_GROUP.size(); i++) {
+                if (firstSubids[i] != SYSTEM_GROUP.get(i)) {
+                    return Lane.GET;
+                }
+            }
+            return Lane.AVAILABILITY;
+        }
+        return Lane.GET;
+    }
+
+    /**
+     * Queue a request for a worker thread.
+     *
+     * @param lane the request's class
+     * @param task the request handler
+     * @param genErrReply sends a genErr response for the request; only run on the
+     *        calling thread when the queue is full and the policy is GEN_ERR
+     *
+     * A request dispatched by a worker while it runs one, e.g. a fast path request it
+     * hands to snmp4j, was already admitted and is run right away on that worker.
+     */
+    public void dispatch(Lane lane, Runnable task, Runnable genErrReply) {
+        if (running.get() != null) {
+            task.run();
+            return;
+        }
+        if (enqueue(new LaneTask(Math.min(lane.ordinal(), lanes.length - 1), task))) {
+            return;
+        }
+
+        if (policy == OverloadPolicy.GEN_ERR) {
+            genErrReplies.incrementAndGet();
+            genErrReply.run();
+        } else {
+            droppedNewest.incrementAndGet();
+        }
+    }
+
+    private boolean enqueue(LaneTask task) {
+        if (executor.isShutdown()) {
+            return false;
+        }
+        synchronized (lock) {
+            if (queued >= queueCapacity) {
+                if (policy != OverloadPolicy.DROP_OLDEST || !dropOldest(task.lane)) {
+                    return false;
+                }
+                droppedOldest.incrementAndGet();
+            }
+            lanes[task.lane].addLast(task);
+            queued++;
+        }
+        try {
+            executor.execute(this::runNext);
+            dispatched.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            // Shut down meanwhile; the queued task is discarded with the lanes
+        }
+        return true;
+    }
+
+    /**
+     * Shed the oldest request of the lowest-priority non-empty lane below the incoming
+     * request's, so a walk never displaces a queued availability poll.
+     *
+     * @return false if every queued request has the incoming one's priority or higher
+     */
+    private boolean dropOldest(int incomingLane) {
+        for (int i = lanes.length - 1; i > incomingLane; i--) {
+            if (lanes[i].pollFirst() != null) {
+                queued--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Smooth weighted round robin over the non-empty lanes. A dropped request leaves
+     * its token behind, so a token may find nothing to run.
+     */
+    private LaneTask pollNext() {
+        synchronized (lock) {
+            int total = 0;
+            int best = -1;
+            for (int i = 0; i < lanes.length; i++) {
+                if (lanes[i].isEmpty()) {
+                    continue;
+                }
+                currentWeights[i] += weights[i];
+                total += weights[i];
+                if (best < 0 || currentWeights[i] > currentWeights[best]) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            currentWeights[best] -= total;
+            queued--;
+            return lanes[best].pollFirst();
+        }
+    }
+
+    private void runNext() {
+        LaneTask task = pollNext();
+        if (task == null) {
+            return;
+        }
+        running.set(task);
+        try {
+            task.task.run();
+        } finally {
+            running.remove();
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - task.enqueued);
+            laneCompleted[task.lane].incrementAndGet();
+            laneLatencyMicros[task.lane].addAndGet(micros);
+            // EWMA with alpha 1/8; lost updates under contention only skew it slightly
+            long average = laneAverageMicros[task.lane].get();
+            laneAverageMicros[task.lane].set(average + (micros - average) / 8);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        synchronized (lock) {
+            for (ArrayDeque<LaneTask> lane : lanes) {
+                lane.clear();
+            }
+            queued = 0;
+        }
+    }
+
+    public OverloadPolicy getPolicy() {
+        return policy;
+    }
+
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    public long getDispatchedCount() {
+        return dispatched.get();
+    }
+
+    public long getDroppedOldestCount() {
+        return droppedOldest.get();
+    }
+
+    public long getDroppedNewestCount() {
+        return droppedNewest.get();
+    }
+
+    public long getGenErrReplyCount() {
+        return genErrReplies.get();
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int getLaneWeight(int lane) {
+        return weights[lane];
+    }
+
+    public int getLaneDepth(int lane) {
+        synchronized (lock) {
+            return lanes[lane].size();
+        }
+    }
+
+    public long getLaneCompletedCount(int lane) {
+        return laneCompleted[lane].get();
+    }
+
+    /**
+     * @return summed queue wait plus handling time of completed requests, in microseconds
+     */
+    public long getLaneLatencyMicros(int lane) {
+        return laneLatencyMicros[lane].get();
+    }
+
+    /**
+     * @return moving average of queue wait plus handling time, in microseconds
+     */
+    public long getLaneAverageLatencyMicros(int lane) {
+        return laneAverageMicros[lane].get();
+    }
+}
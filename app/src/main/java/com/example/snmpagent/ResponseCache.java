@@ -0,0 +1,127 @@
+package com.example.snmpagent;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache of responses to identical read requests, so several managers polling
+ * the same OIDs within the same second share one round of collector calls. Entries are
+ * keyed on the request's shape (PDU type, version, GETBULK parameters, size limit and the
+ * varbind OIDs) and live for a fixed window; the request ID and community are taken from
+ * each request when the response is sent.
+ */
+public class ResponseCache<T> {
+
+    public static final long MIN_WINDOW_MILLIS = 250;
+    public static final long MAX_WINDOW_MILLIS = 2000;
+
+    private static final int MAX_ENTRIES = 128;
+
+    private final long windowNanos;
+    private final Map<Key, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Request shape as raw bytes.
+     */
+    public static final class Key {
+        private final byte[] bytes;
+        private final int hash;
+
+        public Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Key) && hash == ((Key) o).hash && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry<T> {
+        final T response;
+        final long created;
+
+        Entry(T response, long created) {
+            this.response = response;
+            this.created = created;
+        }
+    }
+
+    /**
+     * @param windowMillis how long a response is reused; 0 disables the cache, other values
+     *        are clamped to MIN_WINDOW_MILLIS..MAX_WINDOW_MILLIS
+     */
+    public ResponseCache(long windowMillis) {
+        long window = (windowMillis <= 0) ? 0 :
+            Math.max(MIN_WINDOW_MILLIS, Math.min(windowMillis, MAX_WINDOW_MILLIS));
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+    }
+
+    public boolean isEnabled() {
+        return windowNanos > 0;
+    }
+
+    /**
+     * @return the cached response, or null on a miss or when the cache is disabled
+     */
+    public T get(Key key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry<T> entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.created < windowNanos) {
+            hits.incrementAndGet();
+            return entry.response;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(Key key, T response) {
+        if (!isEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (entries.size() >= MAX_ENTRIES) {
+            evictExpired(now);
+            if (entries.size() >= MAX_ENTRIES) {
+                entries.clear();
+            }
+        }
+        entries.put(key, new Entry<>(response, now));
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Entry<T>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().created >= windowNanos) {
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+}
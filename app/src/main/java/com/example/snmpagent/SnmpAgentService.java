@@ -72,6 +72,8 @@ public class SnmpAgentService extends Service {
     private File bootCounterFile;
     private OctetString context = new OctetString("");
     private MessageDispatcher messageDispatcher;
+    private AgentCommandResponder commandResponder;
+    private RequestDispatcher requestDispatcher;
     
     private final IBinder binder = new ServiceBinder();
     
@@ -193,6 +195,14 @@ public class SnmpAgentService extends Service {
             String setCommunity = prefs.getString("set_community", "blackjack007");
             String trapCommunity = prefs.getString("trap_community", "blackjack");
             String trapDestination = prefs.getString("trap_destination", "10.11.139.83");
+            int workerThreads = prefs.getInt("worker_threads", 4);
+            int requestQueueCapacity = prefs.getInt("request_queue_capacity", 64);
+            RequestDispatcher.OverloadPolicy overloadPolicy = RequestDispatcher.OverloadPolicy.fromString(
+                prefs.getString("overload_policy", RequestDispatcher.OverloadPolicy.DROP_OLDEST.name()));
+            int[] laneWeights = RequestDispatcher.parseLaneWeights(prefs.getString("lane_weights", "8,4,1"));
+            boolean berFastPath = prefs.getBoolean("ber_fast_path", false);
+            int responseCacheMillis = prefs.getInt("response_cache_ms", 0);
+            int collectionDeadlineMillis = prefs.getInt("collection_deadline_ms", 250);
             
             // Get device IP address - but listen on all interfaces for better connectivity
             String deviceIp = NetworkUtils.getLocalIpAddress();
@@ -207,6 +217,12 @@ public class SnmpAgentService extends Service {
             // Initialize server
             server = new DefaultMOServer();
             MOServer[] moServers = new MOServer[]{server};
+            requestDispatcher = new RequestDispatcher(workerThreads, requestQueueCapacity, overloadPolicy, laneWeights);
+            android.util.Log.i("SnmpAgentService", "Request dispatcher: " + workerThreads + " workers, queue " +
+                requestQueueCapacity + ", overload policy " + overloadPolicy + ", lane weights " +
+                Arrays.toString(laneWeights));
+            commandResponder = new AgentCommandResponder(server, context, requestDispatcher, responseCacheMillis,
+                collectionDeadlineMillis);
             
             bootCounterFile = new File(getFilesDir(), "bootCounter.txt");
             EngineBootsCounterFile engineBootsCounterFile = 
@@ -224,7 +240,7 @@ public class SnmpAgentService extends Service {
             // Don't add backup address to avoid port conflicts
             android.util.Log.i("SnmpAgentService", "About to setup agent with " + addresses.size() + " addresses: " + addresses);
             setupAgent(moServers, engineBootsCounterFile, ownEngineId, 
-                      addresses, getCommunity, setCommunity, trapCommunity);
+                      addresses, getCommunity, setCommunity, trapCommunity, berFastPath, responseCacheMillis);
             android.util.Log.i("SnmpAgentService", "Agent setup completed");
             
             // Register MIBs
@@ -290,102 +306,7 @@ public class SnmpAgentService extends Service {
                     messageDispatcher.getTransportMappings().iterator().next());
                 
                 // Add command responder to handle incoming requests through the MO Server
-                snmp.addCommandResponder(new org.snmp4j.CommandResponder() {
-                    @Override
-                    public void processPdu(org.snmp4j.CommandResponderEvent event) {
-                        android.util.Log.i("SnmpAgentService", "*** SNMP REQUEST RECEIVED! ***");
-                        android.util.Log.i("SnmpAgentService", "PDU: " + event.getPDU());
-                        
-                        try {
-                            // Use the MO Server to process the request through registered MIBs
-                            org.snmp4j.PDU requestPDU = event.getPDU();
-                            org.snmp4j.PDU responsePDU = new org.snmp4j.PDU();
-                            responsePDU.setType(org.snmp4j.PDU.RESPONSE);
-                            responsePDU.setRequestID(requestPDU.getRequestID());
-                            
-                            int pduType = requestPDU.getType();
-                            android.util.Log.i("SnmpAgentService", "PDU Type: " + pduType + 
-                                (pduType == org.snmp4j.PDU.GET ? " (GET)" : 
-                                 pduType == org.snmp4j.PDU.GETNEXT ? " (GETNEXT)" : " (OTHER)"));
-                            
-                            // Process each variable binding in the request
-                            for (int i = 0; i < requestPDU.size(); i++) {
-                                org.snmp4j.smi.VariableBinding vb = requestPDU.get(i);
-                                org.snmp4j.smi.OID oid = vb.getOid();
-                                android.util.Log.i("SnmpAgentService", "Processing OID: " + oid);
-                                
-                                if (pduType == org.snmp4j.PDU.GETNEXT) {
-                                    // For GETNEXT, find the next OID in the tree
-                                    org.snmp4j.smi.OID nextOid = findNextOid(oid);
-                                    if (nextOid != null) {
-                                        android.util.Log.i("SnmpAgentService", "Next OID found: " + nextOid);
-                                        // Get the value for the next OID
-                                        org.snmp4j.agent.MOQuery query = new org.snmp4j.agent.DefaultMOQuery(
-                                            new org.snmp4j.agent.DefaultMOContextScope(context, nextOid, true, nextOid, true));
-                                        org.snmp4j.agent.ManagedObject mo = server.lookup(query);
-                                        
-                                        if (mo != null && mo instanceof org.snmp4j.agent.mo.MOScalar) {
-                                            org.snmp4j.smi.Variable value = ((org.snmp4j.agent.mo.MOScalar) mo).getValue();
-                                            responsePDU.add(new org.snmp4j.smi.VariableBinding(nextOid, value));
-                                        } else {
-                                            responsePDU.add(new org.snmp4j.smi.VariableBinding(nextOid, 
-                                                new org.snmp4j.smi.Null()));
-                                        }
-                                    } else {
-                                        android.util.Log.i("SnmpAgentService", "No next OID found - end of MIB");
-                                        // End of MIB
-                                        responsePDU.add(new org.snmp4j.smi.VariableBinding(oid, 
-                                            new org.snmp4j.smi.Null()));
-                                    }
-                                } else {
-                                    // Handle GET request
-                                    org.snmp4j.agent.MOQuery query = new org.snmp4j.agent.DefaultMOQuery(
-                                        new org.snmp4j.agent.DefaultMOContextScope(context, oid, true, oid, true));
-                                    
-                                    // Query the MO Server for this OID
-                                    org.snmp4j.agent.ManagedObject mo = server.lookup(query);
-                                    
-                                    if (mo != null) {
-                                        android.util.Log.i("SnmpAgentService", "Found MO for OID: " + oid);
-                                        // Create a variable binding with the value from the MO
-                                        org.snmp4j.smi.Variable value = null;
-                                        if (mo instanceof org.snmp4j.agent.mo.MOScalar) {
-                                            value = ((org.snmp4j.agent.mo.MOScalar) mo).getValue();
-                                            android.util.Log.i("SnmpAgentService", "Retrieved value: " + value);
-                                        }
-                                        
-                                        if (value != null) {
-                                            responsePDU.add(new org.snmp4j.smi.VariableBinding(oid, value));
-                                        } else {
-                                            responsePDU.add(new org.snmp4j.smi.VariableBinding(oid, 
-                                                new org.snmp4j.smi.Null()));
-                                        }
-                                    } else {
-                                        android.util.Log.w("SnmpAgentService", "No MO found for OID: " + oid);
-                                        // Return noSuchObject
-                                        responsePDU.add(new org.snmp4j.smi.VariableBinding(oid, 
-                                            new org.snmp4j.smi.Null()));
-                                    }
-                                }
-                            }
-                            
-                            // Send response
-                            event.getMessageDispatcher().returnResponsePdu(
-                                event.getMessageProcessingModel(),
-                                event.getSecurityModel(),
-                                event.getSecurityName(),
-                                event.getSecurityLevel(),
-                                responsePDU,
-                                event.getMaxSizeResponsePDU(),
-                                event.getStateReference(),
-                                new org.snmp4j.mp.StatusInformation());
-                            android.util.Log.i("SnmpAgentService", "Response sent successfully!");
-                            
-                        } catch (Exception e) {
-                            android.util.Log.e("SnmpAgentService", "Error processing SNMP request", e);
-                        }
-                    }
-                });
+                snmp.addCommandResponder(commandResponder);
                 
                 snmp.listen();
                 android.util.Log.i("SnmpAgentService", "Direct SNMP responder is now listening and ready!");
@@ -414,14 +335,23 @@ public class SnmpAgentService extends Service {
     
     private void setupAgent(MOServer[] moServers, EngineBootsProvider engineBootsProvider,
                            OctetString engineID, List<Object> listenAddress,
-                           String getCommunity, String setCommunity, String trapCommunity) {
+                           String getCommunity, String setCommunity, String trapCommunity,
+                           boolean berFastPath, int responseCacheMillis) {
         try {
             android.util.Log.d("SnmpAgentService", "setupAgent called with " + listenAddress.size() + " addresses");
             // Clean up old dispatcher if exists (will be handled in stopSnmpAgent)
             // Just reset reference here
             messageDispatcher = null;
             
-            messageDispatcher = new MessageDispatcherImpl();
+            if (berFastPath) {
+                // v1/v2c GET/GETNEXT/GETBULK are decoded and answered straight from the datagram
+                messageDispatcher = new FastPathMessageDispatcher(
+                    new BerFastPath(commandResponder, responseCacheMillis, getCommunity, setCommunity),
+                    requestDispatcher);
+                android.util.Log.i("SnmpAgentService", "BER fast path enabled");
+            } else {
+                messageDispatcher = new MessageDispatcherImpl();
+            }
             android.util.Log.d("SnmpAgentService", "MessageDispatcher created, about to add listen addresses");
             addListenAddresses(messageDispatcher, listenAddress);
             android.util.Log.d("SnmpAgentService", "Listen addresses added");
@@ -568,6 +498,7 @@ public class SnmpAgentService extends Service {
             try {
                 android.util.Log.d("SnmpAgentService", "Unregistering existing MIBs");
                 modules.unregisterMOs(server, context);
+                rebuildOidIndex();
             } catch (Exception e) {
                 android.util.Log.w("SnmpAgentService", "Error unregistering MIBs (may not be registered)", e);
             }
@@ -576,14 +507,17 @@ public class SnmpAgentService extends Service {
         // Create new modules instance with context for real device stats
         MOFactory factory = DefaultMOFactory.getInstance();
         modules = new Modules(factory, this);
+        modules.setRegistrationListener(this::rebuildOidIndex);
         android.util.Log.d("SnmpAgentService", "Created new Modules instance with Android context");
+        bindAgentStats(modules.getAgentStatsMib());
         
         try {
             android.util.Log.d("SnmpAgentService", "Registering MIBs with server and context");
             modules.registerMOs(server, context);
+            rebuildOidIndex();
             android.util.Log.i("SnmpAgentService", "MIBs registered successfully");
             android.util.Log.i("SnmpAgentService", "Sample MIB OID: " + com.example.mib.SampleMib.SAMPLE_OID);
-            android.util.Log.i("SnmpAgentService", "Android Device MIB registered with " + getAndroidDeviceMibOidCount() + " OIDs");
+            android.util.Log.i("SnmpAgentService", "OID index built with " + commandResponder.getOidIndex().size() + " scalars and tables");
             android.util.Log.i("SnmpAgentService", "Device Model OID: " + com.example.mib.AndroidDeviceMib.DEVICE_MODEL);
             android.util.Log.i("SnmpAgentService", "Memory Usage OID: " + com.example.mib.AndroidDeviceMib.MEMORY_USAGE_PERCENT);
             android.util.Log.i("SnmpAgentService", "Battery Level OID: " + com.example.mib.AndroidDeviceMib.BATTERY_LEVEL);
@@ -595,78 +529,65 @@ public class SnmpAgentService extends Service {
         }
     }
     
-    private int getAndroidDeviceMibOidCount() {
-        // Count the number of OIDs in AndroidDeviceMib
-        // 5 System + 4 Memory + 4 Storage + 4 Battery + 5 Network + 3 CPU + 2 Application = 27 OIDs
-        return 27;
-    }
-    
-    private org.snmp4j.smi.OID findNextOid(org.snmp4j.smi.OID currentOid) {
-        // Define all available OIDs in sorted order for GETNEXT traversal
-        java.util.List<org.snmp4j.smi.OID> allOids = new java.util.ArrayList<>();
-        
-        // Standard System MIB (1.3.6.1.2.1.1.x.0) - CRITICAL for SolarWinds
-        allOids.add(com.example.mib.SystemMibSimple.SYS_DESCR);
-        allOids.add(com.example.mib.SystemMibSimple.SYS_OBJECT_ID);
-        allOids.add(com.example.mib.SystemMibSimple.SYS_UP_TIME);
-        allOids.add(com.example.mib.SystemMibSimple.SYS_CONTACT);
-        allOids.add(com.example.mib.SystemMibSimple.SYS_NAME);
-        allOids.add(com.example.mib.SystemMibSimple.SYS_LOCATION);
-        allOids.add(com.example.mib.SystemMibSimple.SYS_SERVICES);
-        
-        // Memory Information (2.x)
-        allOids.add(com.example.mib.AndroidDeviceMib.TOTAL_MEMORY);
-        allOids.add(com.example.mib.AndroidDeviceMib.AVAILABLE_MEMORY);
-        allOids.add(com.example.mib.AndroidDeviceMib.USED_MEMORY);
-        allOids.add(com.example.mib.AndroidDeviceMib.MEMORY_USAGE_PERCENT);
-        
-        // Storage Information (3.x)
-        allOids.add(com.example.mib.AndroidDeviceMib.TOTAL_STORAGE);
-        allOids.add(com.example.mib.AndroidDeviceMib.AVAILABLE_STORAGE);
-        allOids.add(com.example.mib.AndroidDeviceMib.USED_STORAGE);
-        allOids.add(com.example.mib.AndroidDeviceMib.STORAGE_USAGE_PERCENT);
-        
-        // Battery Information (4.x)
-        allOids.add(com.example.mib.AndroidDeviceMib.BATTERY_LEVEL);
-        allOids.add(com.example.mib.AndroidDeviceMib.BATTERY_TEMPERATURE);
-        allOids.add(com.example.mib.AndroidDeviceMib.BATTERY_VOLTAGE);
-        allOids.add(com.example.mib.AndroidDeviceMib.BATTERY_STATUS);
-        
-        // Network Information (5.x)
-        allOids.add(com.example.mib.AndroidDeviceMib.NETWORK_TYPE);
-        allOids.add(com.example.mib.AndroidDeviceMib.WIFI_SSID);
-        allOids.add(com.example.mib.AndroidDeviceMib.WIFI_SIGNAL_STRENGTH);
-        allOids.add(com.example.mib.AndroidDeviceMib.IP_ADDRESS);
-        allOids.add(com.example.mib.AndroidDeviceMib.MAC_ADDRESS);
-        
-        // CPU Information (6.x)
-        allOids.add(com.example.mib.AndroidDeviceMib.CPU_CORES);
-        allOids.add(com.example.mib.AndroidDeviceMib.CPU_USAGE);
-        allOids.add(com.example.mib.AndroidDeviceMib.CPU_FREQUENCY);
-        
-        // Application Information (7.x)
-        allOids.add(com.example.mib.AndroidDeviceMib.RUNNING_PROCESSES);
-        allOids.add(com.example.mib.AndroidDeviceMib.UPTIME);
-        
-        // System Information (10.x)
-        allOids.add(com.example.mib.AndroidDeviceMib.DEVICE_MODEL);
-        allOids.add(com.example.mib.AndroidDeviceMib.DEVICE_MANUFACTURER);
-        allOids.add(com.example.mib.AndroidDeviceMib.ANDROID_VERSION);
-        allOids.add(com.example.mib.AndroidDeviceMib.API_LEVEL);
-        allOids.add(com.example.mib.AndroidDeviceMib.DEVICE_SERIAL);
-        
-        // Sort the OIDs
-        java.util.Collections.sort(allOids);
+    private void bindAgentStats(com.example.mib.AgentStatsMib stats) {
+        final com.example.mib.SingleFlight singleFlight = modules.getSingleFlight();
+        stats.addCounter(com.example.mib.AgentStatsMib.COLLECTOR_CALLS, singleFlight::getExecutionCount);
+        stats.addCounter(com.example.mib.AgentStatsMib.COLLECTOR_CALLS_SHARED, singleFlight::getSharedCount);
+        
+        final RequestDispatcher dispatcher = requestDispatcher;
+        if (dispatcher == null) {
+            return;
+        }
+        stats.addGauge(com.example.mib.AgentStatsMib.REQUEST_QUEUE_DEPTH, dispatcher::getQueueDepth);
+        stats.addGauge(com.example.mib.AgentStatsMib.REQUEST_QUEUE_CAPACITY, dispatcher::getQueueCapacity);
+        stats.addCounter(com.example.mib.AgentStatsMib.REQUESTS_DISPATCHED, dispatcher::getDispatchedCount);
+        stats.addCounter(com.example.mib.AgentStatsMib.REQUESTS_DROPPED_OLDEST, dispatcher::getDroppedOldestCount);
+        stats.addCounter(com.example.mib.AgentStatsMib.REQUESTS_DROPPED_NEWEST, dispatcher::getDroppedNewestCount);
+        stats.addCounter(com.example.mib.AgentStatsMib.REQUESTS_GEN_ERR, dispatcher::getGenErrReplyCount);
+        stats.addGauge(com.example.mib.AgentStatsMib.ACTIVE_WORKERS, dispatcher::getActiveWorkers);
+        
+        for (int i = 0; i < dispatcher.getLaneCount(); i++) {
+            final int lane = i;
+            stats.addGauge(com.example.mib.AgentStatsMib.laneStat(lane, com.example.mib.AgentStatsMib.LANE_WEIGHT),
+                () -> dispatcher.getLaneWeight(lane));
+            stats.addGauge(com.example.mib.AgentStatsMib.laneStat(lane, com.example.mib.AgentStatsMib.LANE_DEPTH),
+                () -> dispatcher.getLaneDepth(lane));
+            stats.addCounter(com.example.mib.AgentStatsMib.laneStat(lane, com.example.mib.AgentStatsMib.LANE_COMPLETED),
+                () -> dispatcher.getLaneCompletedCount(lane));
+            stats.addCounter(com.example.mib.AgentStatsMib.laneStat(lane, com.example.mib.AgentStatsMib.LANE_LATENCY_TOTAL),
+                () -> dispatcher.getLaneLatencyMicros(lane));
+            stats.addGauge(com.example.mib.AgentStatsMib.laneStat(lane, com.example.mib.AgentStatsMib.LANE_LATENCY_AVERAGE),
+                () -> dispatcher.getLaneAverageLatencyMicros(lane));
+        }
         
-        // Find the next OID after the current one
-        for (org.snmp4j.smi.OID oid : allOids) {
-            if (oid.compareTo(currentOid) > 0) {
-                return oid;
-            }
+        if (messageDispatcher instanceof FastPathMessageDispatcher) {
+            final BerFastPath fastPath = ((FastPathMessageDispatcher) messageDispatcher).getFastPath();
+            stats.addCounter(com.example.mib.AgentStatsMib.FAST_PATH_HANDLED, fastPath::getHandledCount);
+            stats.addCounter(com.example.mib.AgentStatsMib.FAST_PATH_FALLBACKS, fastPath::getFallbackCount);
         }
         
-        // No next OID found (end of MIB)
-        return null;
+        if (commandResponder != null) {
+            final WalkCursorCache walkCursors = commandResponder.getWalkCursors();
+            stats.addCounter(com.example.mib.AgentStatsMib.WALK_CURSOR_HITS, walkCursors::getHitCount);
+            stats.addCounter(com.example.mib.AgentStatsMib.WALK_CURSOR_MISSES, walkCursors::getMissCount);
+            stats.addGauge(com.example.mib.AgentStatsMib.WALK_CURSORS, walkCursors::size);
+            
+            // Both paths keep their own cache; report them together
+            final ResponseCache<?> responseCache = commandResponder.getResponseCache();
+            final ResponseCache<?> fastPathCache = (messageDispatcher instanceof FastPathMessageDispatcher) ?
+                ((FastPathMessageDispatcher) messageDispatcher).getFastPath().getResponseCache() : null;
+            stats.addCounter(com.example.mib.AgentStatsMib.RESPONSE_CACHE_HITS, () ->
+                responseCache.getHitCount() + (fastPathCache != null ? fastPathCache.getHitCount() : 0));
+            stats.addCounter(com.example.mib.AgentStatsMib.RESPONSE_CACHE_MISSES, () ->
+                responseCache.getMissCount() + (fastPathCache != null ? fastPathCache.getMissCount() : 0));
+        }
+    }
+    
+    private void rebuildOidIndex() {
+        // The index is immutable; GETNEXT readers pick up the new one on their next lookup
+        if (commandResponder != null) {
+            commandResponder.rebuildIndex();
+        }
     }
     
     private void stopSnmpAgent() {
@@ -675,6 +596,7 @@ public class SnmpAgentService extends Service {
             try {
                 modules.unregisterMOs(server, context);
                 android.util.Log.d("SnmpAgentService", "MIBs unregistered");
+                rebuildOidIndex();
             } catch (Exception e) {
                 android.util.Log.w("SnmpAgentService", "Error unregistering MIBs", e);
             }
@@ -691,6 +613,12 @@ public class SnmpAgentService extends Service {
             agent = null;
         }
         
+        // Stop request workers; anything still queued is dropped
+        if (requestDispatcher != null) {
+            requestDispatcher.shutdown();
+            requestDispatcher = null;
+        }
+        
         // Close message dispatcher and transport mappings
         // The agent.shutdown() should handle closing transport mappings
         // Just reset reference
@@ -699,6 +627,7 @@ public class SnmpAgentService extends Service {
         // Reset server
         server = null;
         modules = null;
+        commandResponder = null;
     }
 }
 
@@ -0,0 +1,128 @@
+package com.example.snmpagent;
+
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.OctetString;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers, per manager, the index position of the last OID returned by a GETNEXT or
+ * GETBULK. Walks are strictly sequential, so when the next request asks for the successor
+ * of exactly that OID the answer is the following position and no search is needed.
+ * Cursors are tied to the OidIndex they were taken from and expire after a short idle period.
+ */
+public class WalkCursorCache {
+
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int MAX_ENTRIES = 64;
+
+    private final Map<Source, Cursor> cursors = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * A manager, identified by its transport address and community.
+     */
+    public static final class Source {
+        private final Address address;
+        private final OctetString community;
+
+        public Source(Address address, OctetString community) {
+            this.address = address;
+            this.community = community;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Source)) {
+                return false;
+            }
+            Source other = (Source) o;
+            return address.equals(other.address) && community.equals(other.community);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * address.hashCode() + community.hashCode();
+        }
+    }
+
+    private static final class Cursor {
+        final OidIndex index;
+        final long position;
+        final long lastAccess;
+
+        Cursor(OidIndex index, long position, long lastAccess) {
+            this.index = index;
+            this.position = position;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Successor lookup that resumes from the source's cursor when the OID is the one last returned to it.
+     *
+     * @return the successor's position in the index, or -1 at the end of the MIB view
+     */
+    public long successorPosition(Source source, OidIndex index, int[] subids, int length) {
+        if (source != null) {
+            Cursor cursor = cursors.get(source);
+            if (cursor != null && cursor.index == index &&
+                System.nanoTime() - cursor.lastAccess < IDLE_TIMEOUT_NANOS &&
+                index.matches(cursor.position, subids, length)) {
+                hits.incrementAndGet();
+                return index.nextPosition(cursor.position);
+            }
+            misses.incrementAndGet();
+        }
+        return index.successorPosition(subids, length);
+    }
+
+    /**
+     * Record the position of the last OID returned to the source.
+     */
+    public void update(Source source, OidIndex index, long position) {
+        if (source == null || position < 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (cursors.size() >= MAX_ENTRIES && !cursors.containsKey(source)) {
+            evictIdle(now);
+            if (cursors.size() >= MAX_ENTRIES) {
+                // Every slot is in active use; a walk without a cursor still works, just with a search
+                return;
+            }
+        }
+        cursors.put(source, new Cursor(index, position, now));
+    }
+
+    private void evictIdle(long now) {
+        Iterator<Cursor> it = cursors.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastAccess >= IDLE_TIMEOUT_NANOS) {
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        cursors.clear();
+    }
+
+    public int size() {
+        return cursors.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+}
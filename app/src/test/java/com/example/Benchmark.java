@@ -0,0 +1,8 @@
+package com.example;
+
+/**
+ * JUnit category of the microbenchmarks. testDebugUnitTest excludes them unless Gradle
+ * runs with -Pbenchmarks, e.g. ./gradlew testDebugUnitTest -Pbenchmarks --tests '*benchmark*'.
+ */
+public interface Benchmark {
+}
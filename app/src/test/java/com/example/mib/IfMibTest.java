@@ -0,0 +1,157 @@
+package com.example.mib;
+
+import com.example.snmpagent.AgentCommandResponder;
+import com.example.snmpagent.CapturingTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Counter32;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.SMIConstants;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Walks of IF-MIB through the snmp4j path, as snmpwalk -v1 and -v2c of the standard tree do.
+ */
+public class IfMibTest {
+
+    private static final UdpAddress MANAGER = new UdpAddress("127.0.0.1/16100");
+    // Beyond 32 bits, so ifInOctets wraps and ifHCInOctets does not
+    private static final long RX_BYTES = (1L << 32) + 5;
+
+    private MessageDispatcherImpl snmp4j;
+    private CapturingTransport transport;
+    private int requestId = 1;
+
+    @Before
+    public void setUp() throws Exception {
+        long[][] counters = new long[2][NetDevSampler.FIELDS];
+        counters[1][NetDevSampler.RX_BYTES] = RX_BYTES;
+        counters[1][NetDevSampler.RX_PACKETS] = 1000;
+        NetDevSampler.Interfaces sample = new NetDevSampler.Interfaces(new String[]{"lo", "wlan0"},
+            new int[]{NetDevSampler.TYPE_LOOPBACK, NetDevSampler.TYPE_ETHERNET},
+            new int[]{NetDevSampler.STATUS_UP, NetDevSampler.STATUS_UP},
+            new int[]{NetDevSampler.STATUS_UP, NetDevSampler.STATUS_UP}, counters);
+        MetricGroup<NetDevSampler.Interfaces> interfaces = new MetricGroup<>("interfaces", MetricGroup.NEVER,
+            () -> sample, NetDevSampler.Interfaces.EMPTY, new SingleFlight());
+
+        DefaultMOServer server = new DefaultMOServer();
+        IfMib ifMib = new IfMib(interfaces);
+        ifMib.registerMOs(server, null);
+        AgentCommandResponder responder = new AgentCommandResponder(server, new OctetString(), null, 0, 250);
+        ifMib.setRegistrationListener(responder::rebuildIndex);
+        // Adds the rows of both interfaces
+        interfaces.publish(sample);
+
+        snmp4j = new MessageDispatcherImpl();
+        snmp4j.addMessageProcessingModel(new MPv1());
+        snmp4j.addMessageProcessingModel(new MPv2c());
+        snmp4j.addCommandResponder(responder);
+        transport = new CapturingTransport(1472);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.close();
+    }
+
+    private PDU request(int version, int type, OID oid) throws IOException {
+        PDU pdu = new PDU();
+        pdu.setType(type);
+        pdu.setRequestID(new Integer32(requestId++));
+        pdu.add(new VariableBinding(oid));
+
+        Integer32 versionValue = new Integer32(version);
+        OctetString community = new OctetString("public");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BER.encodeHeader(out, BER.SEQUENCE,
+            versionValue.getBERLength() + community.getBERLength() + pdu.getBERLength());
+        versionValue.encodeBER(out);
+        community.encodeBER(out);
+        pdu.encodeBER(out);
+        snmp4j.processMessage(transport, MANAGER, ByteBuffer.wrap(out.toByteArray()), null);
+
+        List<byte[]> sent = transport.take();
+        assertEquals("one response to " + pdu, 1, sent.size());
+        BERInputStream in = new BERInputStream(ByteBuffer.wrap(sent.get(0)));
+        BER.decodeHeader(in, new BER.MutableByte());
+        new Integer32().decodeBER(in);
+        new OctetString().decodeBER(in);
+        PDU response = new PDU();
+        response.decodeBER(in);
+        return response;
+    }
+
+    /**
+     * GETNEXT from the top of MIB-2 until the end of the MIB view.
+     */
+    private List<VariableBinding> walk(int version) throws IOException {
+        List<VariableBinding> walked = new ArrayList<>();
+        OID oid = new OID("1.3.6.1.2.1");
+        while (true) {
+            PDU response = request(version, PDU.GETNEXT, oid);
+            if (response.getErrorStatus() == PDU.noSuchName) {
+                // The v1 end of the MIB view
+                return walked;
+            }
+            assertEquals(PDU.noError, response.getErrorStatus());
+            VariableBinding vb = response.get(0);
+            if (vb.getVariable().isException()) {
+                return walked;
+            }
+            walked.add(vb);
+            oid = vb.getOid();
+        }
+    }
+
+    private static OID cell(OID entry, int column, int ifIndex) {
+        return new OID(entry).append(column).append(ifIndex);
+    }
+
+    @Test
+    public void v1WalkSkipsTheHighCapacityCounters() throws IOException {
+        List<VariableBinding> walked = walk(SnmpConstants.version1);
+        // ifNumber, 13 ifTable and the 2 Counter32 ifXTable columns per interface
+        assertEquals(1 + 13 * 2 + 2 * 2, walked.size());
+        for (VariableBinding vb : walked) {
+            assertNotEquals(vb.toString(), SMIConstants.SYNTAX_COUNTER64, vb.getSyntax());
+        }
+        assertEquals(new VariableBinding(cell(IfMib.IF_ENTRY, IfMib.IF_IN_OCTETS, 2), new Counter32(5)),
+            walked.get(1 + 5 * 2 + 1));
+        assertEquals(cell(IfMib.IF_X_ENTRY, IfMib.IF_IN_MULTICAST_PKTS, 2), walked.get(walked.size() - 1).getOid());
+
+        PDU response = request(SnmpConstants.version1, PDU.GET, cell(IfMib.IF_X_ENTRY, IfMib.IF_HC_IN_OCTETS, 2));
+        assertEquals(PDU.noSuchName, response.getErrorStatus());
+        assertEquals(1, response.getErrorIndex());
+    }
+
+    @Test
+    public void v2cWalkServesTheHighCapacityCounters() throws IOException {
+        List<VariableBinding> walked = walk(SnmpConstants.version2c);
+        assertEquals(1 + 13 * 2 + 7 * 2, walked.size());
+        assertEquals(new VariableBinding(cell(IfMib.IF_X_ENTRY, IfMib.IF_HC_IN_OCTETS, 2), new Counter64(RX_BYTES)),
+            walked.get(1 + 13 * 2 + 2 * 2 + 1));
+    }
+}
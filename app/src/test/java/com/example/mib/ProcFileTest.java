@@ -0,0 +1,205 @@
+package com.example.mib;
+
+import com.example.Benchmark;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ProcFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ProcFile file;
+
+    @After
+    public void tearDown() {
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    private ProcFile open(String content) throws IOException {
+        return open(content, 4096);
+    }
+
+    private ProcFile open(String content, int initialCapacity) throws IOException {
+        File f = folder.newFile();
+        write(f, content);
+        file = new ProcFile(f.getPath(), initialCapacity);
+        file.read();
+        return file;
+    }
+
+    private static void write(File f, String content) throws IOException {
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void parsesStatLines() throws IOException {
+        ProcFile stat = open("cpu  4705 356 584 3699176 23060 0 277 0 0 0\ncpu0 1393280 32966 572056 13343292\n");
+        assertTrue(stat.startsWith(new byte[]{'c', 'p', 'u'}));
+        assertTrue(stat.skipToken());
+        assertEquals(4705, stat.nextLong());
+        assertEquals(356, stat.nextLong());
+        stat.skipToken();
+        assertEquals(3699176, stat.nextLong());
+        assertTrue(stat.nextLine());
+        stat.skip(3);
+        assertTrue(stat.atDigit());
+        assertEquals(0, stat.nextLong());
+        assertEquals(1393280, stat.nextLong());
+        stat.skipToken();
+        stat.skipToken();
+        assertEquals(13343292, stat.nextLong());
+        // The end of the line ends the numbers and tokens
+        assertEquals(-1, stat.nextLong());
+        assertFalse(stat.skipToken());
+        assertFalse(stat.nextLine());
+        assertTrue(stat.atEnd());
+    }
+
+    @Test
+    public void parsesMeminfoAndNetDev() throws IOException {
+        ProcFile meminfo = open("MemTotal:        3809036 kB\nMemFree:          282012 kB\n");
+        assertEquals("MemTotal", meminfo.nextToken(':'));
+        assertEquals(3809036, meminfo.nextLong());
+        assertEquals("kB", meminfo.nextToken(' '));
+        meminfo.nextLine();
+        meminfo.skipToken();
+        assertEquals(282012, meminfo.nextLong());
+
+        ProcFile netDev = open("  wlan0: 1234 56 0 0\n");
+        assertEquals("wlan0", netDev.nextToken(':'));
+        assertEquals(1234, netDev.nextLong());
+        assertEquals(56, netDev.nextLong());
+    }
+
+    @Test
+    public void parsesFixedAndHexNumbers() throws IOException {
+        ProcFile uptime = open("350735.47 234388.90\n");
+        assertEquals(350735470, uptime.nextFixed(3));
+        assertEquals(2343889, uptime.nextFixed(1));
+        assertEquals(-1, uptime.nextFixed(2));
+        assertEquals(350735470, uptime.readFixed(3));
+
+        assertEquals(0x1003, open("0x1003\n").nextHex());
+        assertEquals(0xff, open("FF\n").nextHex());
+        assertEquals(-1, open("\n").nextHex());
+        assertEquals(1804800, open("1804800\n").readLong());
+    }
+
+    @Test(expected = IOException.class)
+    public void readLongRejectsFilesWithoutNumber() throws IOException {
+        open("unknown\n").readLong();
+    }
+
+    @Test
+    public void parsesProcessFiles() throws IOException {
+        // The command name may contain blanks and ')'
+        ProcFile stat = open("1234 (my) app) S 1 1234 0\n");
+        assertTrue(stat.skipPastLast(')'));
+        assertEquals('S', stat.nextChar());
+        assertEquals(1, stat.nextLong());
+        assertEquals(1234, stat.nextLong());
+        assertFalse(open("1234 S\n").skipPastLast(')'));
+
+        ProcFile cmdline = open("/system/bin/app_process\0--zygote arg\0");
+        assertEquals("/system/bin/app_process", cmdline.nextString('\0'));
+        assertEquals("--zygote arg", cmdline.nextString('\0'));
+        assertNull(cmdline.nextString('\0'));
+    }
+
+    @Test
+    public void bufferGrowsForLargeFiles() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        ProcFile large = open(content.toString(), 16);
+        for (int i = 0; i < 1999; i++) {
+            large.skipToken();
+            assertEquals(i, large.nextLong());
+            assertTrue(large.nextLine());
+        }
+        large.skipToken();
+        assertEquals(1999, large.nextLong());
+    }
+
+    @Test
+    public void rereadsThroughTheOpenFile() throws IOException {
+        File f = folder.newFile();
+        write(f, "42 7\n");
+        file = new ProcFile(f.getPath());
+        assertEquals(42, file.readLong());
+        file.nextLong();
+        write(f, "1\n");
+        // The whole new content and nothing of the longer old one
+        assertEquals(1, file.readLong());
+        assertEquals(-1, file.nextLong());
+
+        // A closed file is reopened by the next read
+        file.close();
+        assertTrue(f.delete());
+        write(f, "9\n");
+        assertEquals(9, file.readLong());
+    }
+
+    /**
+     * The first /proc/stat line parsed with ProcFile against the approach it replaced: a new
+     * BufferedReader per read, readLine() and String.split("\\s+").
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkAgainstBufferedReader() throws IOException {
+        File procStat = new File("/proc/stat");
+        assumeTrue(procStat.canRead());
+        file = new ProcFile(procStat.getPath());
+        int rounds = 5000;
+        long sink = 0;
+        long procFileNanos = 0;
+        long readerNanos = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            // The first pass warms up the JIT
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                file.read();
+                file.skipToken();
+                for (int i = 0; i < 7; i++) {
+                    sink += file.nextLong();
+                }
+            }
+            procFileNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                try (BufferedReader reader = new BufferedReader(new FileReader(procStat))) {
+                    String[] fields = reader.readLine().split("\\s+");
+                    for (int i = 1; i <= 7; i++) {
+                        sink += Long.parseLong(fields[i]);
+                    }
+                }
+            }
+            readerNanos = System.nanoTime() - start;
+        }
+        System.out.println("ProcFile: " + procFileNanos / rounds / 1000 + " us, BufferedReader + split: " +
+            readerNanos / rounds / 1000 + " us per /proc/stat read (" + sink + ")");
+        assertTrue(sink > 0);
+    }
+}
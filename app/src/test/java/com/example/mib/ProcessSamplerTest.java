@@ -0,0 +1,199 @@
+package com.example.mib;
+
+import com.example.Benchmark;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Samples of a fake /proc; the sampler's defaults of 100 clock ticks per second and
+ * 4 KByte pages apply on the JVM.
+ */
+public class ProcessSamplerTest {
+
+    private static final long PF_KTHREAD = 0x00200000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File proc;
+    private ProcessSampler sampler;
+
+    @Before
+    public void setUp() throws IOException {
+        proc = folder.newFolder("proc");
+        // Not a process
+        write(new File(proc, "self"), "");
+        sampler = new ProcessSampler(proc);
+    }
+
+    @After
+    public void tearDown() {
+        sampler.close();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void stat(int pid, String comm, char state, long flags, long utime, long stime, long startTime, long rss)
+        throws IOException {
+        File dir = new File(proc, Integer.toString(pid));
+        dir.mkdir();
+        // Negative priority and nice, as for real-time and boosted threads
+        write(new File(dir, "stat"), pid + " (" + comm + ") " + state + " 1 " + pid + " 0 0 -1 " + flags +
+            " 120 0 3 0 " + utime + " " + stime + " 0 0 -2 -20 4 0 " + startTime + " 1000000 " + rss +
+            " 18446744073709551615 1 1 0\n");
+        write(new File(dir, "comm"), comm + "\n");
+    }
+
+    private void process(int pid, String cmdline, long utime, long startTime) throws IOException {
+        stat(pid, "comm" + pid, 'S', 0, utime, 0, startTime, 100);
+        write(new File(new File(proc, Integer.toString(pid)), "cmdline"), cmdline);
+    }
+
+    private static int row(ProcessSampler.Processes processes, int pid) {
+        int i = processes.indexOf(pid);
+        assertTrue("no row for " + pid, i >= 0);
+        return i;
+    }
+
+    @Test
+    public void readsProcesses() throws IOException {
+        stat(7, "sys) worker", 'R', PF_KTHREAD, 3, 4, 10, 0);
+        write(new File(proc, "7/cmdline"), "");
+        process(4000, "com.example.app\0--flag\0value\0", 250, 500);
+        stat(12, "zombie", 'Z', 0, 1, 1, 20, 0);
+        write(new File(proc, "12/cmdline"), "");
+
+        ProcessSampler.Processes processes = sampler.sample();
+        assertArrayEquals(new int[]{7, 12, 4000}, processes.getPids());
+
+        int kthread = row(processes, 7);
+        assertEquals("sys) worker", processes.getName(kthread));
+        assertEquals("", processes.getPath(kthread));
+        assertEquals(ProcessSampler.TYPE_OPERATING_SYSTEM, processes.getType(kthread));
+        assertEquals(ProcessSampler.STATUS_RUNNING, processes.getStatus(kthread));
+        assertEquals(7, processes.getCpuCentis(kthread));
+
+        int zombie = row(processes, 12);
+        assertEquals("zombie", processes.getName(zombie));
+        assertEquals(ProcessSampler.TYPE_APPLICATION, processes.getType(zombie));
+        assertEquals(ProcessSampler.STATUS_INVALID, processes.getStatus(zombie));
+
+        int app = row(processes, 4000);
+        assertEquals("com.example.app", processes.getName(app));
+        assertEquals("com.example.app", processes.getPath(app));
+        assertEquals("--flag value", processes.getParameters(app));
+        assertEquals(ProcessSampler.TYPE_APPLICATION, processes.getType(app));
+        assertEquals(ProcessSampler.STATUS_RUNNABLE, processes.getStatus(app));
+        assertEquals(250, processes.getCpuCentis(app));
+        assertEquals(400, processes.getMemoryKb(app));
+    }
+
+    @Test
+    public void staticFieldsAreReadOncePerProcess() throws IOException {
+        process(100, "/system/bin/surfaceflinger\0", 10, 50);
+        sampler.sample();
+
+        // Only the stat file is read again while the start time is unchanged
+        write(new File(proc, "100/cmdline"), "/changed\0");
+        stat(100, "comm100", 'D', 0, 30, 5, 50, 200);
+        ProcessSampler.Processes processes = sampler.sample();
+        int i = row(processes, 100);
+        assertEquals("surfaceflinger", processes.getName(i));
+        assertEquals(35, processes.getCpuCentis(i));
+        assertEquals(800, processes.getMemoryKb(i));
+        assertEquals(ProcessSampler.STATUS_NOT_RUNNABLE, processes.getStatus(i));
+
+        // A reused PID is a new process
+        process(100, "/system/bin/vold\0", 1, 900);
+        processes = sampler.sample();
+        i = row(processes, 100);
+        assertEquals("vold", processes.getName(i));
+        assertEquals(1, processes.getCpuCentis(i));
+    }
+
+    @Test
+    public void exitedProcessesAreDropped() throws IOException {
+        process(100, "a\0", 1, 1);
+        process(200, "b\0", 1, 1);
+        process(300, "c\0", 1, 1);
+        assertEquals(3, sampler.sample().size());
+
+        for (String file : new String[]{"stat", "cmdline", "comm"}) {
+            assertTrue(new File(proc, "200/" + file).delete());
+        }
+        assertTrue(new File(proc, "200").delete());
+        assertArrayEquals(new int[]{100, 300}, sampler.sample().getPids());
+
+        // Listed, but gone before its stat file was read
+        assertTrue(new File(proc, "400").mkdir());
+        assertArrayEquals(new int[]{100, 300}, sampler.sample().getPids());
+    }
+
+    @Test
+    public void processesBeyondTheOpenDescriptorCapAreSampled() throws IOException {
+        int count = 600;
+        for (int pid = 1; pid <= count; pid++) {
+            process(pid, "p" + pid + "\0", pid, 1);
+        }
+        assertEquals(count, sampler.sample().size());
+        for (int pid = 1; pid <= count; pid++) {
+            process(pid, "p" + pid + "\0", pid * 2L, 1);
+        }
+        ProcessSampler.Processes processes = sampler.sample();
+        for (int pid = 1; pid <= count; pid++) {
+            int i = row(processes, pid);
+            assertEquals("p" + pid, processes.getName(i));
+            assertEquals(pid * 2L, processes.getCpuCentis(i));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unreadableProcIsAnError() throws IOException {
+        new ProcessSampler(new File(proc, "missing")).sample();
+    }
+
+    /**
+     * A full refresh of 800 processes: the first sample reads every stat, cmdline and comm
+     * file, later ones only the stat files.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkFullRefresh() throws IOException {
+        int count = 800;
+        for (int pid = 1; pid <= count; pid++) {
+            process(pid, "/system/bin/app_process64\0com.example.p" + pid + "\0", pid, 1);
+        }
+        long start = System.nanoTime();
+        assertEquals(count, sampler.sample().size());
+        long coldNanos = System.nanoTime() - start;
+
+        int rounds = 20;
+        long steadyNanos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            // The first pass warms up the JIT
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                assertEquals(count, sampler.sample().size());
+            }
+            steadyNanos = System.nanoTime() - start;
+        }
+        System.out.println("ProcessSampler, " + count + " processes: first sample " + coldNanos / 1000000 +
+            " ms, then " + steadyNanos / rounds / 1000000 + " ms per sample");
+    }
+}
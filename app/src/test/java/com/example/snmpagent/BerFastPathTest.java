@@ -0,0 +1,385 @@
+package com.example.snmpagent;
+
+import com.example.mib.SnapshotTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Counter32;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.IpAddress;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every request is answered by both the snmp4j path and the fast path, and the response
+ * datagrams must be byte for byte the same.
+ */
+public class BerFastPathTest {
+
+    private static final OID BASE = new OID("1.3.6.1.4.1.9");
+    private static final OID TABLE_ENTRY = new OID(BASE).append("50.1");
+    private static final UdpAddress MANAGER = new UdpAddress("127.0.0.1/16100");
+
+    private int[] rows = {1, 42, 1000, 70000};
+    private DefaultMOServer server;
+    private AgentCommandResponder responder;
+    private BerFastPath fastPath;
+    private MessageDispatcherImpl snmp4j;
+    private CapturingTransport transport;
+    private int requestId = 1000;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DefaultMOServer();
+        register(server, 1, new OctetString("Android test device"));
+        register(server, 2, new Integer32(-5));
+        register(server, 3, new Counter32(4000000000L));
+        register(server, 4, new Gauge32(7));
+        register(server, 5, new TimeTicks(123456));
+        register(server, 6, new Counter64(1L << 40));
+        register(server, 7, new IpAddress("10.0.0.1"));
+        register(server, 8, new OID("1.3.6.1.2.1.25.2.1.4"));
+        // Instances without a value, e.g. of a process that exited
+        register(server, 9, Null.noSuchInstance);
+        register(server, 10, null);
+        register(server, 11, new Integer32(11));
+        server.register(new SnapshotTable(TABLE_ENTRY, () -> rows)
+            .addColumn(1, row -> new Integer32(row))
+            .addColumn(2, row -> new OctetString("process-" + row))
+            .addColumn(3, row -> (row == 42) ? Null.noSuchInstance : new Gauge32(row * 4L)), null);
+
+        responder = new AgentCommandResponder(server, new OctetString(), null, 0, 250);
+        responder.rebuildIndex();
+        fastPath = new BerFastPath(responder, 0, "public");
+        snmp4j = new MessageDispatcherImpl();
+        snmp4j.addMessageProcessingModel(new MPv1());
+        snmp4j.addMessageProcessingModel(new MPv2c());
+        snmp4j.addCommandResponder(responder);
+        transport = new CapturingTransport(1472);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.close();
+    }
+
+    private static void register(DefaultMOServer server, int object, Variable value) throws Exception {
+        server.register(new MOScalar<Variable>(new OID(BASE).append(object).append(0), MOAccessImpl.ACCESS_READ_ONLY,
+            value) {
+            @Override
+            public Variable getValue() {
+                return value;
+            }
+        }, null);
+    }
+
+    private PDU pdu(int type, OID... oids) {
+        PDU pdu = new PDU();
+        pdu.setType(type);
+        pdu.setRequestID(new Integer32(requestId++));
+        for (OID oid : oids) {
+            pdu.add(new VariableBinding(oid));
+        }
+        return pdu;
+    }
+
+    private static OID oid(String suffix) {
+        return new OID(BASE).append(suffix);
+    }
+
+    private static byte[] encode(int version, String community, PDU pdu) throws IOException {
+        Integer32 versionValue = new Integer32(version);
+        OctetString communityValue = new OctetString(community);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BER.encodeHeader(out, BER.SEQUENCE,
+            versionValue.getBERLength() + communityValue.getBERLength() + pdu.getBERLength());
+        versionValue.encodeBER(out);
+        communityValue.encodeBER(out);
+        pdu.encodeBER(out);
+        return out.toByteArray();
+    }
+
+    private static PDU decode(byte[] message) throws IOException {
+        BERInputStream in = new BERInputStream(ByteBuffer.wrap(message));
+        BER.decodeHeader(in, new BER.MutableByte());
+        new Integer32().decodeBER(in);
+        new OctetString().decodeBER(in);
+        PDU pdu = new PDU();
+        pdu.decodeBER(in);
+        return pdu;
+    }
+
+    private byte[] viaSnmp4j(CapturingTransport transport, byte[] request) {
+        snmp4j.processMessage(transport, MANAGER, ByteBuffer.wrap(request), null);
+        List<byte[]> sent = transport.take();
+        assertEquals(1, sent.size());
+        return sent.get(0);
+    }
+
+    private byte[] viaFastPath(CapturingTransport transport, byte[] request) {
+        assertTrue(fastPath.respond(request, request.length, transport, MANAGER, null));
+        List<byte[]> sent = transport.take();
+        assertEquals(1, sent.size());
+        return sent.get(0);
+    }
+
+    /**
+     * @return the response both paths sent
+     */
+    private PDU assertSameResponse(CapturingTransport transport, int version, PDU request) throws IOException {
+        byte[] message = encode(version, "public", request);
+        byte[] expected = viaSnmp4j(transport, message);
+        byte[] actual = viaFastPath(transport, message);
+        assertArrayEquals(request.toString(), expected, actual);
+        return decode(actual);
+    }
+
+    private PDU assertSameResponse(int version, PDU request) throws IOException {
+        return assertSameResponse(transport, version, request);
+    }
+
+    @Test
+    public void getAnswersLikeSnmp4j() throws Exception {
+        List<OID> oids = new ArrayList<>();
+        for (int object = 1; object <= 11; object++) {
+            oids.add(oid(object + ".0"));
+        }
+        oids.add(oid("99.0"));
+        oids.add(oid("1"));
+        oids.add(oid("1.0.0"));
+        oids.add(new OID(TABLE_ENTRY).append("2.42"));
+        oids.add(new OID(TABLE_ENTRY).append("2.43"));
+        oids.add(new OID(TABLE_ENTRY).append("3.42"));
+        oids.add(new OID(TABLE_ENTRY).append("7.1"));
+        PDU response = assertSameResponse(SnmpConstants.version2c, pdu(PDU.GET, oids.toArray(new OID[0])));
+        assertEquals(new Counter64(1L << 40), response.get(5).getVariable());
+        assertEquals(Null.noSuchObject, response.get(11).getVariable());
+        assertEquals(Null.noSuchInstance, response.get(12).getVariable());
+        assertEquals(new OctetString("process-42"), response.get(14).getVariable());
+        assertEquals(Null.noSuchInstance, response.get(15).getVariable());
+
+        assertSameResponse(SnmpConstants.version1, pdu(PDU.GET, oid("1.0"), oid("2.0"), oid("3.0"), oid("4.0"),
+            oid("5.0"), oid("7.0"), oid("8.0")));
+    }
+
+    @Test
+    public void getNextWalkAnswersLikeSnmp4j() throws Exception {
+        List<OID> walked = new ArrayList<>();
+        OID oid = BASE;
+        while (true) {
+            VariableBinding vb = assertSameResponse(SnmpConstants.version2c, pdu(PDU.GETNEXT, oid)).get(0);
+            if (vb.getVariable().isException()) {
+                assertEquals(Null.endOfMibView, vb.getVariable());
+                break;
+            }
+            walked.add(vb.getOid());
+            oid = vb.getOid();
+        }
+        List<OID> expected = new ArrayList<>();
+        for (int object : new int[]{1, 2, 3, 4, 5, 6, 7, 8, 11}) {
+            expected.add(oid(object + ".0"));
+        }
+        for (int column = 1; column <= 3; column++) {
+            for (int row : rows) {
+                if (column != 3 || row != 42) {
+                    expected.add(new OID(TABLE_ENTRY).append(column).append(row));
+                }
+            }
+        }
+        assertEquals(expected, walked);
+    }
+
+    @Test
+    public void getNextSkipsInstancesWithoutValue() throws Exception {
+        PDU response = assertSameResponse(SnmpConstants.version2c,
+            pdu(PDU.GETNEXT, oid("8.0"), new OID(TABLE_ENTRY).append("3.1")));
+        assertEquals(oid("11.0"), response.get(0).getOid());
+        assertEquals(new OID(TABLE_ENTRY).append("3.1000"), response.get(1).getOid());
+    }
+
+    @Test
+    public void getBulkAnswersLikeSnmp4j() throws Exception {
+        PDU request = pdu(PDU.GETBULK, oid("4.0"), oid("11.0"), new OID(TABLE_ENTRY).append("2.1000"));
+        request.setNonRepeaters(1);
+        request.setMaxRepetitions(8);
+        PDU response = assertSameResponse(SnmpConstants.version2c, request);
+        assertEquals(1 + 2 * 8, response.size());
+        // Both columns run off the end of the MIB view and repeat their last OID
+        assertEquals(new VariableBinding(new OID(TABLE_ENTRY).append("3.70000"), Null.endOfMibView),
+            response.get(response.size() - 1));
+    }
+
+    @Test
+    public void getBulkFillsTheMessageSizeBudget() throws Exception {
+        rows = new int[300];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i + 1;
+        }
+        PDU request = pdu(PDU.GETBULK, BASE);
+        request.setMaxRepetitions(200);
+        byte[] message = encode(SnmpConstants.version2c, "public", request);
+
+        int maxSize = 484;
+        int maxPduSize = maxSize - MPv3.MAX_HEADER_LENGTH;
+        CapturingTransport small = new CapturingTransport(maxSize);
+        CapturingTransport large = new CapturingTransport(65535);
+        try {
+            PDU truncated = assertSameResponse(small, SnmpConstants.version2c, request);
+            assertTrue(truncated.getBERLength() <= maxPduSize);
+            assertTrue(truncated.size() < 200);
+
+            // The next varbind of the untruncated response would not have fit
+            PDU full = decode(viaFastPath(large, message));
+            assertEquals(200, full.size());
+            assertEquals(truncated.getVariableBindings(), full.getVariableBindings().subList(0, truncated.size()));
+            assertTrue(truncated.getBERLength() + full.get(truncated.size()).getBERLength() > maxPduSize);
+        } finally {
+            small.close();
+            large.close();
+        }
+    }
+
+    @Test
+    public void v1FallsBackForCounter64AndErrors() throws Exception {
+        for (OID oid : new OID[]{oid("6.0"), oid("99.0"), oid("9.0")}) {
+            byte[] message = encode(SnmpConstants.version1, "public", pdu(PDU.GET, oid("1.0"), oid));
+            assertFalse(fastPath.respond(message, message.length, transport, MANAGER, null));
+            assertTrue(transport.take().isEmpty());
+
+            // snmp4j answers with noSuchName at the varbind (RFC 2576 4.4)
+            PDU response = decode(viaSnmp4j(transport, message));
+            assertEquals(PDU.noSuchName, response.getErrorStatus());
+            assertEquals(2, response.getErrorIndex());
+            assertEquals(new VariableBinding(oid), response.get(1));
+        }
+    }
+
+    /**
+     * Requests answered like the agent does: by the fast path, or by snmp4j when it declines.
+     */
+    private PDU respond(int version, PDU request) throws IOException {
+        byte[] message = encode(version, "public", request);
+        if (!fastPath.respond(message, message.length, transport, MANAGER, null)) {
+            snmp4j.processMessage(transport, MANAGER, ByteBuffer.wrap(message), null);
+        }
+        List<byte[]> sent = transport.take();
+        assertEquals(1, sent.size());
+        return decode(sent.get(0));
+    }
+
+    @Test
+    public void v1WalkSkipsCounter64() throws Exception {
+        List<OID> walked = new ArrayList<>();
+        OID oid = BASE;
+        while (true) {
+            PDU response = respond(SnmpConstants.version1, pdu(PDU.GETNEXT, oid));
+            if (response.getErrorStatus() != PDU.noError) {
+                // The v1 end of the MIB view
+                assertEquals(PDU.noSuchName, response.getErrorStatus());
+                assertEquals(1, response.getErrorIndex());
+                break;
+            }
+            walked.add(response.get(0).getOid());
+            oid = response.get(0).getOid();
+        }
+        List<OID> expected = new ArrayList<>();
+        for (int object : new int[]{1, 2, 3, 4, 5, 7, 8, 11}) {
+            expected.add(oid(object + ".0"));
+        }
+        for (int column = 1; column <= 3; column++) {
+            for (int row : rows) {
+                if (column != 3 || row != 42) {
+                    expected.add(new OID(TABLE_ENTRY).append(column).append(row));
+                }
+            }
+        }
+        assertEquals(expected, walked);
+
+        // Straight from the OID before the Counter64 instance to the one after it
+        PDU response = decode(viaSnmp4j(transport, encode(SnmpConstants.version1, "public",
+            pdu(PDU.GETNEXT, oid("5.0"), oid("6")))));
+        assertEquals(PDU.noError, response.getErrorStatus());
+        assertEquals(oid("7.0"), response.get(0).getOid());
+        assertEquals(oid("7.0"), response.get(1).getOid());
+    }
+
+    @Test
+    public void fallbackIsAnsweredOnTheSameWorker() throws Exception {
+        RequestDispatcher dispatcher = new RequestDispatcher(1, 4, RequestDispatcher.OverloadPolicy.DROP_NEWEST,
+            RequestDispatcher.DEFAULT_LANE_WEIGHTS);
+        try {
+            AgentCommandResponder queued = new AgentCommandResponder(server, new OctetString(), dispatcher, 0, 250);
+            queued.rebuildIndex();
+            FastPathMessageDispatcher messageDispatcher =
+                new FastPathMessageDispatcher(new BerFastPath(queued, 0, "public"), dispatcher);
+            messageDispatcher.addMessageProcessingModel(new MPv1());
+            messageDispatcher.addCommandResponder(queued);
+
+            // Declined by the fast path, then decoded and answered by snmp4j
+            byte[] message = encode(SnmpConstants.version1, "public", pdu(PDU.GET, oid("6.0")));
+            messageDispatcher.processMessage(transport, MANAGER, ByteBuffer.wrap(message), null);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (dispatcher.getLaneCompletedCount(RequestDispatcher.Lane.GET.ordinal()) == 0) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(5);
+            }
+            List<byte[]> sent = transport.take();
+            assertEquals(1, sent.size());
+            assertEquals(PDU.noSuchName, decode(sent.get(0)).getErrorStatus());
+            assertEquals(1, dispatcher.getDispatchedCount());
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void otherCommunitiesFallBack() throws Exception {
+        byte[] message = encode(SnmpConstants.version2c, "private", pdu(PDU.GET, oid("1.0")));
+        assertFalse(fastPath.isCandidate(message, message.length));
+        assertFalse(fastPath.respond(message, message.length, transport, MANAGER, null));
+    }
+
+    @Test
+    public void errorResponseEchoesTheRequest() throws Exception {
+        PDU request = pdu(PDU.GETNEXT, oid("1.0"), oid("6.0"));
+        byte[] message = encode(SnmpConstants.version2c, "public", request);
+        assertTrue(fastPath.respondError(message, message.length, transport, MANAGER, null, PDU.genErr));
+        PDU response = decode(transport.take().get(0));
+        assertEquals(PDU.RESPONSE, response.getType());
+        assertEquals(request.getRequestID(), response.getRequestID());
+        assertEquals(PDU.genErr, response.getErrorStatus());
+        assertEquals(0, response.getErrorIndex());
+        assertEquals(request.getVariableBindings(), response.getVariableBindings());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.snmpagent;
+
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UDP transport that never listens and keeps every datagram it is asked to send, so a test
+ * can hand a request to either responder path and compare the exact response bytes.
+ */
+public final class CapturingTransport extends DefaultUdpTransportMapping {
+
+    private final List<byte[]> sent = new ArrayList<>();
+
+    public CapturingTransport(int maxMessageSize) throws IOException {
+        super(new UdpAddress("127.0.0.1/0"));
+        setMaxInboundMessageSize(maxMessageSize);
+    }
+
+    @Override
+    public synchronized void sendMessage(UdpAddress address, byte[] message, TransportStateReference tmStateReference,
+                                         long timeoutMillis, int maxRetries) {
+        sent.add(message.clone());
+    }
+
+    /**
+     * @return the datagrams sent since the last call, oldest first
+     */
+    public synchronized List<byte[]> take() {
+        List<byte[]> taken = new ArrayList<>(sent);
+        sent.clear();
+        return taken;
+    }
+}
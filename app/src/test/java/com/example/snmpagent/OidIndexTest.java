@@ -0,0 +1,226 @@
+package com.example.snmpagent;
+
+import com.example.Benchmark;
+import com.example.mib.SnapshotTable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.snmp4j.agent.DefaultMOContextScope;
+import org.snmp4j.agent.DefaultMOQuery;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.Variable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OidIndexTest {
+
+    private static final OID BASE = new OID("1.3.6.1.4.1.9");
+    private static final OID TABLE_ENTRY = new OID(BASE).append("50.1");
+    private static final int[] COLUMNS = {1, 2, 4};
+
+    private DefaultMOServer server;
+    private int[] rows = {2, 3, 10, 300, 70000};
+    private OidIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DefaultMOServer();
+        for (int i = 1; i <= 40; i++) {
+            server.register(scalar(new OID(BASE).append(i).append(0), new Integer32(i)), null);
+        }
+        // Sub-identifiers above 2^31 sort last (unsigned)
+        server.register(scalar(new OID(BASE).append(-6).append(0), new Integer32(-6)), null);
+        SnapshotTable table = new SnapshotTable(TABLE_ENTRY, () -> rows);
+        for (int column : COLUMNS) {
+            table.addColumn(column, row -> new Integer32(column * 1000000 + row));
+        }
+        server.register(table, null);
+        index = OidIndex.build(server, null);
+    }
+
+    private static MOScalar<Variable> scalar(OID oid, Variable value) {
+        return new MOScalar<>(oid, MOAccessImpl.ACCESS_READ_ONLY, value);
+    }
+
+    private List<OID> expectedOids() {
+        List<OID> oids = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            oids.add(new OID(BASE).append(i).append(0));
+        }
+        oids.add(new OID(BASE).append(-6).append(0));
+        for (int column : COLUMNS) {
+            for (int row : rows) {
+                oids.add(new OID(TABLE_ENTRY).append(column).append(row));
+            }
+        }
+        Collections.sort(oids);
+        return oids;
+    }
+
+    private List<OID> walk() {
+        List<OID> walked = new ArrayList<>();
+        for (long p = index.successorPosition(new int[0], 0); p >= 0; p = index.nextPosition(p)) {
+            walked.add(index.oidAt(p));
+        }
+        return walked;
+    }
+
+    @Test
+    public void walkVisitsEveryInstanceInOrder() {
+        assertEquals(expectedOids(), walk());
+        assertEquals(42, index.size());
+    }
+
+    @Test
+    public void successorMatchesSortedList() {
+        List<OID> expected = expectedOids();
+        List<OID> probes = new ArrayList<>();
+        for (OID oid : expected) {
+            probes.add(oid);
+            for (int length = 1; length < oid.size(); length++) {
+                probes.add(new OID(oid.getValue(), 0, length));
+            }
+            OID below = new OID(oid);
+            below.set(below.size() - 1, below.last() - 1);
+            probes.add(below);
+            OID above = new OID(oid);
+            above.set(above.size() - 1, above.last() + 1);
+            probes.add(above);
+            probes.add(new OID(oid).append(0));
+            probes.add(new OID(oid).append(-1));
+        }
+        probes.add(new OID());
+        probes.add(new OID(TABLE_ENTRY).append(3));
+        probes.add(new OID(TABLE_ENTRY).append(9));
+        probes.add(new OID(TABLE_ENTRY).append(2).append(-1));
+        probes.add(new OID("1.3.6.1.4.1.10"));
+
+        for (OID probe : probes) {
+            OID successor = null;
+            for (OID oid : expected) {
+                if (oid.compareTo(probe) > 0) {
+                    successor = oid;
+                    break;
+                }
+            }
+            assertEquals("successor of " + probe, successor, index.successor(probe));
+            assertEquals("contains " + probe, expected.contains(probe), index.contains(probe));
+        }
+    }
+
+    @Test
+    public void valuesComeFromScalarsAndCells() {
+        assertEquals(new Integer32(7), index.getValue(new OID(BASE).append("7.0")));
+        assertEquals(new Integer32(2000300), index.getValue(new OID(TABLE_ENTRY).append("2.300")));
+        assertNull(index.getValue(new OID(TABLE_ENTRY).append("2.301")));
+        assertNull(index.getValue(TABLE_ENTRY));
+    }
+
+    @Test
+    public void encodedOidsMatchSnmp4j() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long p = index.successorPosition(new int[0], 0); p >= 0; p = index.nextPosition(p)) {
+            OID oid = index.oidAt(p);
+            out.reset();
+            oid.encodeBER(out);
+            assertArrayEquals(oid.toString(), out.toByteArray(), index.encodedOidAt(p));
+        }
+    }
+
+    @Test
+    public void missingInstancesOfKnownObjects() {
+        assertTrue(index.isUnderKnownObject(new OID(BASE).append("1")));
+        assertTrue(index.isUnderKnownObject(new OID(BASE).append("1.5")));
+        assertFalse(index.isUnderKnownObject(new OID(BASE).append("1.0")));
+        assertFalse(index.isUnderKnownObject(new OID(BASE).append("77")));
+        // Known column without such a row, unknown column
+        assertTrue(index.isUnderKnownObject(new OID(TABLE_ENTRY).append("2.4")));
+        assertTrue(index.isUnderKnownObject(new OID(TABLE_ENTRY).append("2")));
+        assertFalse(index.isUnderKnownObject(new OID(TABLE_ENTRY).append("2.3")));
+        assertFalse(index.isUnderKnownObject(new OID(TABLE_ENTRY).append("3.2")));
+    }
+
+    @Test
+    public void rowsFollowTheSnapshotWithoutRebuild() {
+        OID cell = new OID(TABLE_ENTRY).append("4.300");
+        long position = index.indexOf(cell.getValue(), cell.size());
+        assertTrue(index.matches(position, cell.getValue(), cell.size()));
+
+        rows = new int[]{3, 11};
+        assertFalse(index.matches(position, cell.getValue(), cell.size()));
+        assertFalse(index.contains(cell));
+        assertEquals(expectedOids(), walk());
+
+        rows = new int[0];
+        assertEquals(new OID(BASE).append(-6).append(0), index.successor(new OID(BASE).append("40.0")));
+        assertEquals(expectedOids(), walk());
+    }
+
+    @Test
+    public void buildIgnoresOtherContexts() throws Exception {
+        server.register(scalar(new OID(BASE).append("45.0"), new Integer32(45)), new OctetString("other"));
+        assertFalse(OidIndex.build(server, new OctetString()).contains(new OID(BASE).append("45.0")));
+        assertSame(OidIndex.EMPTY, OidIndex.build(null, null));
+    }
+
+    /**
+     * GET of the 35 scalars through the index against the generic path it replaced: a
+     * query and context scope per varbind, MOServer.lookup() and an instanceof check.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkAgainstServerLookup() {
+        OID[] oids = new OID[35];
+        for (int i = 0; i < oids.length; i++) {
+            oids[i] = new OID(BASE).append(i + 1).append(0);
+        }
+        OctetString context = new OctetString();
+        int rounds = 20000;
+        long sink = 0;
+        long indexNanos = 0;
+        long lookupNanos = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            // The first pass warms up the JIT
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (OID oid : oids) {
+                    sink += index.getValue(oid).toInt();
+                }
+            }
+            indexNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (OID oid : oids) {
+                    DefaultMOQuery query = new DefaultMOQuery(new DefaultMOContextScope(context, oid, true, oid, true));
+                    ManagedObject<?> mo = server.lookup(query);
+                    if (mo instanceof MOScalar) {
+                        sink += ((MOScalar<?>) mo).getValue().toInt();
+                    }
+                }
+            }
+            lookupNanos = System.nanoTime() - start;
+        }
+        long lookups = (long) rounds * oids.length;
+        System.out.println("OidIndex.getValue: " + indexNanos / lookups + " ns, MOServer.lookup: " +
+            lookupNanos / lookups + " ns per varbind (" + sink + ")");
+        assertEquals(2L * 3 * rounds * (35 * 36 / 2), sink);
+    }
+}
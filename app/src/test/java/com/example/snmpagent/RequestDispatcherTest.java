@@ -0,0 +1,217 @@
+package com.example.snmpagent;
+
+import org.junit.After;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestDispatcherTest {
+
+    private RequestDispatcher dispatcher;
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> rejected = Collections.synchronizedList(new ArrayList<String>());
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    private void dispatch(RequestDispatcher.Lane lane, String name) {
+        dispatcher.dispatch(lane, () -> ran.add(name), () -> rejected.add(name));
+    }
+
+    /**
+     * One worker held on a first request, then a full queue of two and one more request;
+     * returns once every queued request ran.
+     */
+    private void overload(RequestDispatcher.OverloadPolicy policy) throws InterruptedException {
+        CountDownLatch release = hold(policy);
+        dispatch(RequestDispatcher.Lane.WALK, "walk");
+        dispatch(RequestDispatcher.Lane.GET, "get");
+        assertEquals(2, dispatcher.getQueueDepth());
+        dispatch(RequestDispatcher.Lane.AVAILABILITY, "poll");
+        drain(release);
+    }
+
+    /**
+     * @return releases the single worker, held on a first request, of a dispatcher queueing two requests
+     */
+    private CountDownLatch hold(RequestDispatcher.OverloadPolicy policy) throws InterruptedException {
+        dispatcher = new RequestDispatcher(1, 2, policy, RequestDispatcher.DEFAULT_LANE_WEIGHTS);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.dispatch(RequestDispatcher.Lane.GET, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ran.add("held");
+        }, () -> rejected.add("held"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private void drain(CountDownLatch release) throws InterruptedException {
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dispatcher.getQueueDepth() > 0 || dispatcher.getActiveWorkers() > 0) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void dropOldestShedsTheLowestPriorityLane() throws Exception {
+        overload(RequestDispatcher.OverloadPolicy.DROP_OLDEST);
+        // The poll overtakes the GET queued before it
+        assertEquals(Arrays.asList("held", "poll", "get"), ran);
+        assertTrue(rejected.isEmpty());
+        assertEquals(1, dispatcher.getDroppedOldestCount());
+        assertEquals(0, dispatcher.getDroppedNewestCount());
+        assertEquals(0, dispatcher.getGenErrReplyCount());
+        assertEquals(4, dispatcher.getDispatchedCount());
+    }
+
+    @Test
+    public void dropOldestNeverShedsEqualOrHigherPriorityLanes() throws Exception {
+        CountDownLatch release = hold(RequestDispatcher.OverloadPolicy.DROP_OLDEST);
+        dispatch(RequestDispatcher.Lane.AVAILABILITY, "poll0");
+        dispatch(RequestDispatcher.Lane.AVAILABILITY, "poll1");
+        // Neither a walk nor another poll displaces the queued polls
+        dispatch(RequestDispatcher.Lane.WALK, "walk");
+        dispatch(RequestDispatcher.Lane.AVAILABILITY, "poll2");
+        drain(release);
+        assertEquals(Arrays.asList("held", "poll0", "poll1"), ran);
+        assertTrue(rejected.isEmpty());
+        assertEquals(0, dispatcher.getDroppedOldestCount());
+        assertEquals(2, dispatcher.getDroppedNewestCount());
+        assertEquals(3, dispatcher.getDispatchedCount());
+    }
+
+    @Test
+    public void requestsDispatchedByARunningRequestRunInline() throws Exception {
+        dispatcher = new RequestDispatcher(1, 1, RequestDispatcher.OverloadPolicy.DROP_NEWEST,
+            RequestDispatcher.DEFAULT_LANE_WEIGHTS);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.dispatch(RequestDispatcher.Lane.WALK, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // E.g. a fast path request handed to snmp4j; queueing it would shed it
+            dispatch(RequestDispatcher.Lane.WALK, "fallback");
+            ran.add("outer");
+        }, () -> rejected.add("outer"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        dispatch(RequestDispatcher.Lane.GET, "queued");
+        assertEquals(1, dispatcher.getQueueDepth());
+        drain(release);
+        assertEquals(Arrays.asList("fallback", "outer", "queued"), ran);
+        assertTrue(rejected.isEmpty());
+        assertEquals(0, dispatcher.getDroppedNewestCount());
+        assertEquals(2, dispatcher.getDispatchedCount());
+        assertEquals(1, dispatcher.getLaneCompletedCount(RequestDispatcher.Lane.WALK.ordinal()));
+    }
+
+    @Test
+    public void dropNewestShedsTheIncomingRequest() throws Exception {
+        overload(RequestDispatcher.OverloadPolicy.DROP_NEWEST);
+        assertEquals(Arrays.asList("held", "get", "walk"), ran);
+        assertTrue(rejected.isEmpty());
+        assertEquals(0, dispatcher.getDroppedOldestCount());
+        assertEquals(1, dispatcher.getDroppedNewestCount());
+        assertEquals(0, dispatcher.getGenErrReplyCount());
+        assertEquals(3, dispatcher.getDispatchedCount());
+    }
+
+    @Test
+    public void genErrAnswersTheIncomingRequest() throws Exception {
+        overload(RequestDispatcher.OverloadPolicy.GEN_ERR);
+        assertEquals(Arrays.asList("held", "get", "walk"), ran);
+        assertEquals(Collections.singletonList("poll"), rejected);
+        assertEquals(0, dispatcher.getDroppedOldestCount());
+        assertEquals(0, dispatcher.getDroppedNewestCount());
+        assertEquals(1, dispatcher.getGenErrReplyCount());
+        assertEquals(3, dispatcher.getDispatchedCount());
+    }
+
+    @Test
+    public void lanesAreDrainedByWeight() throws Exception {
+        dispatcher = new RequestDispatcher(1, 100, RequestDispatcher.OverloadPolicy.DROP_NEWEST, new int[]{8, 2, 1});
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.dispatch(RequestDispatcher.Lane.AVAILABILITY, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, () -> { });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            dispatch(RequestDispatcher.Lane.WALK, "walk" + i);
+            dispatch(RequestDispatcher.Lane.GET, "get" + i);
+        }
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (ran.size() < 6) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        // Two GETs per walk while both lanes have requests
+        assertEquals(Arrays.asList("get0", "walk0", "get1", "get2", "walk1", "walk2"), ran);
+        assertEquals(3, dispatcher.getLaneCompletedCount(RequestDispatcher.Lane.WALK.ordinal()));
+    }
+
+    @Test
+    public void missingWeightsMergeTheLowerLanes() {
+        dispatcher = new RequestDispatcher(1, 10, RequestDispatcher.OverloadPolicy.DROP_NEWEST, new int[]{3});
+        assertEquals(1, dispatcher.getLaneCount());
+        assertEquals(3, dispatcher.getLaneWeight(0));
+    }
+
+    @Test
+    public void classifiesByTypeAndFirstOid() {
+        assertEquals(RequestDispatcher.Lane.AVAILABILITY, RequestDispatcher.classify(pdu(PDU.GET, "1.3.6.1.2.1.1.3.0")));
+        assertEquals(RequestDispatcher.Lane.GET,
+            RequestDispatcher.classify(pdu(PDU.GET, "1.3.6.1.2.1.1.3.0", "1.3.6.1.2.1.1.1.0")));
+        assertEquals(RequestDispatcher.Lane.GET, RequestDispatcher.classify(pdu(PDU.GET, "1.3.6.1.2.1.25.1.6.0")));
+        assertEquals(RequestDispatcher.Lane.WALK, RequestDispatcher.classify(pdu(PDU.GETNEXT, "1.3.6.1.2.1.1.3.0")));
+        assertEquals(RequestDispatcher.Lane.WALK, RequestDispatcher.classify(pdu(PDU.GETBULK, "1.3.6.1")));
+    }
+
+    @Test
+    public void parsesLaneWeights() {
+        assertArrayEquals(new int[]{8, 4, 1}, RequestDispatcher.parseLaneWeights("8, 4,1"));
+        assertArrayEquals(RequestDispatcher.DEFAULT_LANE_WEIGHTS, RequestDispatcher.parseLaneWeights("fast"));
+    }
+
+    private static PDU pdu(int type, String... oids) {
+        PDU pdu = new PDU();
+        pdu.setType(type);
+        for (String oid : oids) {
+            pdu.add(new VariableBinding(new OID(oid)));
+        }
+        return pdu;
+    }
+}